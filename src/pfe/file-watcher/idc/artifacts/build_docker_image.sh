@@ -18,6 +18,8 @@ DOCKER_BUILD=docker.build
 LOGFOLDER=$5
 
 PROJECT_ID=$6
+# "-" when IDC streams the build context to this script's stdin as a tar
+CONTEXT_STREAM=$7
 util=/file-watcher/scripts/util.sh
 
 WORKSPACE=/microclimate-workspace
@@ -25,18 +27,25 @@ WORKSPACE=/microclimate-workspace
 # Ensure extended pattern matching is enabled
 shopt -s extglob
 
-# Copy the project folder contents to the current directory (.idc/docker/docker-xxx), overwrite if needed
 cd $contextDir
-cp -rf "$projectDir/." $contextDir
+if [ "$CONTEXT_STREAM" != "-" ]; then
+    # Copy the project folder contents to the current directory (.idc/docker/docker-xxx), overwrite if needed
+    cp -rf "$projectDir/." $contextDir
+fi
 
 echo -e "Docker build log file "$WORKSPACE/.logs/$LOGFOLDER/$DOCKER_BUILD.log""
 
 echo -e "Touching docker container build log file: "$WORKSPACE/.logs/$LOGFOLDER/$DOCKER_BUILD.log""
 touch "$WORKSPACE/.logs/$LOGFOLDER/$DOCKER_BUILD.log"
 echo -e "Triggering log file event for: docker container build log"
-$util newLogFileAvailable $PROJECT_ID "build"
+# stdin may be the build context, which is for docker build
+$util newLogFileAvailable $PROJECT_ID "build" < /dev/null
 
-docker build -t $imageName -f Dockerfile-idc $contextDir |& tee "$WORKSPACE/.logs/$LOGFOLDER/$DOCKER_BUILD.log"
+if [ "$CONTEXT_STREAM" == "-" ]; then
+    docker build -t $imageName -f Dockerfile-idc - |& tee "$WORKSPACE/.logs/$LOGFOLDER/$DOCKER_BUILD.log"
+else
+    docker build -t $imageName -f Dockerfile-idc $contextDir |& tee "$WORKSPACE/.logs/$LOGFOLDER/$DOCKER_BUILD.log"
+fi
 if [[ $? -ne 0 ]]; then
     rm -rf !(Dockerfile-idc|artifacts)
     exit 1
@@ -51,22 +51,30 @@ if [[ $1 && $1 == "prod" ]]; then
 	exit 0
 fi
 
+# The Maven output is written to the build log, and to stdout where IDC reads the build result as the build runs
+# With pipefail each pipeline returns Maven's exit code rather than tee's, and the script exits with it
+set -o pipefail
+BUILD_RC=0
 if [ -f $SERVER_XML ]; then
 	if [[ $3 && $3 == "config" ]]; then
 		echo "Start mvn build with config change for $LOGNAME $(date)"
-        echo "mvn -B package liberty:install-apps -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS --log-file $HOME/logs/$MAVEN_BUILD.log"
-        mvn -B package liberty:install-apps -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS --log-file $HOME/logs/$MAVEN_BUILD.log
+        echo "mvn -B package liberty:install-apps -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS 2>&1 | tee $HOME/logs/$MAVEN_BUILD.log"
+        mvn -B package liberty:install-apps -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS 2>&1 | tee $HOME/logs/$MAVEN_BUILD.log
+        BUILD_RC=$?
 		echo "Finished mvn build with config change for $LOGNAME $(date)"
 	else
 		echo "Start mvn compile for $LOGNAME $(date)"
-        echo "mvn -B compile -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS --log-file $HOME/logs/$MAVEN_BUILD.log"
-        mvn -B compile -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS --log-file $HOME/logs/$MAVEN_BUILD.log
+        echo "mvn -B compile -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS 2>&1 | tee $HOME/logs/$MAVEN_BUILD.log"
+        mvn -B compile -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS 2>&1 | tee $HOME/logs/$MAVEN_BUILD.log
+        BUILD_RC=$?
 		echo "Finished mvn compile for $LOGNAME $(date)"
 	fi
 else
 	echo "Start mvn package for $LOGNAME $(date)"
-    echo "mvn -B package -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS --log-file $HOME/logs/$MAVEN_BUILD.log"
-    mvn -B package -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS --log-file $HOME/logs/$MAVEN_BUILD.log
+    echo "mvn -B package -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS 2>&1 | tee $HOME/logs/$MAVEN_BUILD.log"
+    mvn -B package -DskipTests=true -DlibertyEnv=microclimate -DmicroclimateOutputDir=$MICROCLIMATE_OUTPUT_DIR $MAVEN_SETTINGS 2>&1 | tee $HOME/logs/$MAVEN_BUILD.log
+    BUILD_RC=$?
 	echo "Finished mvn package for $LOGNAME $(date)"
 fi
 
+exit $BUILD_RC
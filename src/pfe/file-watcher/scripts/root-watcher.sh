@@ -62,6 +62,12 @@ cache_spring() {
 # Make sure the logs directory for build output exists.
 mkdir -p $CONTAINER_WORKSPACE_DIRECTORY/.logs
 
+# Start the IDC server, so that the idc commands the project scripts run don't each start a new JVM
+if [[ -n $IDC_SERVER_PORT ]]; then
+	echo "Starting the IDC server on port $IDC_SERVER_PORT"
+	/file-watcher/idc/idc server > $CONTAINER_WORKSPACE_DIRECTORY/.logs/idc_server.log 2>&1 &
+fi
+
 # If running in Kubernetes, initialize helm
 if [ "$IN_K8" == "true" ]; then
 
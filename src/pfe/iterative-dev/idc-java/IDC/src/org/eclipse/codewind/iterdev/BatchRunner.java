@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.codewind.iterdev.Constants.ErrorCode;
+import org.eclipse.codewind.iterdev.ConsoleRouter.IConsole;
+import org.eclipse.codewind.iterdev.ProcessRunner.ConsoleStream;
+
+/**
+ * Runs a command against several projects at once, for example when a workspace-wide change needs every project
+ * rebuilt: idc batch build [--parallelism=n] [command options] <project dir>...
+ *
+ * Each project's command runs on a bounded pool of worker threads exactly as if idc had been run in the project's
+ * directory, with its own IDCContext and DB maps. Each line of a project's output is prefixed with the project
+ * name, so the output of concurrent projects can be told apart, and once all of the projects are done a summary
+ * of their exit codes is printed. The exit code is 0 if the command succeeded for every project.
+ */
+public class BatchRunner {
+
+	public static int execute(String[] args) throws InterruptedException {
+		if (args.length < 3 || !IDCUtils.isValidCommmand(args[1], Constants.BATCH_COMMANDS)) {
+			Logger.error("Usage: idc " + Constants.OPTION_BATCH + " " + String.join("|", Constants.BATCH_COMMANDS)
+					+ " [" + Constants.PARALLELISM_KEY + "<n>] [command options] <project dir>...");
+			return ErrorCode.wrongUsage.ordinal();
+		}
+
+		int parallelism = Constants.DEFAULT_BATCH_PARALLELISM;
+		List<String> commandArgs = new ArrayList<>();
+		commandArgs.add(args[1]);
+		Map<String, File> projects = new LinkedHashMap<>();
+
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].startsWith(Constants.PARALLELISM_KEY)) {
+				try {
+					parallelism = Integer.parseInt(args[i].replace(Constants.PARALLELISM_KEY, ""));
+				} catch (NumberFormatException e) {
+					parallelism = 0;
+				}
+				if (parallelism < 1) {
+					Logger.error("The parallelism must be a positive number: " + args[i]);
+					return ErrorCode.wrongUsage.ordinal();
+				}
+			} else if (args[i].startsWith("--")) {
+				commandArgs.add(args[i]);
+			} else {
+				// The app id is derived from the directory path, so each project is only run once, with the path the idc
+				// script would use in that directory (pwd -P)
+				File dir = new File(args[i]);
+				try {
+					dir = dir.getCanonicalFile();
+				} catch (IOException e) {
+					// checked below
+				}
+				if (!dir.isDirectory()) {
+					Logger.error("The project directory " + args[i] + " does not exist");
+					return ErrorCode.wrongUsage.ordinal();
+				}
+				projects.putIfAbsent(dir.getPath(), dir);
+			}
+		}
+
+		if (projects.isEmpty()) {
+			Logger.error("No project directories were given");
+			return ErrorCode.wrongUsage.ordinal();
+		}
+
+		final String[] projectArgs = commandArgs.toArray(new String[commandArgs.size()]);
+		final IConsole console = ConsoleRouter.getConsole();
+		ConsoleRouter.install();
+
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, projects.size()), r -> {
+			Thread t = new Thread(r, "IDC batch " + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+
+		long start = System.currentTimeMillis();
+		Map<File, Future<Integer>> results = new LinkedHashMap<>();
+		try {
+			for (final File dir : projects.values()) {
+				results.put(dir, workers.submit(() -> runProject(projectArgs, dir, console)));
+			}
+
+			Map<File, Integer> exitCodes = new LinkedHashMap<>();
+			for (Map.Entry<File, Future<Integer>> result : results.entrySet()) {
+				try {
+					exitCodes.put(result.getKey(), result.getValue().get());
+				} catch (ExecutionException e) {
+					exitCodes.put(result.getKey(), ErrorCode.unexpectedError.ordinal());
+				}
+			}
+
+			Logger.info("Batch " + args[1] + " results (" + (System.currentTimeMillis() - start) + "ms):");
+			int failures = 0;
+			for (Map.Entry<File, Integer> result : exitCodes.entrySet()) {
+				int exitCode = result.getValue();
+				if (exitCode == 0) {
+					Logger.info("  " + result.getKey().getPath() + ": succeeded");
+				} else {
+					failures++;
+					Logger.info("  " + result.getKey().getPath() + ": failed with exit code " + exitCode
+							+ (exitCode < ErrorCode.values().length ? " (" + ErrorCode.values()[exitCode].message() + ")" : ""));
+				}
+			}
+			Logger.info((projects.size() - failures) + " of " + projects.size() + " projects succeeded");
+
+			return failures == 0 ? 0 : ErrorCode.batchFailed.ordinal();
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	private static int runProject(String[] args, File dir, IConsole console) {
+		// JSON lines are told apart by their project field instead, so they can still be parsed
+		PrefixedConsole projectConsole = new PrefixedConsole(EventLog.isJson() ? "" : "[" + dir.getName() + "] ", console);
+		ConsoleRouter.setConsole(projectConsole);
+		EventLog.setProject(dir.getName());
+		try {
+			return IDCServer.executeCommand(args, dir);
+		} catch (Throwable t) {
+			Logger.error(ErrorCode.unexpectedError.message() + ": " + t);
+			return ErrorCode.unexpectedError.ordinal();
+		} finally {
+			StatusDispatcher.PORTAL.flushBeforeExit();
+			ConsoleRouter.clearConsole();
+			EventLog.setProject(null);
+			projectConsole.close();
+		}
+	}
+
+	/** Writes whole lines of a project's output to the batch console, each prefixed with the project name */
+	private static class PrefixedConsole implements IConsole {
+
+		private final byte[] prefix;
+
+		private final IConsole console;
+
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+		PrefixedConsole(String prefix, IConsole console) {
+			this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+			this.console = console;
+		}
+
+		@Override
+		public synchronized void write(ConsoleStream s, byte[] b, int off, int len) throws IOException {
+			ByteArrayOutputStream buffer = s == ConsoleStream.OUT ? out : err;
+			for (int i = off; i < off + len; i++) {
+				buffer.write(b[i]);
+				if (b[i] == '\n') {
+					writeLine(s, buffer);
+				}
+			}
+		}
+
+		@Override
+		public void flush(ConsoleStream s) throws IOException {
+			// Only whole lines are written, so there is nothing to flush until the line is complete
+		}
+
+		synchronized void close() {
+			try {
+				if (out.size() > 0) {
+					out.write('\n');
+					writeLine(ConsoleStream.OUT, out);
+				}
+				if (err.size() > 0) {
+					err.write('\n');
+					writeLine(ConsoleStream.ERR, err);
+				}
+			} catch (IOException e) {
+				// the batch console is gone
+			}
+		}
+
+		private void writeLine(ConsoleStream s, ByteArrayOutputStream buffer) throws IOException {
+			byte[] line = new byte[prefix.length + buffer.size()];
+			System.arraycopy(prefix, 0, line, 0, prefix.length);
+			System.arraycopy(buffer.toByteArray(), 0, line, prefix.length, buffer.size());
+			buffer.reset();
+
+			// Lines from the projects are written whole, one at a time
+			synchronized (console) {
+				console.write(s, line, 0, line.length);
+				console.flush(s);
+			}
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Streams a container build context as a tar, read straight from where its files are, rather than copying them
+ * into the .idc/docker/docker-<appid> directory for docker build to read back.
+ *
+ * The tar has the same contents as the directory build_docker_image.sh builds: the build context directory
+ * (Dockerfile-idc and the target directories created for its COPY commands), then the IDC artifacts under
+ * artifacts/, then the application directory, each replacing files of the same name from the ones before. Files
+ * excluded by the .dockerignore file, as docker build would exclude them from the context directory, are left out.
+ */
+public class BuildContextTar {
+
+	public static final String DOCKERFILE = "Dockerfile-idc";
+
+	public static final String DOCKERIGNORE = ".dockerignore";
+
+	public static final String ARTIFACTS = "artifacts";
+
+	/**
+	 * Write the build context to the stream, and close it.
+	 * @return The number of files written
+	 */
+	public static int write(Path appDir, Path contextDir, Path artifactsDir, OutputStream os) throws IOException {
+		long start = System.currentTimeMillis();
+
+		// Tar entry names, each mapped to the file it is read from
+		TreeMap<String, Path> entries = new TreeMap<>();
+		collect(contextDir, "", false, entries);
+		entries.keySet().removeIf(name -> name.equals(ARTIFACTS) || name.startsWith(ARTIFACTS + "/"));
+		collect(artifactsDir, ARTIFACTS + "/", true, entries);
+		collect(appDir, "", false, entries);
+
+		DockerIgnore ignore = DockerIgnore.load(entries.get(DOCKERIGNORE));
+
+		int files = 0;
+		try (TarWriter tar = new TarWriter(os)) {
+			for (Map.Entry<String, Path> entry : entries.entrySet()) {
+				String name = entry.getKey();
+				Path path = entry.getValue();
+				if (!name.equals(DOCKERFILE) && !name.equals(DOCKERIGNORE) && ignore.isExcluded(name)) {
+					continue;
+				}
+
+				if (Files.isSymbolicLink(path) && !name.startsWith(ARTIFACTS + "/")) {
+					tar.addSymbolicLink(name, path);
+				} else if (Files.isDirectory(path)) {
+					tar.addDirectory(name, path);
+				} else {
+					tar.addFile(name, path);
+					files++;
+				}
+			}
+		}
+
+		Logger.verbose("Streamed a build context of " + files + " files in " + (System.currentTimeMillis() - start) + "ms");
+		return files;
+	}
+
+	/** Add the files and directories under dir to the entries, with their paths relative to dir after the prefix */
+	private static void collect(final Path dir, final String prefix, boolean followLinks, final Map<String, Path> entries)
+			throws IOException {
+		if (dir == null || !Files.isDirectory(dir)) {
+			return;
+		}
+
+		Set<FileVisitOption> options = followLinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS)
+				: EnumSet.noneOf(FileVisitOption.class);
+		Files.walkFileTree(dir, options, Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path subdir, BasicFileAttributes attrs) {
+				String name = nameOf(subdir);
+				if (!name.isEmpty()) {
+					entries.put(name, subdir);
+				} else if (!prefix.isEmpty()) {
+					entries.put(prefix.substring(0, prefix.length() - 1), subdir);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				// Without FOLLOW_LINKS, symbolic links (to files or directories) are visited as files
+				entries.put(nameOf(file), file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			private String nameOf(Path path) {
+				String relative = dir.relativize(path).toString().replace('\\', '/');
+				return relative.isEmpty() ? "" : prefix + relative;
+			}
+		});
+	}
+
+	/** The exclusions in a .dockerignore file, matched as docker build matches them */
+	static class DockerIgnore {
+
+		private final List<Pattern> patterns = new ArrayList<>();
+		private final List<Boolean> exceptions = new ArrayList<>();
+
+		static DockerIgnore load(Path file) throws IOException {
+			DockerIgnore ignore = new DockerIgnore();
+			if (file == null || !Files.isRegularFile(file)) {
+				return ignore;
+			}
+			List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+			for (String line : lines) {
+				ignore.add(line);
+			}
+			return ignore;
+		}
+
+		void add(String line) {
+			String pattern = line.trim();
+			if (pattern.isEmpty() || pattern.startsWith("#")) {
+				return;
+			}
+			boolean exception = pattern.startsWith("!");
+			if (exception) {
+				pattern = pattern.substring(1).trim();
+			}
+			// Patterns are relative to the context root, with or without a leading or trailing slash
+			while (pattern.startsWith("/")) {
+				pattern = pattern.substring(1);
+			}
+			while (pattern.endsWith("/")) {
+				pattern = pattern.substring(0, pattern.length() - 1);
+			}
+			if (pattern.isEmpty()) {
+				return;
+			}
+			patterns.add(Pattern.compile(toRegex(pattern)));
+			exceptions.add(exception);
+		}
+
+		/** The last pattern that matches the name, or one of its parent directories, decides whether it's excluded */
+		boolean isExcluded(String name) {
+			boolean excluded = false;
+			for (int i = 0; i < patterns.size(); i++) {
+				if (matchesPathOrParent(patterns.get(i), name)) {
+					excluded = !exceptions.get(i);
+				}
+			}
+			return excluded;
+		}
+
+		private static boolean matchesPathOrParent(Pattern pattern, String name) {
+			if (pattern.matcher(name).matches()) {
+				return true;
+			}
+			for (int index = name.indexOf('/'); index != -1; index = name.indexOf('/', index + 1)) {
+				if (pattern.matcher(name.substring(0, index)).matches()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/** Convert a glob, where * and ? don't match / but ** matches any number of directories, to a regex */
+		private static String toRegex(String glob) {
+			StringBuilder regex = new StringBuilder();
+			for (int i = 0; i < glob.length(); i++) {
+				char c = glob.charAt(i);
+				if (c == '*') {
+					if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+						i++;
+						if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+							// "**/" matches no directories too
+							i++;
+							regex.append("(.*/)?");
+						} else {
+							regex.append(".*");
+						}
+					} else {
+						regex.append("[^/]*");
+					}
+				} else if (c == '?') {
+					regex.append("[^/]");
+				} else if (c == '[') {
+					int end = glob.indexOf(']', i + 1);
+					if (end == -1) {
+						regex.append("\\[");
+					} else {
+						String range = glob.substring(i + 1, end);
+						regex.append('[').append(range.startsWith("!") ? "^" + range.substring(1) : range).append(']');
+						i = end;
+					}
+				} else if (c == '\\' && i + 1 < glob.length()) {
+					regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+				} else {
+					regex.append(Pattern.quote(String.valueOf(c)));
+				}
+			}
+			return regex.toString();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+/**
+ * Decides whether a Maven build succeeded from its output, one line at a time as the build writes it, so that the
+ * build log doesn't need to be read again (or kept in memory) once the build is done.
+ *
+ * The build scripts write the Maven output to both their stdout and the maven.build.log file; if they run Maven
+ * more than once, the result of the last build is the verdict.
+ */
+public class BuildLogScanner implements IListener {
+
+	public static enum Verdict {
+		/** No build result has been read yet */
+		pending,
+		success,
+		failure
+	};
+
+	private volatile Verdict verdict = Verdict.pending;
+
+	@Override
+	public void receiveText(String line) {
+		if (line.contains("BUILD SUCCESS")) {
+			verdict = Verdict.success;
+		} else if (line.contains("BUILD FAILURE")) {
+			verdict = Verdict.failure;
+		}
+	}
+
+	public Verdict getVerdict() {
+		return verdict;
+	}
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.eclipse.codewind.iterdev.ProcessRunner.ConsoleStream;
+
+/**
+ * Replaces System.out and System.err with streams that send output to the console of the command that 
+ * is running on the current thread. Threads started by a command (for example the ProcessRunner read 
+ * threads) inherit the console of that command. Threads without a console write to the original streams.
+ */
+public class ConsoleRouter {
+
+	/** Receives the output of a single command. */
+	public static interface IConsole {
+		public void write(ConsoleStream s, byte[] b, int off, int len) throws IOException;
+
+		public void flush(ConsoleStream s) throws IOException;
+	}
+
+	private static final InheritableThreadLocal<IConsole> currentConsole = new InheritableThreadLocal<>();
+
+	private static boolean installed = false;
+
+	private static PrintStream originalOut = System.out;
+
+	private static PrintStream originalErr = System.err;
+
+	public static synchronized void install() {
+		if (installed) {
+			return;
+		}
+		originalOut = System.out;
+		originalErr = System.err;
+		System.setOut(new PrintStream(new RoutedOutputStream(System.out, ConsoleStream.OUT), true));
+		System.setErr(new PrintStream(new RoutedOutputStream(System.err, ConsoleStream.ERR), true));
+		installed = true;
+	}
+
+	/** Send System.out/System.err output of the current thread (and the threads it starts) to the given console. */
+	public static void setConsole(IConsole console) {
+		currentConsole.set(console);
+	}
+
+	public static void clearConsole() {
+		currentConsole.remove();
+	}
+
+	/** The console of the current thread, or a console that writes to the original streams if it has none */
+	public static IConsole getConsole() {
+		IConsole console = currentConsole.get();
+		if (console != null) {
+			return console;
+		}
+		return new IConsole() {
+			@Override
+			public void write(ConsoleStream s, byte[] b, int off, int len) throws IOException {
+				(s == ConsoleStream.OUT ? originalOut : originalErr).write(b, off, len);
+			}
+
+			@Override
+			public void flush(ConsoleStream s) throws IOException {
+				(s == ConsoleStream.OUT ? originalOut : originalErr).flush();
+			}
+		};
+	}
+
+	private static class RoutedOutputStream extends OutputStream {
+
+		private final PrintStream original;
+		private final ConsoleStream cs;
+
+		RoutedOutputStream(PrintStream original, ConsoleStream cs) {
+			this.original = original;
+			this.cs = cs;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			IConsole console = currentConsole.get();
+			if (console != null) {
+				console.write(cs, b, off, len);
+			} else {
+				original.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			IConsole console = currentConsole.get();
+			if (console != null) {
+				console.flush(cs);
+			} else {
+				original.flush();
+			}
+		}
+	}
+}
@@ -40,6 +40,8 @@ public class Constants {
 	public static final String DB_DOCKER_REGISTRY = "DOCKER_REGISTRY";
 	public static final String DB_START_MODE = "START_MODE";
 	public static final String DB_DEBUG_PORT = "DEBUG_PORT";
+	// Followed by the reader and type of a log, e.g. LOG_CHECKPOINT_tail.app; see LogFollower
+	public static final String DB_LOG_CHECKPOINT_PREFIX = "LOG_CHECKPOINT_";
 	
 	// IDC modes
 	public static final String MODE_KEY = "MODE";
@@ -72,6 +74,8 @@ public class Constants {
 	public static final String OPTION_CONTAINER_REMOVE = "container-remove";
 	public static final String OPTION_SYSTEM_CLEANUP = "system-cleanup";
 	public static final String OPTION_HELP = "help";
+	public static final String OPTION_SERVER = "server";
+	public static final String OPTION_BATCH = "batch";
 	
 	// Build options
 	public static final String BUILD_OPTION_CONFIG = "config";
@@ -81,7 +85,10 @@ public class Constants {
 			OPTION_PROD, OPTION_DEV, OPTION_SET, OPTION_BUILD, OPTION_CLEAN,
 			OPTION_START, OPTION_DEBUG, OPTION_STOP, OPTION_TAIL, OPTION_STATUS_TRACKER, OPTION_SHELL,
 			OPTION_CONTAINER_REFRESH, OPTION_CONTAINER_REMOVE, OPTION_SYSTEM_CLEANUP,
-			OPTION_HELP };
+			OPTION_HELP, OPTION_BATCH };
+
+	// Commands that can be run across several projects with idc batch
+	public static final String[] BATCH_COMMANDS = { OPTION_BUILD, OPTION_START, OPTION_CONTAINER_REMOVE };
 	
 	// Dockerfiles
 	public static final String MASTER_DOCKERFILES_DIRNAME = "masterDockerfiles";
@@ -95,6 +102,10 @@ public class Constants {
 	public static final String IDC_CONFIG_FILE = "idc.config";
     public static final String BASE_PATH_PROPERTY_KEY = "idcBasePath";
     public static final String APP_PREFIX_KEY = "appPrefix";
+    public static final String DB_SYNC_POLICY_KEY = "dbSyncPolicy";
+    public static final String ARTIFACTS_STAGING_KEY = "artifactsStaging";
+    public static final String BUILD_CONTEXT_KEY = "buildContext";
+    public static final String BUILD_CONTEXT_STREAM = "stream";
     
     public static final String modifiedAppDirPromptQues = "Warning: The above app directory cannot be detected either because it was deleted or modified. Stop and remove the above container? (yes/no): ";
 	public static final String missingIDCDirPromptQues = "Warning: The .idc directory cannot be detected. Stop and remove the above container? (yes/no): ";
@@ -140,6 +151,31 @@ public class Constants {
 	public static final String START_MODE_DEBUG_NO_INIT = "debugNoInit";
 	
 	public static final String DB_CHARTDIR_HASH = "CHARTDIR_HASH";
+	public static final String CHARTDIR_HASH_ALGORITHM = "SHA-256";
+
+	// IDC server
+	public static final String IDC_SERVER_PORT = "IDC_SERVER_PORT";
+	public static final String IDC_SERVER_PORT_KEY = "--port=";
+
+	// Number of projects idc batch runs at once, or removals system-cleanup runs at once
+	public static final String PARALLELISM_KEY = "--parallelism=";
+	public static final int DEFAULT_BATCH_PARALLELISM = 4;
+	public static final int DEFAULT_CLEANUP_PARALLELISM = 4;
+
+	// Answer yes to the system-cleanup prompts, so it can run without a terminal
+	public static final String ASSUME_YES_KEY = "--yes";
+
+	// Set to true to print verbose messages, such as how long each command took
+	public static final String IDC_VERBOSE = "IDC_VERBOSE";
+
+	// Write each message and result as a line of JSON (see EventLog), rather than as text
+	public static final String IDC_OUTPUT = "IDC_OUTPUT";
+	public static final String OUTPUT_KEY = "--output=";
+	public static final String OUTPUT_JSON = "json";
+	public static final String OUTPUT_TEXT = "text";
+
+	// Set to true to write a trace of how long each phase of a command took to .idc/trace (see Trace)
+	public static final String IDC_TRACE = "IDC_TRACE";
 	
 	enum ErrorCode {
 		wrongUsage("The arguments used are invalid"),
@@ -148,7 +184,8 @@ public class Constants {
 		containerStartFailed("Unable to start container."),
 		containerRemoveFailed("The container was not successfully removed"),
 		containerCleanupFailed("The container cleanup was not successful"),
-		applicationBuildFailed("Application build failed.");
+		applicationBuildFailed("Application build failed."),
+		batchFailed("The command failed for one or more projects");
 
 		private String msg;
 	
@@ -13,96 +13,419 @@
 package org.eclipse.codewind.iterdev;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 
-/** Simple key-value store; this class is not thread safe.  */
+/** Simple key-value store; individual operations are synchronized so that a single instance may be
+ * shared between the request threads of the IDC server.
+ *
+ * The map is stored as a snapshot file (db-<id>) plus a journal file (journal-<id>). Changes are appended
+ * to the journal, one commit per put/remove/putAll, and the journal is folded back into the snapshot once
+ * it grows past COMPACTION_THRESHOLD records.
+ *
+ * Several IDC processes may share a database (for example db-global). Writers hold an exclusive
+ * FileChannel lock on lock-<id> for the length of a single commit, and first re-read the files if another
+ * process changed them, so that no committed change is lost. Readers do not lock: every commit carries a
+ * version number, the snapshot is replaced with an atomic rename and records the version it contains,
+ * and journal commits at or below that version are skipped on replay.
+ *
+ * A change that depends on the current contents (such as reserving ports no other application holds) must be
+ * made with update(...), which computes it under the lock, rather than by a get followed by a put. */
 public class DBMap {
 
 	public static final String DBPREFIX = "db-";
-	
+
+	public static final String JOURNALPREFIX = "journal-";
+
+	public static final String LOCKPREFIX = "lock-";
+
+	/** When journal changes are forced to disk */
+	public static enum SyncPolicy {
+		/** Leave it to the OS to write the journal out */
+		none,
+		/** fsync the journal after every commit */
+		commit
+	};
+
+	/** Computes the changes of an update(...) from the latest committed contents of the database */
+	public static interface IUpdate {
+		/** Return the entries to put, with a null value for each key to remove; an empty map commits nothing. */
+		Map<String, String> apply(Map<String, String> current);
+	}
+
+	/** Number of journal records after which the journal is compacted into the snapshot file */
+	private static final int COMPACTION_THRESHOLD = 256;
+
+	private static final String PUT_RECORD = "+";
+	private static final String REMOVE_RECORD = "-";
+	private static final String COMMIT_RECORD = "=";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/** Snapshot entry holding the version of the snapshot; it is not part of the map. */
+	private static final String VERSION_KEY = "#version";
+
+	private static SyncPolicy syncPolicy = SyncPolicy.commit;
+
+	/** Instances handed out by open(...), keyed by db file. Only the IDC server reuses these across commands. */
+	private static final Map<File, DBMap> openMaps = new HashMap<>();
+
+	/** FileChannel locks are held per JVM, so threads of this JVM writing the same database must also take this lock. */
+	private static final Map<File, Object> jvmLocks = new HashMap<>();
+
 	private final File file;
-	
+
+	private final File journal;
+
+	private final File lockFile;
+
 	private final Map<String, String> map = new HashMap<>();
-	
+
 	private final String id;
-	
+
+	/** Version of the last commit seen by this instance */
+	private long version;
+
+	/** Number of records in the journal file */
+	private int journalRecords;
+
+	/** Last modified time and length of the db and journal files when they were last read or written by this instance */
+	private long lastModified, journalLastModified;
+
+	private long length, journalLength;
+
 	public DBMap(String id, File idcBase) throws IOException {
 		this.id = id;
-		
+
 		File dir = new File(idcBase, "db");
-		
+
 		file = new File(dir, DBPREFIX+id);
-		
+
+		journal = new File(dir, JOURNALPREFIX+id);
+
+		lockFile = new File(dir, LOCKPREFIX+id);
+
+		readMap();
+	}
+
+	/** Return a shared instance for the given db id, re-reading the db file only if it was changed (or removed)
+	 * since this JVM last read or wrote it. */
+	public static DBMap open(String id, File idcBase) throws IOException {
+		File key = new File(new File(idcBase, "db"), DBPREFIX+id).getAbsoluteFile();
+		synchronized(openMaps) {
+			DBMap result = openMaps.get(key);
+			if(result == null) {
+				result = new DBMap(id, idcBase);
+				openMaps.put(key, result);
+			} else {
+				result.reloadIfChanged();
+			}
+			return result;
+		}
+	}
+
+	public static void setSyncPolicy(SyncPolicy policy) {
+		syncPolicy = policy;
+	}
+
+	/** Return the ids of the databases stored under the given .idc directory, whether they have a snapshot or
+	 * (if they were written before the snapshot was always created) only a journal */
+	public static List<String> listIds(File idcBase) {
+		Set<String> result = new TreeSet<>();
+
+		String[] names = new File(idcBase, "db").list();
+		if(names != null) {
+			for(String name : names) {
+				if(name.endsWith(TEMP_SUFFIX)) {
+					continue;
+				}
+				if(name.startsWith(DBPREFIX)) {
+					result.add(name.substring(DBPREFIX.length()));
+				} else if(name.startsWith(JOURNALPREFIX)) {
+					result.add(name.substring(JOURNALPREFIX.length()));
+				}
+			}
+		}
+		return new ArrayList<>(result);
+	}
+
+	private synchronized void reloadIfChanged() throws IOException {
+		if(file.lastModified() != lastModified || file.length() != length
+				|| journal.lastModified() != journalLastModified || journal.length() != journalLength) {
+			map.clear();
+			readMap();
+		}
+	}
+
+	private void readMap() throws IOException {
+		long snapshotVersion = 0;
+
 		if(file.exists()) {
-			
-			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+
+			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
 			String str;
 			while(null != (str = br.readLine())) {
-				
+
 				int index = str.indexOf("@#@");
 				String value = str.substring(index+3).trim();
 				if(value.equals("null")) { value = null; }
-				
-				map.put(str.substring(0, index), value);
+
+				String key = str.substring(0, index);
+				if(key.equals(VERSION_KEY)) {
+					snapshotVersion = Long.parseLong(value);
+					continue;
+				}
+
+				map.put(key, value);
+			}
+			br.close();
+
+		}
+
+		version = snapshotVersion;
+
+		readJournal();
+
+		lastModified = file.lastModified();
+		length = file.length();
+	}
+
+	/** Replay the committed changes in the journal on top of the snapshot. Records after the last commit
+	 * record were not completely written, so they are ignored, as are commits the snapshot already contains. */
+	private void readJournal() throws IOException {
+		journalRecords = 0;
+
+		if(journal.exists()) {
+			List<String> pending = new ArrayList<>();
+
+			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(journal), StandardCharsets.UTF_8));
+			String str;
+			while(null != (str = br.readLine())) {
+				if(str.startsWith(COMMIT_RECORD)) {
+					String commitVersion = str.substring(COMMIT_RECORD.length()).trim();
+					long v = commitVersion.isEmpty() ? version + 1 : Long.parseLong(commitVersion);
+					if(v > version) {
+						for(String record : pending) {
+							applyRecord(record);
+						}
+						version = v;
+					}
+					journalRecords += pending.size();
+					pending.clear();
+				} else {
+					pending.add(str);
+				}
 			}
 			br.close();
-			
 		}
+
+		journalLastModified = journal.lastModified();
+		journalLength = journal.length();
 	}
-	
-	
+
+	private void applyRecord(String record) {
+		if(record.startsWith(PUT_RECORD)) {
+			int index = record.indexOf("@#@");
+			if(index != -1) {
+				map.put(record.substring(PUT_RECORD.length(), index), record.substring(index+3));
+			}
+		} else if(record.startsWith(REMOVE_RECORD)) {
+			map.remove(record.substring(REMOVE_RECORD.length()));
+		}
+	}
+
+
 	public String getId() {
 		return id;
 	}
 
-	public String get(String key) {
+	/** The version of the last commit this instance has read or written */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	public synchronized String get(String key) {
 		return map.get(key);
 	}
-	
-	public Map<String, String> getMap() {
-		return Collections.unmodifiableMap(map);
+
+	public synchronized Map<String, String> getMap() {
+		return Collections.unmodifiableMap(new HashMap<>(map));
+	}
+
+	public synchronized void remove(String key) {
+		commit(current -> Collections.singletonMap(key, null));
+	}
+
+	/** Put the given value; a null value removes the key. */
+	public synchronized void put(String key, String value) {
+		commit(current -> Collections.singletonMap(key, value));
+	}
+
+	/** Put all of the given entries with a single journal commit. A null value removes the key. */
+	public synchronized void putAll(Map<String, String> entries) {
+		if(entries.isEmpty()) {
+			return;
+		}
+
+		commit(current -> entries);
 	}
-	
-	public void remove(String key) {
-		map.remove(key);
-		
+
+	/** Commit the entries the given update computes from the latest committed contents of the database, including
+	 * those of other processes. The database lock is held from reading the contents to committing the entries, so
+	 * no other commit can come in between. Returns the committed entries. */
+	public synchronized Map<String, String> update(IUpdate update) {
+		return commit(update);
+	}
+
+	private Map<String, String> commit(IUpdate update) {
+		Map<String, String> entries = null;
 		try {
-			writeMap();
+			if(!file.getParentFile().exists())
+				file.getParentFile().mkdirs();
+
+			Object jvmLock;
+			synchronized(jvmLocks) {
+				jvmLock = jvmLocks.computeIfAbsent(lockFile.getAbsoluteFile(), k -> new Object());
+			}
+
+			synchronized(jvmLock) {
+				try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rw")) {
+					FileLock lock = raf.getChannel().lock();
+					try {
+						// The lock file holds the version of the last commit. If another process committed since we last 
+						// read the files, pick up its changes before adding ours on top of them.
+						String lockVersion = raf.length() > 0 ? raf.readLine() : null;
+						if(lockVersion != null && !lockVersion.trim().equals(Long.toString(version))) {
+							map.clear();
+							readMap();
+						} else {
+							reloadIfChanged();
+						}
+
+						entries = update.apply(Collections.unmodifiableMap(new HashMap<>(map)));
+						if(entries.isEmpty()) {
+							return entries;
+						}
+
+						applyEntries(entries);
+						version++;
+
+						// The first commit writes the snapshot, so that the database is listed (see listIds) from the start
+						if(!file.exists() || journalRecords + entries.size() > COMPACTION_THRESHOLD) {
+							writeMap();
+						} else {
+							appendToJournal(entries);
+						}
+
+						raf.setLength(0);
+						raf.writeBytes(Long.toString(version));
+					} finally {
+						lock.release();
+					}
+				}
+			}
 		} catch (IOException e) {
+			// Keep the change in memory, so the current command still sees it
+			if(entries == null) {
+				entries = update.apply(Collections.unmodifiableMap(new HashMap<>(map)));
+			}
+			applyEntries(entries);
 			e.printStackTrace();
-		}		
+		}
+		return entries;
 	}
-	
-	public void put(String key, String value) {
-		map.put(key, value);
+
+	private void applyEntries(Map<String, String> entries) {
+		for(Map.Entry<String, String> e : entries.entrySet()) {
+			if(e.getValue() == null) {
+				map.remove(e.getKey());
+			} else {
+				map.put(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	private void appendToJournal(Map<String, String> entries) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for(Map.Entry<String, String> e : entries.entrySet()) {
+			if(e.getValue() == null) {
+				sb.append(REMOVE_RECORD).append(e.getKey()).append("\n");
+			} else {
+				sb.append(PUT_RECORD).append(e.getKey()).append("@#@").append(e.getValue()).append("\n");
+			}
+		}
+		sb.append(COMMIT_RECORD).append(version).append("\n");
+
+		FileOutputStream fos = new FileOutputStream(journal, true);
 		try {
-			writeMap();
-		} catch (IOException e) {
-			e.printStackTrace();
+			fos.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+			if(syncPolicy == SyncPolicy.commit) {
+				fos.getFD().sync();
+			}
+		} finally {
+			fos.close();
 		}
+		journalRecords += entries.size();
+
+		journalLastModified = journal.lastModified();
+		journalLength = journal.length();
 	}
-	
+
+	/** Write the whole map to a new snapshot file, rename it over the old one, then empty the journal. */
 	private void writeMap() throws IOException {
-		if(!file.getParentFile().exists())
-			file.getParentFile().mkdirs();
-		FileWriter fw = new FileWriter(file);
-		
-		for(Map.Entry<String, String> e : map.entrySet()) {
-			
-			// Null values should not be written to the file, rather than being written as nulls
-			if(e.getValue() == null) { continue; }
-			
-			fw.write(e.getKey()+"@#@"+e.getValue()+"\n");
+		File tempFile = new File(file.getParentFile(), file.getName() + TEMP_SUFFIX);
+
+		FileOutputStream fos = new FileOutputStream(tempFile);
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
+		try {
+			bw.write(VERSION_KEY+"@#@"+version+"\n");
+
+			for(Map.Entry<String, String> e : map.entrySet()) {
+
+				// Null values should not be written to the file, rather than being written as nulls
+				if(e.getValue() == null) { continue; }
+
+				bw.write(e.getKey()+"@#@"+e.getValue()+"\n");
+			}
+			bw.flush();
+			if(syncPolicy == SyncPolicy.commit) {
+				fos.getFD().sync();
+			}
+		} finally {
+			bw.close();
 		}
-		fw.close();
+
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		// The journal is only emptied once the snapshot contains all of its changes. Readers that still see
+		// the old journal skip its commits, as the snapshot version covers them.
+		if(journal.exists() && !journal.delete()) {
+			new FileOutputStream(journal).close();
+		}
+		journalRecords = 0;
+
+		lastModified = file.lastModified();
+		length = file.length();
+		journalLastModified = journal.lastModified();
+		journalLength = journal.length();
 	}
-	
+
 }
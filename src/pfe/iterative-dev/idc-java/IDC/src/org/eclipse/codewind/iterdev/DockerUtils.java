@@ -28,12 +28,18 @@ import org.eclipse.codewind.iterdev.tasks.TaskUtils;
 public class DockerUtils {
 
     public static boolean checkForContainerImage(IDCContext context) throws InterruptedException, IOException {
-		boolean isPresent = false;
+		long startTime = System.currentTimeMillis();
+		List<String> repositories = listImageRepositories(context);
+		Logger.verbose("Listed " + repositories.size() + " container images in " + (System.currentTimeMillis() - startTime) + "ms");
 
-		ProcessRunner pr = TaskUtils.runCmd("docker images --format \"{{.Repository}}\"", context, false);
+		return checkForContainerImage(context, repositories);
+    }
+
+	/** Check for the application's image in a list of image repositories that was already read */
+	public static boolean checkForContainerImage(IDCContext context, List<String> repositories) {
+		boolean isPresent = false;
 
-		Thread.sleep(1000);
-		for (String str : pr.getReceived().split("\\r?\\n")) {
+		for (String str : repositories) {
 			if (str != null && str.equals(context.getImageName())) {
 				isPresent = true;
 				Logger.info("----");
@@ -46,14 +52,12 @@ public class DockerUtils {
 		}
 
 		return isPresent;
-    }
+	}
 
 	public static List<List<String>> dockerPs(IDCContext context) throws IOException, InterruptedException {
 		List<List<String>> result = new ArrayList<>();
 
-		ProcessRunner pr = TaskUtils.runCmd("docker ps --no-trunc -q", context, false);
-
-		for (String str : pr.getReceived().split("\\r?\\n")) {
+		for (String str : listRunningContainerIds(context)) {
 
 			if (str.startsWith("CONTAINER ID")) {
 				continue;
@@ -65,10 +69,77 @@ public class DockerUtils {
 		return result;
 	}
 
+	/** The repository names of the local images, as listed by docker images --format {{.Repository}} */
+	public static List<String> listImageRepositories(IDCContext context) throws IOException, InterruptedException {
+		ProcessRunner pr = TaskUtils.runCmd("docker images --format \"{{.Repository}}\"", context, false);
+		return toList(pr.receivedLines());
+	}
+
+	/** The full ids of the running containers, as listed by docker ps --no-trunc -q */
+	public static List<String> listRunningContainerIds(IDCContext context) throws IOException, InterruptedException {
+		ProcessRunner pr = TaskUtils.runCmd("docker ps --no-trunc -q", context, false);
+		return toList(pr.receivedLines());
+	}
+
+	/** The images of the running containers, as listed by docker ps --format {{.Image}} */
+	public static List<String> listRunningContainerImages(IDCContext context) throws IOException, InterruptedException {
+		ProcessRunner pr = TaskUtils.runCmd("docker ps --format \"{{.Image}}\"", context, false);
+		return toList(pr.receivedLines());
+	}
+
+	/** The id of a (running or stopped) container with the given name, or null if there is none */
+	public static String findContainerId(IDCContext context, String containerName) throws IOException, InterruptedException {
+		ProcessRunner pr = TaskUtils.runCmd("docker ps -aq -f name=" + containerName, context, false);
+		if(pr.getErrorCode().orElse(0) != 0) {
+			Logger.error("Error code: " + pr.getErrorCode() + ", No container with the name " + containerName + " was found.");
+		}
+		String containerID = null;
+		for (String line : pr.receivedLines()) {
+			containerID = line.trim();
+		}
+		return containerID == null || containerID.isEmpty() ? null : containerID;
+	}
+
+	/** Stop the given container, as docker stop does; returns false if it could not be stopped */
+	public static boolean stopContainer(IDCContext context, String container) throws IOException, InterruptedException {
+		return runDockerCmd("docker stop " + container, context);
+	}
+
+	/** Remove the given container, as docker rm [-f] does; returns false if it could not be removed */
+	public static boolean removeContainer(IDCContext context, String container, boolean force) throws IOException, InterruptedException {
+		return runDockerCmd("docker rm " + (force ? "-f " : "") + container, context);
+	}
+
+	/** Remove the given image, as docker image rm [-f] does; returns false if it could not be removed */
+	public static boolean removeImage(IDCContext context, String image, boolean force) throws IOException, InterruptedException {
+		return runDockerCmd("docker image rm " + image + (force ? " -f" : ""), context);
+	}
+
+	private static boolean runDockerCmd(String cmd, IDCContext context) throws IOException, InterruptedException {
+		ProcessRunner pr = TaskUtils.runCmd(cmd, context, false);
+		if(pr.getErrorCode().orElse(0) != 0) {
+			Logger.info("Error code: " + pr.getErrorCode() + " from " + cmd);
+			return false;
+		}
+		return true;
+	}
+
+	private static List<String> toList(Iterable<String> lines) {
+		List<String> result = new ArrayList<>();
+		lines.forEach(result::add);
+		return result;
+	}
+
 	// 	
 	// Checks a given Dockerfile for COPY commands and tries to resolve them for an application's source and build output	
 	//	
-	public static void handleDockerfileCopyCommands(File applicationDir, File containerBuildContextDir) throws IOException {	
+	public static void handleDockerfileCopyCommands(File applicationDir, File containerBuildContextDir) throws IOException {
+		handleDockerfileCopyCommands(applicationDir, containerBuildContextDir, true);
+	}
+
+	/** As handleDockerfileCopyCommands(applicationDir, containerBuildContextDir), but only copying the application's
+	 * source files if copySources is true (they don't need copying when the context is streamed from the app dir) */
+	public static void handleDockerfileCopyCommands(File applicationDir, File containerBuildContextDir, boolean copySources) throws IOException {	
 		File mergedDockerfile = new File(containerBuildContextDir, "Dockerfile-idc");
 		InputStreamReader fin = null;
 		BufferedReader bin = null;
@@ -113,7 +184,7 @@ public class DockerUtils {
 							File f = new File(containerBuildContextDir, param);
 							f.mkdirs();
 								
-						} else if (param.startsWith("src")) {
+						} else if (param.startsWith("src") && copySources) {
 								
 							// Handle application source files/folders	
 							File appFile = new File(applicationDir, param);
@@ -200,8 +271,12 @@ public class DockerUtils {
 	}
 
 	public static boolean handleDockerImageBuildSetup(File applicationDir, File mergedDockerfileDir) throws IOException {	
+		return handleDockerImageBuildSetup(applicationDir, mergedDockerfileDir, true);
+	}
+
+	public static boolean handleDockerImageBuildSetup(File applicationDir, File mergedDockerfileDir, boolean copySources) throws IOException {	
 		try {	
-			handleDockerfileCopyCommands(applicationDir, mergedDockerfileDir);	
+			handleDockerfileCopyCommands(applicationDir, mergedDockerfileDir, copySources);	
 		} catch(Exception e) {	
 			Logger.error("Could not set up Dockerfile build context", e);	
 		}	
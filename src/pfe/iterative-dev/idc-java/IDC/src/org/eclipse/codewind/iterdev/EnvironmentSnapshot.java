@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The local images, running containers and pods, listed at the same time when IDC starts rather than one after
+ * another as each is needed, so that the build and start decisions in IDC.main are all made from one view.
+ *
+ * Once IDC changes any of them (by removing, building or refreshing a container) the snapshot must be
+ * invalidated; each list is then queried again the next time it is read. A snapshot created with onDemand() starts
+ * out that way, for commands that may not read the lists at all.
+ */
+public class EnvironmentSnapshot {
+
+	/** The queries the lists are read with; DockerUtils and KubeUtils for the application of an IDCContext */
+	public static interface IQueries {
+		List<String> listImageRepositories() throws IOException, InterruptedException;
+
+		/** Whether the application's image is among the image repositories */
+		boolean checkForContainerImage(List<String> imageRepositories);
+
+		Set<String> listRunningContainerIds() throws IOException, InterruptedException;
+
+		/** The pods of the application's helm release, or all of the pods if allPods is set or it has no release yet */
+		List<KubeApiClient.Pod> listPods(boolean allPods) throws IOException, InterruptedException;
+	}
+
+	private static interface IQuery<T> {
+		T run() throws IOException, InterruptedException;
+	}
+
+	private final IQueries queries;
+
+	private CompletableFuture<List<String>> imageRepositories;
+
+	private CompletableFuture<Set<String>> runningContainerIds;
+
+	private CompletableFuture<List<KubeApiClient.Pod>> pods;
+
+	/** Whether the pods were listed without the release filter */
+	private boolean allPods;
+
+	private EnvironmentSnapshot(IQueries queries) {
+		this.queries = queries;
+	}
+
+	/** Start listing the images, and either the pods (on Kubernetes) or the running containers, and return without
+	 * waiting for them */
+	public static EnvironmentSnapshot prefetch(IDCContext context) {
+		return prefetch(new ContextQueries(context), context.isK8s());
+	}
+
+	/** Return a snapshot that lists the images, containers and pods only when they are first read */
+	public static EnvironmentSnapshot onDemand(IDCContext context) {
+		return onDemand(new ContextQueries(context));
+	}
+
+	public static EnvironmentSnapshot onDemand(IQueries queries) {
+		return new EnvironmentSnapshot(queries);
+	}
+
+	public static EnvironmentSnapshot prefetch(IQueries queries, boolean isK8s) {
+		EnvironmentSnapshot snapshot = new EnvironmentSnapshot(queries);
+		ExecutorService pool = Executors.newFixedThreadPool(2, r -> {
+			Thread t = new Thread(r, "IDC prefetch");
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			snapshot.imageRepositories = start("images", queries::listImageRepositories, pool);
+			if (isK8s) {
+				snapshot.pods = start("pods", () -> queries.listPods(false), pool);
+			} else {
+				snapshot.runningContainerIds = start("containers", queries::listRunningContainerIds, pool);
+			}
+		} finally {
+			// The queries already submitted still run
+			pool.shutdown();
+		}
+		return snapshot;
+	}
+
+	/** Whether the application's image is present; see DockerUtils.checkForContainerImage() */
+	public synchronized boolean checkForContainerImage() throws IOException, InterruptedException {
+		return Trace.call("checkImage", () -> {
+			if (imageRepositories == null) {
+				imageRepositories = CompletableFuture.completedFuture(queries.listImageRepositories());
+			}
+			return queries.checkForContainerImage(get(imageRepositories));
+		});
+	}
+
+	/** Whether a container with the given id is running */
+	public synchronized boolean isContainerRunning(String containerId) throws IOException, InterruptedException {
+		return Trace.call("checkContainer", () -> {
+			if (runningContainerIds == null) {
+				runningContainerIds = CompletableFuture.completedFuture(queries.listRunningContainerIds());
+			}
+			return get(runningContainerIds).contains(containerId);
+		});
+	}
+
+	/** Whether the pod with the given name is running, and not being deleted */
+	public synchronized boolean isPodRunning(String podName) throws IOException, InterruptedException {
+		return Trace.call("checkPod", () -> {
+			if (pods == null) {
+				pods = CompletableFuture.completedFuture(queries.listPods(false));
+				allPods = false;
+			}
+			KubeApiClient.Pod pod = findPod(get(pods), podName);
+			if (pod == null && !allPods) {
+				// The pod may not have the release's labels (yet), so look for it among all of the pods, as kubectl did
+				Logger.verbose("The pod " + podName + " is not in the release's pods; listing all of the pods");
+				pods = CompletableFuture.completedFuture(queries.listPods(true));
+				allPods = true;
+				pod = findPod(get(pods), podName);
+			}
+			return pod != null && pod.isRunning();
+		});
+	}
+
+	/** Discard the lists, after IDC has changed the images, containers or pods */
+	public synchronized void invalidate() {
+		imageRepositories = null;
+		runningContainerIds = null;
+		pods = null;
+	}
+
+	private static KubeApiClient.Pod findPod(List<KubeApiClient.Pod> pods, String podName) {
+		for (KubeApiClient.Pod pod : pods) {
+			if (pod.getName().equals(podName)) {
+				return pod;
+			}
+		}
+		return null;
+	}
+
+	private static <T> CompletableFuture<T> start(String name, IQuery<T> query, ExecutorService pool) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		pool.execute(() -> {
+			long start = System.currentTimeMillis();
+			try {
+				result.complete(Trace.call("prefetch " + name, query::run));
+			} catch (Throwable t) {
+				result.completeExceptionally(t);
+			}
+			Logger.verbose("Prefetch of the " + name + " finished after " + (System.currentTimeMillis() - start) + "ms");
+		});
+		return result;
+	}
+
+	/** Wait for the query, and rethrow its failure as the query would have thrown it */
+	private static <T> T get(CompletableFuture<T> query) throws IOException, InterruptedException {
+		try {
+			return query.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof InterruptedException) {
+				throw (InterruptedException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/** Lists the images, containers and pods of the application with the docker CLI, and kubectl or the
+	 * Kubernetes API */
+	private static class ContextQueries implements IQueries {
+
+		private final IDCContext context;
+
+		ContextQueries(IDCContext context) {
+			this.context = context;
+		}
+
+		@Override
+		public List<String> listImageRepositories() throws IOException, InterruptedException {
+			return DockerUtils.listImageRepositories(context);
+		}
+
+		@Override
+		public boolean checkForContainerImage(List<String> imageRepositories) {
+			return DockerUtils.checkForContainerImage(context, imageRepositories);
+		}
+
+		@Override
+		public Set<String> listRunningContainerIds() throws IOException, InterruptedException {
+			return new HashSet<String>(DockerUtils.listRunningContainerIds(context));
+		}
+
+		@Override
+		public List<KubeApiClient.Pod> listPods(boolean allPods) throws IOException, InterruptedException {
+			String releaseName = allPods ? null : context.getAppDb().get(Constants.DB_HELM_RELEASE);
+			return KubeUtils.listPods(context, releaseName != null ? KubeUtils.releaseSelector(releaseName) : null).getPods();
+		}
+	}
+}
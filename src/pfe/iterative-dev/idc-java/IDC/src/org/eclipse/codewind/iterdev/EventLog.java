@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import org.eclipse.codewind.iterdev.ProcessRunner.ConsoleStream;
+
+/**
+ * The JSON lines output mode of IDC, selected with --output=json (or IDC_OUTPUT=json in the environment), in which
+ * each line IDC writes to stdout is a JSON object describing one event, so that the caller can read the results of
+ * a command as they happen rather than matching the text of its console.
+ *
+ * Every event has an "event" field with its type, and a "timestamp" in milliseconds since the epoch:
+ *   log          a message from Logger.info() or Logger.verbose(): level, message
+ *   error        a message from Logger.error(): message, exception
+ *   output       a line of output from a command IDC ran: stream (out or err), line
+ *   phaseStart   a task has started: phase
+ *   phaseEnd     a task has ended: phase, success, durationMs
+ *   container    the application container was started: containerId
+ *   pod          the application was deployed to Kubernetes: releaseId, deploymentId, podId
+ *   status       the build or application state was updated: stateType, state, message
+ *   logSegment   new lines were read from a log (see LogFollower): logType, file, start, end (byte offsets)
+ *   result       the command has finished: command, exitCode, durationMs
+ *
+ * Events of a project run by idc batch also have a "project" field. The mode applies to the thread that runs the
+ * command and the threads it creates, as ConsoleRouter's console does, so each command of the IDC server has its own.
+ */
+public class EventLog {
+
+	public static interface IPhase<T> {
+		T run() throws Exception;
+	}
+
+	private static final boolean DEFAULT_JSON = Constants.OUTPUT_JSON.equalsIgnoreCase(System.getenv(Constants.IDC_OUTPUT));
+
+	private static final InheritableThreadLocal<Boolean> json = new InheritableThreadLocal<Boolean>() {
+		@Override
+		protected Boolean initialValue() {
+			return DEFAULT_JSON;
+		}
+	};
+
+	private static final InheritableThreadLocal<String> project = new InheritableThreadLocal<>();
+
+	/** Whether the current command writes JSON lines */
+	public static boolean isJson() {
+		return json.get();
+	}
+
+	public static void setJson(boolean enabled) {
+		json.set(enabled);
+	}
+
+	/** The project name added to the events of the current thread, or null for none */
+	public static void setProject(String name) {
+		project.set(name);
+	}
+
+	public static void log(String level, String message) {
+		emit("log", "level", level, "message", message);
+	}
+
+	public static void error(String message, Exception e) {
+		emit("error", "message", message, "exception", e != null ? e.toString() : null);
+	}
+
+	public static void output(ConsoleStream stream, String line) {
+		emit("output", "stream", stream == ConsoleStream.ERR ? "err" : "out", "line", line);
+	}
+
+	public static void container(String containerId) {
+		emit("container", "containerId", containerId);
+	}
+
+	public static void pod(String releaseId, String deploymentId, String podId) {
+		emit("pod", "releaseId", releaseId, "deploymentId", deploymentId, "podId", podId);
+	}
+
+	public static void status(String stateType, String state, String message) {
+		emit("status", "stateType", stateType, "state", state, "message", message);
+	}
+
+	public static void result(String command, int exitCode, long durationMs) {
+		emit("result", "command", command, "exitCode", exitCode, "durationMs", durationMs);
+	}
+
+	/**
+	 * Run a task between phaseStart and phaseEnd events, as a span of the command's trace. The phase succeeded if the
+	 * task returned true, or (for a task that returns an id) anything other than null.
+	 */
+	public static <T> T phase(String name, IPhase<T> task) throws Exception {
+		return Trace.call(name, () -> {
+			if (!isJson()) {
+				return task.run();
+			}
+
+			emit("phaseStart", "phase", name);
+			long start = System.currentTimeMillis();
+			boolean success = false;
+			try {
+				T result = task.run();
+				success = result instanceof Boolean ? (Boolean) result : result != null;
+				return result;
+			} finally {
+				emit("phaseEnd", "phase", name, "success", success, "durationMs", System.currentTimeMillis() - start);
+			}
+		});
+	}
+
+	/** Write an event with the given field names and values (strings, numbers, booleans or null), if JSON output is on */
+	static void emit(String event, Object... fields) {
+		if (!isJson()) {
+			return;
+		}
+
+		StringBuilder sb = new StringBuilder(128);
+		sb.append("{\"event\":").append(JSONUtils.quote(event));
+		sb.append(",\"timestamp\":").append(System.currentTimeMillis());
+		String projectName = project.get();
+		if (projectName != null) {
+			sb.append(",\"project\":").append(JSONUtils.quote(projectName));
+		}
+		for (int i = 0; i + 1 < fields.length; i += 2) {
+			Object value = fields[i + 1];
+			sb.append(',').append(JSONUtils.quote(fields[i].toString())).append(':');
+			if (value instanceof Number || value instanceof Boolean) {
+				sb.append(value);
+			} else {
+				sb.append(JSONUtils.quote(value != null ? value.toString() : null));
+			}
+		}
+		sb.append('}');
+
+		// One println per event, so that the lines of concurrent threads are never interleaved
+		System.out.println(sb);
+	}
+}
@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies files and directory trees into container build contexts.
+ *
+ * File contents are copied with FileChannel.transferTo, which lets the kernel copy between the files without
+ * passing the data through Java buffers. The target of each copied file is given the source's modification time,
+ * so a later copy of the same tree skips the files whose target already has the source's size and modification
+ * time. Directory trees are walked once, then their files are copied in parallel on the fork-join common pool.
+ *
+ * In link mode files are hard linked into the target instead, which shares one copy of their data on disk and in
+ * the page cache between all the targets. This is only safe for files that are never written in place, such as
+ * the IDC artifacts; files that can't be linked (for example because the target is on another file system) are
+ * copied.
+ */
+public class FileCopier {
+
+	/** Number of files a fork-join task copies itself rather than splitting */
+	private static final int FILES_PER_TASK = 16;
+
+	public static enum Mode {
+		/** Copy the files */
+		copy,
+		/** Hard link the files, copying them if they can't be linked */
+		link
+	};
+
+	/** Counts of the files copied, linked and skipped by a copy */
+	public static class Result {
+
+		private final AtomicLong filesCopied = new AtomicLong();
+		private final AtomicLong bytesCopied = new AtomicLong();
+		private final AtomicLong filesSkipped = new AtomicLong();
+		private final AtomicLong bytesSkipped = new AtomicLong();
+		private final AtomicLong filesLinked = new AtomicLong();
+		private final AtomicLong bytesLinked = new AtomicLong();
+
+		/** Set once a link fails, after which the remaining files are copied without trying to link them */
+		private volatile boolean linkFailed = false;
+
+		public long getFilesCopied() {
+			return filesCopied.get();
+		}
+
+		public long getBytesCopied() {
+			return bytesCopied.get();
+		}
+
+		public long getFilesSkipped() {
+			return filesSkipped.get();
+		}
+
+		public long getBytesSkipped() {
+			return bytesSkipped.get();
+		}
+
+		public long getFilesLinked() {
+			return filesLinked.get();
+		}
+
+		/** The size of the linked files, which is the disk space saved by linking rather than copying them */
+		public long getBytesLinked() {
+			return bytesLinked.get();
+		}
+
+		@Override
+		public String toString() {
+			return "copied " + getFilesCopied() + " files (" + getBytesCopied() + " bytes), linked " + getFilesLinked()
+					+ " files (" + getBytesLinked() + " bytes), skipped " + getFilesSkipped() + " unchanged files ("
+					+ getBytesSkipped() + " bytes)";
+		}
+	}
+
+	/** Copy a file, unless the target already has the source's size and modification time */
+	public static Result copyFile(Path source, Path target) throws IOException {
+		Result result = new Result();
+		copyFile(source, Files.readAttributes(source, BasicFileAttributes.class), target, result);
+		return result;
+	}
+
+	/**
+	 * Copy the files under the source directory to the target directory, creating the target directories as
+	 * necessary. Symbolic links are followed, as they were by the File based copy this replaces.
+	 */
+	public static Result copyDirectory(Path sourceDir, Path targetDir) throws IOException {
+		return copyDirectory(sourceDir, targetDir, Mode.copy);
+	}
+
+	/** Copy or hard link the files under the source directory to the target directory, as copyDirectory(source, target) */
+	public static Result copyDirectory(Path sourceDir, Path targetDir, Mode mode) throws IOException {
+		long start = System.currentTimeMillis();
+
+		final List<Path> sources = new ArrayList<>();
+		final List<BasicFileAttributes> sourceAttrs = new ArrayList<>();
+		final List<Path> targets = new ArrayList<>();
+
+		// Create the directories while walking the tree, and collect the files to copy
+		Files.walkFileTree(sourceDir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Files.createDirectories(targetDir.resolve(sourceDir.relativize(dir).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (attrs.isRegularFile()) {
+					sources.add(file);
+					sourceAttrs.add(attrs);
+					targets.add(targetDir.resolve(sourceDir.relativize(file).toString()));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		Result result = new Result();
+		try {
+			ForkJoinPool.commonPool().invoke(new CopyTask(sources, sourceAttrs, targets, 0, sources.size(), mode, result));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		Logger.verbose("Copy of " + sourceDir + " to " + targetDir + " " + result + " in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		return result;
+	}
+
+	@SuppressWarnings("serial")
+	private static class CopyTask extends RecursiveAction {
+
+		private final List<Path> sources;
+		private final List<BasicFileAttributes> sourceAttrs;
+		private final List<Path> targets;
+		private final int from;
+		private final int to;
+		private final Mode mode;
+		private final Result result;
+
+		CopyTask(List<Path> sources, List<BasicFileAttributes> sourceAttrs, List<Path> targets, int from, int to, Mode mode, Result result) {
+			this.sources = sources;
+			this.sourceAttrs = sourceAttrs;
+			this.targets = targets;
+			this.from = from;
+			this.to = to;
+			this.mode = mode;
+			this.result = result;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > FILES_PER_TASK) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new CopyTask(sources, sourceAttrs, targets, from, mid, mode, result),
+						new CopyTask(sources, sourceAttrs, targets, mid, to, mode, result));
+				return;
+			}
+
+			for (int i = from; i < to; i++) {
+				try {
+					if (mode != Mode.link || !linkFile(sources.get(i), sourceAttrs.get(i), targets.get(i), result)) {
+						copyFile(sources.get(i), sourceAttrs.get(i), targets.get(i), result);
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+
+	private static void copyFile(Path source, BasicFileAttributes attrs, Path target, Result result) throws IOException {
+		FileTime mtime = attrs.lastModifiedTime();
+
+		if (isUnchanged(attrs, target)) {
+			result.filesSkipped.incrementAndGet();
+			result.bytesSkipped.addAndGet(attrs.size());
+			return;
+		}
+
+		if (Files.exists(target, LinkOption.NOFOLLOW_LINKS) && Files.isSameFile(source, target)) {
+			// The target was linked in link mode; truncating it would truncate the source
+			Files.delete(target);
+		}
+
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			long position = 0;
+			while (position < size) {
+				position += in.transferTo(position, size - position, out);
+			}
+			result.bytesCopied.addAndGet(size);
+		}
+		Files.setLastModifiedTime(target, mtime);
+		result.filesCopied.incrementAndGet();
+	}
+
+	/** Hard link the target to the source, returning false if the file system doesn't support that */
+	private static boolean linkFile(Path source, BasicFileAttributes attrs, Path target, Result result) throws IOException {
+		if (result.linkFailed) {
+			return false;
+		}
+
+		if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+			if (Files.isSameFile(source, target)) {
+				result.filesLinked.incrementAndGet();
+				result.bytesLinked.addAndGet(attrs.size());
+				return true;
+			}
+			// Replace the copy, rather than writing through it
+			Files.delete(target);
+		}
+
+		try {
+			Files.createLink(target, source);
+		} catch (IOException | UnsupportedOperationException e) {
+			if (!result.linkFailed) {
+				result.linkFailed = true;
+				Logger.verbose("Unable to link " + target + " to " + source + ", copying instead: " + e);
+			}
+			return false;
+		}
+		result.filesLinked.incrementAndGet();
+		result.bytesLinked.addAndGet(attrs.size());
+		return true;
+	}
+
+	private static boolean isUnchanged(BasicFileAttributes sourceAttrs, Path target) {
+		if (System.currentTimeMillis() - sourceAttrs.lastModifiedTime().toMillis() <= FileDigestCache.RACY_WINDOW_MS) {
+			return false;
+		}
+		try {
+			BasicFileAttributes targetAttrs = Files.readAttributes(target, BasicFileAttributes.class);
+			return targetAttrs.isRegularFile() && targetAttrs.size() == sourceAttrs.size()
+					&& targetAttrs.lastModifiedTime().equals(sourceAttrs.lastModifiedTime());
+		} catch (IOException e) {
+			// the target doesn't exist yet
+			return false;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Cache of file digests, keyed by path and digest algorithm, and validated against the file's size, modification
+ * time and file key (device and inode on Unix). A file whose stat has not changed is not read again, so hashing the
+ * pom, server config, Dockerfiles and chart of an unchanged application reads only the cache file.
+ *
+ * The cache is kept in memory (shared by all the commands of an IDC server) and, once setCacheFile() has been
+ * called, in a file under the .idc directory, written by save().
+ */
+public class FileDigestCache {
+
+	public static final String CACHE_FILE_NAME = "digest-cache";
+
+	/** Files modified this recently are not trusted to be unchanged by their size and modification time alone, as
+	 * a further change within the same clock tick would not change their modification time. */
+	public static final long RACY_WINDOW_MS = 2000;
+
+	private static final String SEPARATOR = "\t";
+
+	private static class Entry {
+		final long size;
+		final long mtime;
+		final String fileKey;
+		final String digest;
+
+		Entry(long size, long mtime, String fileKey, String digest) {
+			this.size = size;
+			this.mtime = mtime;
+			this.fileKey = fileKey;
+			this.digest = digest;
+		}
+
+		boolean matches(BasicFileAttributes attrs) {
+			return size == attrs.size() && mtime == mtimeOf(attrs) && fileKey.equals(fileKeyOf(attrs));
+		}
+	}
+
+	/** Entries keyed by algorithm + SEPARATOR + absolute path */
+	private static final Map<String, Entry> entries = new HashMap<>();
+
+	private static File cacheFile;
+
+	private static long cacheFileLastModified = -1;
+
+	private static boolean dirty = false;
+
+	/** Persist the cache in the given file, loading the entries already stored there */
+	public static synchronized void setCacheFile(File file) {
+		if (file.equals(cacheFile)) {
+			if (file.lastModified() == cacheFileLastModified) {
+				return;
+			}
+		}
+		cacheFile = file;
+		load();
+	}
+
+	/** Return the lowercase hex digest of the file's contents, reading the file only if it changed since it was last hashed */
+	public static String digest(File file, String algorithm) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		String key = algorithm + SEPARATOR + file.getAbsolutePath();
+
+		synchronized (FileDigestCache.class) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.matches(attrs)) {
+				return entry.digest;
+			}
+		}
+
+		String digest = computeDigest(file, algorithm);
+
+		if (System.currentTimeMillis() - attrs.lastModifiedTime().toMillis() > RACY_WINDOW_MS) {
+			synchronized (FileDigestCache.class) {
+				entries.put(key, new Entry(attrs.size(), mtimeOf(attrs), fileKeyOf(attrs), digest));
+				dirty = true;
+			}
+		}
+		return digest;
+	}
+
+	public static String computeDigest(File file, String algorithm) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		try (InputStream is = new FileInputStream(file)) {
+			byte[] buffer = new byte[64 * 1024];
+			int len;
+			while ((len = is.read(buffer)) != -1) {
+				md.update(buffer, 0, len);
+			}
+		}
+		return Hex.encodeHexString(md.digest());
+	}
+
+	/** Write the cache file if any digests were added since it was loaded or saved; entries for files that no longer
+	 * exist are dropped. */
+	public static synchronized void save() {
+		if (!dirty || cacheFile == null) {
+			return;
+		}
+
+		for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+			String key = it.next();
+			if (!new File(key.substring(key.indexOf(SEPARATOR) + 1)).exists()) {
+				it.remove();
+			}
+		}
+
+		File tempFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+		try {
+			cacheFile.getParentFile().mkdirs();
+			try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+				for (Map.Entry<String, Entry> e : entries.entrySet()) {
+					Entry entry = e.getValue();
+					bw.write(entry.size + SEPARATOR + entry.mtime + SEPARATOR + entry.fileKey + SEPARATOR + entry.digest
+							+ SEPARATOR + e.getKey() + "\n");
+				}
+			}
+			// Several IDC processes may save at once; the rename means each reader sees one complete file
+			Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			cacheFileLastModified = cacheFile.lastModified();
+			dirty = false;
+		} catch (IOException e) {
+			// The cache only saves work, so failing to write it is not an error
+			Logger.verbose("Unable to write the digest cache " + cacheFile.getPath() + ": " + e);
+			tempFile.delete();
+		}
+	}
+
+	private static void load() {
+		if (!cacheFile.exists()) {
+			return;
+		}
+
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				// size, mtime, file key, digest, then the key, which may itself contain the separator
+				String[] fields = line.split(SEPARATOR, 5);
+				if (fields.length != 5) {
+					continue;
+				}
+				try {
+					entries.putIfAbsent(fields[4], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2], fields[3]));
+				} catch (NumberFormatException e) {
+					// skip the damaged entry
+				}
+			}
+			cacheFileLastModified = cacheFile.lastModified();
+		} catch (IOException e) {
+			Logger.verbose("Unable to read the digest cache " + cacheFile.getPath() + ": " + e);
+		}
+	}
+
+	private static long mtimeOf(BasicFileAttributes attrs) {
+		return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+	}
+
+	private static String fileKeyOf(BasicFileAttributes attrs) {
+		Object fileKey = attrs.fileKey();
+		return fileKey == null ? "-" : fileKey.toString().replace(SEPARATOR, " ");
+	}
+}
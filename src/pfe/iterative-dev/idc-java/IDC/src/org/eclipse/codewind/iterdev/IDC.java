@@ -13,10 +13,13 @@ package org.eclipse.codewind.iterdev;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.eclipse.codewind.iterdev.Constants.ErrorCode;
+import org.eclipse.codewind.iterdev.ProcessRunner.CaptureMode;
+import org.eclipse.codewind.iterdev.ProcessRunner.ConsoleStream;
 import org.eclipse.codewind.iterdev.tasks.BuildApplicationTask;
 import org.eclipse.codewind.iterdev.tasks.ContainerBuildTask;
 import org.eclipse.codewind.iterdev.tasks.ContainerCleanTask;
@@ -28,39 +31,95 @@ import org.eclipse.codewind.iterdev.tasks.TaskUtils;
 
 public class IDC {
 
-	private static String HOST_OS = System.getProperty(Constants.HOST_OS, "");
-	private static String LOCAL_IDC_OS = System.getProperty(Constants.LOCAL_IDC_OS, "");
-	private static String WIN_IDC_PATH = System.getProperty(Constants.WIN_IDC_PATH, "");
-	private static String CONTAINER_NAME = System.getProperty(Constants.CONTAINER_NAME, null);
-	private static String LOG_NAME = System.getProperty(Constants.LOG_NAME, null);
-	private static String PROJECT_ID = System.getProperty(Constants.PROJECT_ID, null);
-	private static String LOCAL_WORKSPACE_ORIGIN = System.getProperty(Constants.LOCAL_WORKSPACE_ORIGIN, null);
-	private static String DOCKER_REGISTRY = System.getProperty(Constants.DOCKER_REGISTRY, null);
-	private static String START_MODE = System.getProperty(Constants.START_MODE, null);
-	private static String DEBUG_PORT = System.getProperty(Constants.DEBUG_PORT, null);
-
 	private static String rootPassword = null;
 
+	/** The number of lines of the server log idc tail starts with, as tail_server.sh does, the first time it is run */
+	private static final int TAIL_INITIAL_LINES = 120;
+
+	private static final long TAIL_POLL_MS = 500;
+
 	public static void main(String[] args) throws IOException, InterruptedException {
 
+		// Run as a long-lived server that executes the commands forwarded by the idc script
+		if (args.length >= 1 && args[0].equalsIgnoreCase(Constants.OPTION_SERVER)) {
+			IDCServer.start(args);
+			return;
+		}
+
+		int returnCode = execute(args, new File(System.getProperty("user.dir")));
+		if (returnCode != 0) {
+			System.exit(returnCode);
+		}
+	}
+
+	/**
+	 * Run a single IDC command against the application in the given directory.
+	 * @return the exit code of the command
+	 */
+	public static int execute(String[] args, File appDirectory) {
+		boolean parentJson = EventLog.isJson();
+		boolean json = parentJson;
+		List<String> commandArgs = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.startsWith(Constants.OUTPUT_KEY)) {
+				json = Constants.OUTPUT_JSON.equalsIgnoreCase(arg.replace(Constants.OUTPUT_KEY, ""));
+			} else {
+				commandArgs.add(arg);
+			}
+		}
+
+		String command = commandArgs.isEmpty() ? null : commandArgs.get(0);
+		EventLog.setJson(json);
+		Trace trace = Trace.begin(command != null ? command : Constants.OPTION_HELP);
+		long start = System.currentTimeMillis();
+		try {
+			int exitCode = executeCommand(commandArgs.toArray(new String[commandArgs.size()]), appDirectory);
+			EventLog.result(command, exitCode, System.currentTimeMillis() - start);
+			return exitCode;
+		} finally {
+			if (trace != null) {
+				trace.end();
+			}
+			EventLog.setJson(parentJson);
+		}
+	}
+
+	private static int executeCommand(String[] args, File appDirectory) {
+
+		String HOST_OS = System.getProperty(Constants.HOST_OS, "");
+		String LOCAL_IDC_OS = System.getProperty(Constants.LOCAL_IDC_OS, "");
+		String WIN_IDC_PATH = System.getProperty(Constants.WIN_IDC_PATH, "");
+		String CONTAINER_NAME = System.getProperty(Constants.CONTAINER_NAME, null);
+		String LOG_NAME = System.getProperty(Constants.LOG_NAME, null);
+		String PROJECT_ID = System.getProperty(Constants.PROJECT_ID, null);
+		String LOCAL_WORKSPACE_ORIGIN = System.getProperty(Constants.LOCAL_WORKSPACE_ORIGIN, null);
+		String DOCKER_REGISTRY = System.getProperty(Constants.DOCKER_REGISTRY, null);
+		String START_MODE = System.getProperty(Constants.START_MODE, null);
+		String DEBUG_PORT = System.getProperty(Constants.DEBUG_PORT, null);
+
 		int returnCode = 0;
 
 		try {
 
 			if (args.length < 1 || args[0].equalsIgnoreCase(Constants.OPTION_HELP)) {
 				Logger.printUsage();
-				System.exit(ErrorCode.wrongUsage.ordinal());
+				return ErrorCode.wrongUsage.ordinal();
 			}
 
 			// If the 'appid' param is used, print the sha1 sum of the current dir and exit.
 			// This is a hidden command that is only used by 'docker shell' in idc.sh.
 			if (args.length >= 1 && args[0].equalsIgnoreCase("appid")) {
-				Logger.info(DigestUtils.sha1Hex(System.getProperty("user.dir").getBytes()));
-				return;
+				Logger.info(DigestUtils.sha1Hex(appDirectory.getPath().getBytes()));
+				return 0;
 			}
 
 			String cmd = args[0];
 			
+			// Run a command across several projects; each gets its own context, as if idc was run in its directory
+			if (cmd.equalsIgnoreCase(Constants.OPTION_BATCH)) {
+				return BatchRunner.execute(args);
+			}
+			
 			//Handle set option
 			if (cmd.equalsIgnoreCase(Constants.OPTION_SET)) {
 				if (args.length > 1) {
@@ -137,7 +196,7 @@ public class IDC {
 			if (!IDCUtils.isValidCommmand(cmd, Constants.VALID_COMMANDS)) {
 				Logger.error("'idc " + cmd +"' is not a valid command.");
 				Logger.printUsage();
-				return;
+				return 0;
 			}
 
 			// Initialize password if required
@@ -158,7 +217,14 @@ public class IDC {
 			// }
 
 			// Create the application context object -- this object contains (mostly) immutable values which are commonly used to implement command functionality across IDC  
-			IDCContext context = new IDCContext(rootPassword, LOCAL_WORKSPACE_ORIGIN, CONTAINER_NAME, PROJECT_ID, LOG_NAME, DOCKER_REGISTRY, START_MODE, DEBUG_PORT);
+			IDCContext context;
+			Trace.Span loadSpan = Trace.span("loadContext");
+			try {
+				context = new IDCContext(appDirectory, rootPassword, LOCAL_WORKSPACE_ORIGIN, CONTAINER_NAME, PROJECT_ID, LOG_NAME, DOCKER_REGISTRY, START_MODE, DEBUG_PORT);
+			} finally {
+				loadSpan.end();
+			}
+			Trace.setApplication(context.getIDCBase(), context.getAppId());
 			
 			// Set up IDC options and exit. Should not attempt to build/run container.
 			if (cmd.equalsIgnoreCase(Constants.OPTION_SET)) {
@@ -181,30 +247,51 @@ public class IDC {
 					Logger.info("Re-archived /file-watcher/idc/artifacts dir");
 				}
 				Logger.info("IDC options set.");
-				return;
+				return 0;
 			}
 			
 			// Switch to dev/prod and exit. Should not attempt to build/run container.
 			if (Constants.MODE.dev.name().equals(cmd.toLowerCase())) {
 				SwitchModeTask.execute(context, Constants.MODE.dev);
-				return;
+				return 0;
 			}
 
 			if (Constants.MODE.prod.name().equals(cmd.toLowerCase())) {
 				SwitchModeTask.execute(context, Constants.MODE.prod);
-				return;
+				return 0;
 			}
 			
 			// Handle idc commands
 			if (cmd.equalsIgnoreCase(Constants.OPTION_SYSTEM_CLEANUP)) {
-				boolean success = ContainerCleanTask.execute(context);
+				boolean assumeYes = false;
+				int parallelism = Constants.DEFAULT_CLEANUP_PARALLELISM;
+				for (int i = 1; i < args.length; i++) {
+					if (args[i].equals(Constants.ASSUME_YES_KEY)) {
+						assumeYes = true;
+					}
+					if (args[i].startsWith(Constants.PARALLELISM_KEY)) {
+						try {
+							parallelism = Integer.parseInt(args[i].replace(Constants.PARALLELISM_KEY, ""));
+						} catch (NumberFormatException e) {
+							parallelism = 0;
+						}
+						if (parallelism < 1) {
+							Logger.error("The parallelism must be a positive number: " + args[i]);
+							return ErrorCode.wrongUsage.ordinal();
+						}
+					}
+				}
+				final boolean cleanupAssumeYes = assumeYes;
+				final int cleanupParallelism = parallelism;
+				boolean success = EventLog.phase("systemCleanup",
+						() -> ContainerCleanTask.execute(context, cleanupAssumeYes, cleanupParallelism));
 				if(!success)
 					returnCode = ErrorCode.containerCleanupFailed.ordinal();
-				System.exit(returnCode);
+				return returnCode;
 			}
 			
 			if (cmd.equalsIgnoreCase(Constants.OPTION_CONTAINER_REMOVE)) {
-				boolean success = ContainerRemoveTask.execute(context);
+				boolean success = EventLog.phase("containerRemove", () -> ContainerRemoveTask.execute(context));
 				if(!success)
 					returnCode = ErrorCode.containerRemoveFailed.ordinal();
 
@@ -214,7 +301,7 @@ public class IDC {
 					ContainerRemoveTask.deleteCorrespondingIDCContents(context.getIDCBase(), appID);
 				}
 
-				System.exit(returnCode);
+				return returnCode;
 			}
 
 			DBMap appDb = context.getAppDb();
@@ -236,17 +323,24 @@ public class IDC {
 			if (cmd.equalsIgnoreCase(Constants.OPTION_STATUS_TRACKER)) {
 				if (!isContainerBuilt) {
 					Logger.error("Container " + context.getContainerName() + " is not running.");
-					return;
+					return 0;
 				}
 
 				Logger.info("Starting the status tracker");
 
+				// Read the server log from the workspace when the container writes it there, so no message is missed between trackers
+				LogFollower follower = LogFollower.forServerLog(context, "statusTracker", 0);
+				if (follower != null) {
+					new StatusTracker(context, follower).start();
+					return 0;
+				}
+
 				ProcessRunner runner = TaskUtils.createRunnerForCmd(curRunCmd + " /home/default/artifacts/status_tracker.sh",
 						context, false);
 				StatusTracker tracker = new StatusTracker(context, runner);
 				tracker.start();
 				
-				return;
+				return 0;
 			}
 
 			boolean containerBuildRequired = false;
@@ -254,7 +348,19 @@ public class IDC {
 			File appDir = context.getAppDirectory();
 			if (!(new File(appDir, "pom.xml").exists())) {
 				Logger.error("A pom.xml file is required in this directory, in order to start the container.");
-				return;
+				return 0;
+			}
+
+			// List the images and the containers (or pods) now, while the hashes below are calculated, if they will be
+			// read: to check the built container, or to look for a stale one on the first run. Tail and clean only
+			// list them, on demand, if the container was built.
+			boolean isFirstDockerRun = !context.isK8s() && appDb.get(Constants.DB_MASTER_DOCKER_FILE_HASH) == null;
+			boolean isFollowUpCmd = cmd.equalsIgnoreCase(Constants.OPTION_TAIL) || cmd.equalsIgnoreCase(Constants.OPTION_CLEAN);
+			EnvironmentSnapshot snapshot;
+			if ((isContainerBuilt || isFirstDockerRun) && !isFollowUpCmd) {
+				snapshot = EnvironmentSnapshot.prefetch(context);
+			} else {
+				snapshot = EnvironmentSnapshot.onDemand(context);
 			}
 
 			if (appDb.get(Constants.DB_VERSION) == null) {
@@ -266,7 +372,7 @@ public class IDC {
 			boolean isRequireImageRebuild = false;
 			String hashOfAppMasterDockerFiles = null;
 			{
-				hashOfAppMasterDockerFiles = DockerUtils.calculateHashOfAppDirMasterDockerFiles(context);
+				hashOfAppMasterDockerFiles = Trace.call("hashDockerfiles", () -> DockerUtils.calculateHashOfAppDirMasterDockerFiles(context));
 
 				// Determine if the user has modified the app directory dockerfiles from since when the container was last built
 				String expectedDockerFileHash = appDb.get(Constants.DB_MASTER_DOCKER_FILE_HASH);
@@ -276,7 +382,8 @@ public class IDC {
 							&& !cmd.equalsIgnoreCase(Constants.OPTION_CONTAINER_REFRESH)) {
 						
 						isRequireImageRebuild = true;
-						ContainerRefreshTask.execute(context);
+						EventLog.phase("containerRefresh", () -> ContainerRefreshTask.execute(context));
+						snapshot.invalidate();
 					}
 				} else {
 					
@@ -286,7 +393,7 @@ public class IDC {
 					// since we're not sure of their state as .idc was deleted.
 					
 					if(!context.isK8s()) {
-						if(DockerUtils.checkForContainerImage(context)) {
+						if(snapshot.checkForContainerImage()) {
 							Logger.info("Erasing any stale app container/image.");
 							
 							// Erase the container
@@ -294,6 +401,7 @@ public class IDC {
 							
 							// Erase the container image
 							TaskUtils.runCmd("docker rmi -f " + context.getImageName(), context, true);
+							snapshot.invalidate();
 						}
 					}
 					
@@ -308,11 +416,12 @@ public class IDC {
 			// and trigger container build as necessary for ICP scenarios
 			{
 				if ( context.isK8s() && new File(appDir, "chart").exists() ) {
-					String chartDir = appDir.getAbsolutePath() + "/chart";
-					String calchHashCmd = "find " + chartDir + " -type f -name \"*.yaml\" -exec sha256sum {} + | awk '{print $1}' | sort | sha256sum";
-					ProcessRunner pr = TaskUtils.runCmd(calchHashCmd, context, false);
-					String hashOfChartDir = pr.getReceived().split("\\r?\\n")[0];
+					String hashOfChartDir = Trace.call("hashChart", () -> IDCUtils.calculateHashOfDirectoryContents(new File(appDir, "chart"),
+							".yaml", Constants.CHARTDIR_HASH_ALGORITHM));
 					String expectedHashofChartDir = appDb.get(Constants.DB_CHARTDIR_HASH);
+					// Hashes stored by the sha256sum pipeline end with "  -"
+					if ( expectedHashofChartDir != null )
+						expectedHashofChartDir = expectedHashofChartDir.split(" ")[0];
 				
 					// Only flag image build required if previous hash exists (i.e. not first time idc being run), 
 					// and if current hash is different, and if container not already refreshed above, etc
@@ -322,7 +431,8 @@ public class IDC {
 						 !hashOfChartDir.equals(expectedHashofChartDir) && 
 						 !cmd.equalsIgnoreCase(Constants.OPTION_CONTAINER_REFRESH)) {
 						isRequireImageRebuild = true;
-						ContainerRefreshTask.execute(context);
+						EventLog.phase("containerRefresh", () -> ContainerRefreshTask.execute(context));
+						snapshot.invalidate();
 					}
 				
 					// update chart dir hash
@@ -332,7 +442,7 @@ public class IDC {
 			}
 			
 
-			if (!isContainerBuilt || isRequireImageRebuild || !DockerUtils.checkForContainerImage(context)) {
+			if (!isContainerBuilt || isRequireImageRebuild || !snapshot.checkForContainerImage()) {
 				if (cmd.equalsIgnoreCase(Constants.OPTION_BUILD)) {
 					Logger.info("* Container build is required.");
 					containerBuildRequired = true;
@@ -357,14 +467,15 @@ public class IDC {
 
 				if (!appDockerBase.exists() && !appDockerBase.mkdirs()) {
 					Logger.error("Error creating docker database dir: " + appDockerBase.getPath());
-					return;
+					return 0;
 				}
 
-				boolean result = ContainerBuildTask.execute(context);
+				boolean result = EventLog.phase("containerBuild", () -> ContainerBuildTask.execute(context));
+				snapshot.invalidate();
 
 				if (!result) {
 					Logger.error(ErrorCode.containerBuildFailed.message());
-					System.exit(ErrorCode.containerBuildFailed.ordinal());
+					return ErrorCode.containerBuildFailed.ordinal();
 				}
 
 				isContainerBuilt = true;
@@ -391,11 +502,7 @@ public class IDC {
 						// If for some reason, a pod is in a terminating 
 						// state, isPodRunning will be false and the code
 						// will proceed to run a new one.
-						for (String line : KubeUtils.kubectlPs(context)) {
-							if (line.contains(context.getKubePodId()) && line.contains("Running")) {
-								isPodRunning = true;
-							}
-						}
+						isPodRunning = snapshot.isPodRunning(context.getKubePodId());
 						if(!isPodRunning) {
 							containerStartRequired = true;
 						}
@@ -408,15 +515,7 @@ public class IDC {
 					// The container needs to be started if we can't find its ID in the list of started containers 
 					if (lastContainerId != null) {
 
-						boolean matched = false;
-						for (List<String> line : DockerUtils.dockerPs(context)) {
-							if (line.contains(lastContainerId)) {
-								matched = true;
-								break;
-							}
-						}
-
-						if (!matched) {
+						if (!snapshot.isContainerRunning(lastContainerId)) {
 							Logger.info(
 									"The database indicates a container exists but it was not found. Proceeding to run a new container.");
 							containerStartRequired = true;
@@ -431,10 +530,10 @@ public class IDC {
 			
 			if (containerStartRequired) {
 				Logger.info("* Starting container. ");
-				String id = ContainerRunTask.execute(context);
+				String id = EventLog.phase("containerRun", () -> ContainerRunTask.execute(context));
 				if (id == null) {
 					Logger.error(ErrorCode.containerStartFailed.message());
-					System.exit(ErrorCode.containerStartFailed.ordinal());
+					return ErrorCode.containerStartFailed.ordinal();
 				}
 			}
 			
@@ -448,16 +547,16 @@ public class IDC {
 			}
 			
 			if (cmd.equalsIgnoreCase(Constants.OPTION_CONTAINER_REFRESH)) {
-				ContainerRefreshTask.execute(context);
-				return;
+				EventLog.phase("containerRefresh", () -> ContainerRefreshTask.execute(context));
+				return 0;
 			}
 
 			else if (cmd.equalsIgnoreCase(Constants.OPTION_BUILD)) {
-				boolean result = BuildApplicationTask.execute(context, args);
+				boolean result = EventLog.phase("applicationBuild", () -> BuildApplicationTask.execute(context, args));
 				
 				if (!result) {
 					Logger.error(ErrorCode.applicationBuildFailed.message());
-					System.exit(ErrorCode.applicationBuildFailed.ordinal());
+					return ErrorCode.applicationBuildFailed.ordinal();
 				}
 
 				// Container and application builds are complete now
@@ -467,26 +566,31 @@ public class IDC {
 				 * Always call the start server script, it will check if the server is running and start if not.
 				 * Especially important in K8 when pods are auto restarted when the cluster is restarted, the server within the container is not started.
 				 */
-				startServer(context, curRunCmd, appDb);
+				Trace.Span startSpan = Trace.span("startServer");
+				try {
+					startServer(context, curRunCmd, appDb);
+				} finally {
+					startSpan.end();
+				}
 				
-				return;
+				return 0;
 			}
 
 			else if (cmd.equalsIgnoreCase(Constants.OPTION_SHELL)) {
 				Logger.error("Not currently supported.");
-				return;
+				return 0;
 			}
 			
 			else if (cmd.equalsIgnoreCase(Constants.OPTION_START)) {
 				startServer(context, curRunCmd, appDb);
-				return;
+				return 0;
 			}
 
 			else if (cmd.equalsIgnoreCase(Constants.OPTION_STOP)) {
 
 				if (!isContainerBuilt) {
 					Logger.info("Container " + context.getContainerName() + " is not running.");
-					return;
+					return 0;
 				}
 
 				StatusTracker.updateProjectState(context, "app", "stopping", null, null);
@@ -494,26 +598,33 @@ public class IDC {
 				TaskUtils.runCmd(curRunCmd + " /home/default/artifacts/stop_server.sh",
 						context, true);
 
-				return;
+				return 0;
 			}
 
 			else if (cmd.equalsIgnoreCase(Constants.OPTION_TAIL)) {
 				if (!isContainerBuilt) {
 					Logger.error("Container " + context.getContainerName() + " is not running.");
-					return;
+					return 0;
+				}
+
+				// Continue from where the last tail stopped, when the server log can be read from the workspace
+				LogFollower follower = LogFollower.forServerLog(context, "tail", TAIL_INITIAL_LINES);
+				if (follower != null) {
+					follower.follow(segment -> printLogLines(segment.getLines()), TAIL_POLL_MS);
+					return 0;
 				}
 
 				TaskUtils.runCmd(curRunCmd + " /home/default/artifacts/tail_server.sh",
-						context, true);
+						context, true, CaptureMode.none);
 
-				return;
+				return 0;
 
 			}
 
 			else if (cmd.equalsIgnoreCase(Constants.OPTION_CLEAN)) {
 				if (!isContainerBuilt) {
 					Logger.error("Container " + context.getContainerName() + " is not running.");
-					return;
+					return 0;
 				}
 				
 				String logFileName = context.getLogFileName();
@@ -524,12 +635,26 @@ public class IDC {
 				TaskUtils.runCmd(curRunCmd + " /home/default/artifacts/clean_server.sh" + " "
 						+ logFileName + " " + libertyEnvValue, context, true);
 
-				return;
+				return 0;
 			}
 
+		} catch (IDCExitException e) {
+			return e.getExitCode();
 		} catch (Exception e) {
 			Logger.error(ErrorCode.unexpectedError.message(), e);
-			System.exit(ErrorCode.unexpectedError.ordinal());
+			return ErrorCode.unexpectedError.ordinal();
+		}
+
+		return returnCode;
+	}
+
+	private static void printLogLines(List<String> lines) {
+		for (String line : lines) {
+			if (EventLog.isJson()) {
+				EventLog.output(ConsoleStream.OUT, line);
+			} else {
+				System.out.println(line);
+			}
 		}
 	}
 
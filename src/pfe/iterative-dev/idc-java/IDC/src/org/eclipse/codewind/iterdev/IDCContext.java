@@ -15,6 +15,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -57,11 +60,21 @@ public class IDCContext {
 	
 	private final boolean isWin;
 	
+	/** The IDC configuration and artifacts location only depend on where IDC.jar is installed, so they are 
+	 * loaded once per JVM; this keeps them warm across the commands handled by the IDC server. */
+	private static Properties cachedIdcConfig;
+	
+	private static File cachedArtifactsDirectory;
+	
 	public IDCContext(String rootPassword, String localWorkspaceOrigin, String containerName, String projectID, String logName, String dockerRegistry, String startMode, String debugPort) throws IOException {
+		this(new File(System.getProperty("user.dir")), rootPassword, localWorkspaceOrigin, containerName, projectID, logName, dockerRegistry, startMode, debugPort);
+	}
+
+	public IDCContext(File appDirectory, String rootPassword, String localWorkspaceOrigin, String containerName, String projectID, String logName, String dockerRegistry, String startMode, String debugPort) throws IOException {
 
 		this.rootPassword = rootPassword;
 
-		this.idcConfig = loadIDCConfigPropertiesFromFile();
+		this.idcConfig = getIDCConfigProperties();
 		// Set the idc base path
 		String idcBasePath = idcConfig.getProperty(Constants.BASE_PATH_PROPERTY_KEY);
 
@@ -76,55 +89,74 @@ public class IDCContext {
 
 		this.idcBase = new File(idcBasePath);
 
+		// Digests of the pom, config and Dockerfiles are kept between runs, keyed by each file's size and mtime
+		FileDigestCache.setCacheFile(new File(idcBase, FileDigestCache.CACHE_FILE_NAME));
+
 		/** app id is a hash of the path */
-		this.appId = DigestUtils.sha1Hex(System.getProperty("user.dir").getBytes());
+		this.appId = DigestUtils.sha1Hex(appDirectory.getPath().getBytes());
+
+		// Journal fsync policy for the IDC databases (optional, defaults to fsync on every commit)
+		String dbSyncPolicy = idcConfig.getProperty(Constants.DB_SYNC_POLICY_KEY);
+		if (dbSyncPolicy != null) {
+			try {
+				DBMap.setSyncPolicy(DBMap.SyncPolicy.valueOf(dbSyncPolicy.trim()));
+			} catch (IllegalArgumentException e) {
+				Logger.error("Ignoring the invalid " + Constants.DB_SYNC_POLICY_KEY + " '" + dbSyncPolicy + "' in the IDC config, valid values are "
+						+ Arrays.toString(DBMap.SyncPolicy.values()));
+			}
+		}
 
-		this.appDb = new DBMap(appId, idcBase);
+		this.appDb = DBMap.open(appId, idcBase);
 		
+		// The initial values are written with a single database commit
+		Map<String, String> initialValues = new HashMap<>();
+
 		this.localWorkspaceOrigin = localWorkspaceOrigin;
 		if (appDb.get(Constants.DB_WORKSPACE_ORIGIN) == null && this.localWorkspaceOrigin != null) {
-			appDb.put(Constants.DB_WORKSPACE_ORIGIN, this.localWorkspaceOrigin);
+			initialValues.put(Constants.DB_WORKSPACE_ORIGIN, this.localWorkspaceOrigin);
 		}
 		
 		// Store the container/image name in the appdb for future access
 		this.containerName = containerName;
 		if (appDb.get(Constants.DB_CONTAINER_NAME) == null && this.containerName != null) {
-			appDb.put(Constants.DB_CONTAINER_NAME, this.containerName);
+			initialValues.put(Constants.DB_CONTAINER_NAME, this.containerName);
 		}
 		
 		// Store the app log name in the appdb for future access
 		this.logName = logName;
 		if (appDb.get(Constants.DB_LOG_NAME) == null && this.logName != null) {
-			appDb.put(Constants.DB_LOG_NAME, this.logName);
+			initialValues.put(Constants.DB_LOG_NAME, this.logName);
 		}
 		
 		this.projectID = projectID;
 		if (appDb.get(Constants.DB_PROJECT_ID) == null && this.projectID != null) {
-			appDb.put(Constants.DB_PROJECT_ID, this.projectID);
+			initialValues.put(Constants.DB_PROJECT_ID, this.projectID);
 		}
 
 		this.dockerRegistry = dockerRegistry;
 		if (appDb.get(Constants.DB_DOCKER_REGISTRY) == null && this.dockerRegistry != null) {
-			appDb.put(Constants.DB_DOCKER_REGISTRY, this.dockerRegistry);
+			initialValues.put(Constants.DB_DOCKER_REGISTRY, this.dockerRegistry);
 		}
 
 		this.startMode = startMode;
 		if (this.startMode != null) {
-			appDb.put(Constants.DB_START_MODE, this.startMode);
+			initialValues.put(Constants.DB_START_MODE, this.startMode);
 		}
 
 		this.debugPort = debugPort;
 		if (this.debugPort != null) {
-			appDb.put(Constants.DB_DEBUG_PORT, this.debugPort);
+			initialValues.put(Constants.DB_DEBUG_PORT, this.debugPort);
 		}
 
-		this.artifactsDirectory = getArtifactsFromInstallDir();
+		appDb.putAll(initialValues);
 
-		this.appDirectory = new File(System.getProperty("user.dir"));
+		this.artifactsDirectory = getArtifactsDirectoryFromInstallDir();
+
+		this.appDirectory = appDirectory;
 
 		this.appName = this.appDirectory.getName();
 
-		this.globalDb = new DBMap("global", idcBase);
+		this.globalDb = DBMap.open("global", idcBase);
 		
 		String hostOS = System.getenv("HOST_OS");
 		if(hostOS != null) {
@@ -206,6 +238,18 @@ public class IDCContext {
 		return artifactsDirectory;
 	}
 
+	/** How the artifacts are staged into the container build context: copied (the default), or hard linked */
+	public FileCopier.Mode getArtifactsStagingMode() {
+		String mode = idcConfig.getProperty(Constants.ARTIFACTS_STAGING_KEY);
+		return mode == null ? FileCopier.Mode.copy : FileCopier.Mode.valueOf(mode.trim());
+	}
+
+	/** Whether the container build context is streamed to docker build as a tar, rather than copied to a directory */
+	public boolean isBuildContextStreamed() {
+		return Constants.BUILD_CONTEXT_STREAM.equals(idcConfig.getProperty(Constants.BUILD_CONTEXT_KEY, "").trim())
+				&& !getRootPassword().isPresent();
+	}
+
 	public Optional<String> getRootPassword() {
 		return Optional.ofNullable(rootPassword);
 	}
@@ -244,7 +288,21 @@ public class IDCContext {
 		return idcJar.getParentFile();
 	}
 
-	private Properties loadIDCConfigPropertiesFromFile() {
+	private static synchronized Properties getIDCConfigProperties() {
+		if (cachedIdcConfig == null) {
+			cachedIdcConfig = loadIDCConfigPropertiesFromFile();
+		}
+		
+		Properties props = cachedIdcConfig;
+		if (!props.isEmpty()) {
+			Logger.info("Configuration file detected: ");
+			props.entrySet().stream().forEach(e -> Logger.info(e.getKey() + " : " + e.getValue())); // print properties
+		}
+
+		return props;
+	}
+
+	private static Properties loadIDCConfigPropertiesFromFile() {
 		Properties props = new Properties();
 
 		File idcJarDir = IDCContext.getIDCJarDir();
@@ -260,14 +318,17 @@ public class IDCContext {
 				e.printStackTrace();
 			}
 		}
-		if (!props.isEmpty()) {
-			Logger.info("Configuration file detected: ");
-			props.entrySet().stream().forEach(e -> Logger.info(e.getKey() + " : " + e.getValue())); // print properties
-		}
 
 		return props;
 	}
 
+	private static synchronized File getArtifactsDirectoryFromInstallDir() {
+		if (cachedArtifactsDirectory == null) {
+			cachedArtifactsDirectory = getArtifactsFromInstallDir();
+		}
+		return cachedArtifactsDirectory;
+	}
+
 	private static File getArtifactsFromInstallDir() {
 
 		File idcJarDir = getIDCJarDir();
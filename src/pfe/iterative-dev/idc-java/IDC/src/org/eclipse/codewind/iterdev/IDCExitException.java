@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+/** Thrown in place of System.exit(...) so that a command can end with a given exit code without 
+ * terminating the JVM, which may be a long-lived IDC server. */
+public class IDCExitException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int exitCode;
+
+	public IDCExitException(int exitCode) {
+		super("Exit code " + exitCode);
+		this.exitCode = exitCode;
+	}
+
+	public int getExitCode() {
+		return exitCode;
+	}
+}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.codewind.iterdev.Constants.ErrorCode;
+import org.eclipse.codewind.iterdev.ConsoleRouter.IConsole;
+import org.eclipse.codewind.iterdev.ProcessRunner.ConsoleStream;
+
+/**
+ * Long-lived IDC process which keeps the IDC configuration and the DB maps loaded, and runs the commands
+ * forwarded to it by the idc script over a loopback socket.
+ *
+ * Request (one value per line): the application directory, the number of arguments, then each argument, followed
+ * by the number of environment variables, then each variable as NAME=VALUE (or NAME alone, if it is unset).
+ * Response: each line of command output prefixed with "O:" (stdout) or "E:" (stderr), followed by a
+ * final "X:<exit code>" line.
+ *
+ * The client sends the environment variables that IDC and its scripts read (HOST_OS, IN_K8, IDC_VERBOSE and so on).
+ * A command runs with the environment of the server, so if any of them differ from the server's, the server
+ * replies with a single "R:<names>" line instead of running the command, and the client runs it in a new JVM.
+ * System properties are those of the server JVM; the idc script starts neither the server nor IDC with any.
+ *
+ * In the file-watcher container, root-watcher.sh starts the server on IDC_SERVER_PORT, which the Dockerfile sets.
+ */
+public class IDCServer {
+
+	/** Runs a command against the application in a directory, and returns its exit code */
+	public static interface ICommandRunner {
+		int execute(String[] args, File appDir);
+	}
+
+	public static final String STDOUT_PREFIX = "O:";
+	public static final String STDERR_PREFIX = "E:";
+	public static final String EXIT_CODE_PREFIX = "X:";
+	public static final String REFUSED_PREFIX = "R:";
+
+	/** Runs the commands of the server and of idc batch; replaced by tests */
+	public static ICommandRunner commandRunner = IDC::execute;
+
+	/** Commands that must not hold the application lock: those that follow the application output until they are
+	 * killed, and batch, which locks each of the applications it runs the command against instead. */
+	private static final String[] UNLOCKED_COMMANDS = { Constants.OPTION_STATUS_TRACKER, Constants.OPTION_TAIL, Constants.OPTION_BATCH };
+
+	/** Commands against the same application directory are run one at a time, just as the file-watcher did with separate JVMs. */
+	private static final ConcurrentHashMap<String, Object> appLocks = new ConcurrentHashMap<>();
+
+	public static void start(String[] args) throws IOException {
+		String port = System.getenv(Constants.IDC_SERVER_PORT);
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].startsWith(Constants.IDC_SERVER_PORT_KEY)) {
+				port = args[i].replace(Constants.IDC_SERVER_PORT_KEY, "");
+			}
+		}
+
+		if (port == null || port.isEmpty()) {
+			Logger.error("The IDC server port must be set with " + Constants.IDC_SERVER_PORT_KEY + " or the "
+					+ Constants.IDC_SERVER_PORT + " environment variable.");
+			return;
+		}
+
+		ConsoleRouter.install();
+
+		ExecutorService requestThreads = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "IDC server request");
+			t.setDaemon(true);
+			return t;
+		});
+
+		try (ServerSocket serverSocket = new ServerSocket(Integer.parseInt(port), 50, InetAddress.getLoopbackAddress())) {
+			Logger.info("IDC server is listening on " + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort());
+
+			while (true) {
+				Socket socket = serverSocket.accept();
+				requestThreads.execute(() -> handleRequest(socket));
+			}
+		}
+	}
+
+	private static void handleRequest(Socket socket) {
+		try {
+			BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			OutputStream os = socket.getOutputStream();
+
+			String appDir = br.readLine();
+			String argCount = br.readLine();
+			if (appDir == null || argCount == null) {
+				return;
+			}
+
+			String[] args = new String[Integer.parseInt(argCount.trim())];
+			for (int i = 0; i < args.length; i++) {
+				args[i] = br.readLine();
+			}
+
+			List<String> differentEnv = new ArrayList<>();
+			String envCount = br.readLine();
+			for (int i = 0; envCount != null && i < Integer.parseInt(envCount.trim()); i++) {
+				String variable = br.readLine();
+				if (variable == null) {
+					return;
+				}
+				int separator = variable.indexOf('=');
+				String name = separator >= 0 ? variable.substring(0, separator) : variable;
+				String value = separator >= 0 ? variable.substring(separator + 1) : null;
+				if (!Objects.equals(value, System.getenv(name))) {
+					differentEnv.add(name);
+				}
+			}
+			if (!differentEnv.isEmpty()) {
+				Logger.verbose("Refusing a command with a different " + String.join(", ", differentEnv) + " than the IDC server");
+				os.write((REFUSED_PREFIX + String.join(",", differentEnv) + "\n").getBytes(StandardCharsets.UTF_8));
+				os.flush();
+				return;
+			}
+
+			FramedConsole console = new FramedConsole(os);
+			int exitCode;
+			ConsoleRouter.setConsole(console);
+			try {
+				exitCode = executeCommand(args, new File(appDir));
+			} catch (Throwable t) {
+				Logger.error(ErrorCode.unexpectedError.message() + ": " + t);
+				exitCode = ErrorCode.unexpectedError.ordinal();
+			} finally {
+				// The server JVM does not exit after the command, so send its status updates before reporting the exit code
+				StatusDispatcher.PORTAL.flushBeforeExit();
+				ConsoleRouter.clearConsole();
+			}
+
+			console.close(exitCode);
+
+		} catch (IOException | NumberFormatException e) {
+			// The client went away, or sent a malformed request; there is no one left to report this to.
+			Logger.error("IDC server request failed", e);
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/** Run the command, after any other command against the same application directory has finished */
+	static int executeCommand(String[] args, File appDir) {
+		if (args.length > 0 && IDCUtils.isValidCommmand(args[0], UNLOCKED_COMMANDS)) {
+			return commandRunner.execute(args, appDir);
+		}
+
+		Object lock = appLocks.computeIfAbsent(appDir.getPath(), k -> new Object());
+		synchronized (lock) {
+			return commandRunner.execute(args, appDir);
+		}
+	}
+
+	/** Writes each complete line of command output to the client, prefixed with the stream it was written to. */
+	private static class FramedConsole implements IConsole {
+
+		private final OutputStream os;
+
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+		FramedConsole(OutputStream os) {
+			this.os = os;
+		}
+
+		@Override
+		public synchronized void write(ConsoleStream s, byte[] b, int off, int len) throws IOException {
+			ByteArrayOutputStream buffer = s == ConsoleStream.OUT ? out : err;
+			for (int i = off; i < off + len; i++) {
+				if (b[i] == '\n') {
+					writeLine(s, buffer);
+				} else {
+					buffer.write(b[i]);
+				}
+			}
+		}
+
+		@Override
+		public synchronized void flush(ConsoleStream s) throws IOException {
+			os.flush();
+		}
+
+		synchronized void close(int exitCode) throws IOException {
+			if (out.size() > 0) {
+				writeLine(ConsoleStream.OUT, out);
+			}
+			if (err.size() > 0) {
+				writeLine(ConsoleStream.ERR, err);
+			}
+			os.write((EXIT_CODE_PREFIX + exitCode + "\n").getBytes(StandardCharsets.UTF_8));
+			os.flush();
+		}
+
+		private void writeLine(ConsoleStream s, ByteArrayOutputStream buffer) throws IOException {
+			os.write((s == ConsoleStream.OUT ? STDOUT_PREFIX : STDERR_PREFIX).getBytes(StandardCharsets.UTF_8));
+			buffer.writeTo(os);
+			os.write('\n');
+			buffer.reset();
+		}
+	}
+}
@@ -11,56 +11,39 @@
 
 package org.eclipse.codewind.iterdev;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 
 public class IDCUtils {
 
 	// 
 	// Copy the a binary/text file (source file) to the target file.
+	// The copy is skipped if the target file is unchanged, see FileCopier.
 	//
 	public static void copyFile(String sourceFilename, String targetFilename) throws IOException {
-		FileInputStream fin = null;
-		FileOutputStream fout = null;
-		BufferedInputStream bin = null;
-		BufferedOutputStream bout = null;
-		File fpSource = null;
-
 		try {
-			fin = new FileInputStream(sourceFilename);
-			fout = new FileOutputStream(targetFilename);
-			bin = new BufferedInputStream(fin);
-			bout = new BufferedOutputStream(fout);
-
-			byte byteBuff[] = new byte[1024];
-			int length;
-			while ((length = bin.read(byteBuff)) > 0)
-				bout.write(byteBuff, 0, length);
-		} catch (FileNotFoundException e1) {
+			FileCopier.copyFile(Paths.get(sourceFilename), Paths.get(targetFilename));
+		} catch (NoSuchFileException e1) {
 			throw new IOException(sourceFilename + " does not exist!", e1);
-		} finally {
-			try {
-				if (bin != null)
-					bin.close();
-
-				if (bout != null)
-					bout.close();
-			} catch (IOException e3) {
-				// ignore
-			}
 		}
 	}
 
@@ -70,27 +53,9 @@ public class IDCUtils {
 	// does not exist, it will try to create the directory.
 	//
 	public static void copyDir(String sourceDirectory, String targetDirectory) throws IOException {
-		char separatorChar = File.separatorChar;
-
 		File srcFp = new File(sourceDirectory);
 		if (srcFp.exists() && srcFp.isDirectory()) {
-			// Create the target directory if necessary.
-			makeDir(targetDirectory);
-			File[] srcFileLst = srcFp.listFiles();
-			File curFp = null;
-			for (int i = 0; i < srcFileLst.length; i++) {
-				curFp = srcFileLst[i];
-				if (curFp != null) {
-					String curFpName = curFp.getName();
-					if (curFp.isDirectory()) {
-						copyDir(sourceDirectory + separatorChar + curFpName,
-								targetDirectory + separatorChar + curFpName);
-					} else {
-						copyFile(sourceDirectory + separatorChar + curFpName,
-								targetDirectory + separatorChar + curFpName);
-					}
-				}
-			}
+			FileCopier.copyDirectory(srcFp.toPath(), Paths.get(targetDirectory));
 		} else {
 			throw new IOException("The source directory " + sourceDirectory + " does not exist");
 		}
@@ -176,14 +141,12 @@ public class IDCUtils {
 		
 		for(File f : files) {
 			
-			FileInputStream fis = new FileInputStream(f);
-
 			// skip files that don't exist
 			if(!f.exists())
 				continue;
 			
-			String fileHash = DigestUtils.sha1Hex(fis);
-			fis.close();
+			// unchanged files are not read again, see FileDigestCache
+			String fileHash = FileDigestCache.digest(f, "SHA-1");
 			
 			if(currHash == null) {
 				currHash = fileHash; 
@@ -193,10 +156,86 @@ public class IDCUtils {
 			
 		}
 		
+		FileDigestCache.save();
+		
 		return currHash;
 		
 	}
 
+	/** Generate a hash of the contents of the regular files under a directory whose names end with the given suffix,
+	 * independent of the order the files are found in. The digest of each file is taken, the digests are sorted, and
+	 * the hash is the digest of the sorted list, one digest per line. With SHA-256 this is the same hash as
+	 * find dir -type f -name "*suffix" -exec sha256sum {} + | awk '{print $1}' | sort | sha256sum
+	 * (without the trailing " -"). Subdirectories are walked in parallel, and symbolic links are not followed. */
+	public static String calculateHashOfDirectoryContents(File dir, String fileNameSuffix, String algorithm) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		List<String> fileHashes = ForkJoinPool.commonPool().invoke(new DirectoryDigestTask(dir, fileNameSuffix, algorithm));
+		// All the digests are lowercase hex of the same length, so this is the order sort(1) gives in any locale
+		Collections.sort(fileHashes);
+		for (String fileHash : fileHashes) {
+			md.update((fileHash + "\n").getBytes(StandardCharsets.US_ASCII));
+		}
+
+		FileDigestCache.save();
+
+		return Hex.encodeHexString(md.digest());
+	}
+
+	/** Returns the digests of the matching files in a directory, forking a task for each subdirectory */
+	@SuppressWarnings("serial")
+	private static class DirectoryDigestTask extends RecursiveTask<List<String>> {
+
+		private final File dir;
+		private final String fileNameSuffix;
+		private final String algorithm;
+
+		DirectoryDigestTask(File dir, String fileNameSuffix, String algorithm) {
+			this.dir = dir;
+			this.fileNameSuffix = fileNameSuffix;
+			this.algorithm = algorithm;
+		}
+
+		@Override
+		protected List<String> compute() {
+			List<String> fileHashes = new ArrayList<String>();
+			List<DirectoryDigestTask> subdirTasks = new ArrayList<DirectoryDigestTask>();
+
+			File[] children = dir.listFiles();
+			if (children == null) {
+				return fileHashes;
+			}
+
+			for (File child : children) {
+				if (Files.isSymbolicLink(child.toPath())) {
+					continue;
+				}
+				if (child.isDirectory()) {
+					DirectoryDigestTask task = new DirectoryDigestTask(child, fileNameSuffix, algorithm);
+					task.fork();
+					subdirTasks.add(task);
+				} else if (child.isFile() && child.getName().endsWith(fileNameSuffix)) {
+					try {
+						fileHashes.add(FileDigestCache.digest(child, algorithm));
+					} catch (IOException e) {
+						// skip files that can't be read, as sha256sum does
+						Logger.verbose("Unable to hash " + child.getPath() + ": " + e);
+					}
+				}
+			}
+
+			for (DirectoryDigestTask task : subdirTasks) {
+				fileHashes.addAll(task.join());
+			}
+			return fileHashes;
+		}
+	}
+
 	public static void updateEnvvarsScript(File envVarsScriptFile, String HOST_OS) {
 
 		BufferedReader br = null;
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader and writer, so that IDC can talk to the Kubernetes API and write its JSON output
+ * without additional dependencies. Objects are parsed into Map<String, Object>, arrays into List<Object>,
+ * numbers into Long or Double, and true/false/null into Boolean/null.
+ */
+public class JSONUtils {
+
+	public static Object parse(String json) {
+		Parser p = new Parser(json);
+		p.skipWhitespace();
+		Object result = p.readValue();
+		p.skipWhitespace();
+		if (p.pos != json.length()) {
+			throw p.error("Unexpected trailing content");
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static Map<String, Object> parseObject(String json) {
+		Object result = parse(json);
+		if (!(result instanceof Map)) {
+			throw new IllegalArgumentException("Expected a JSON object");
+		}
+		return (Map<String, Object>) result;
+	}
+
+	/** Return the value at the given path of nested objects, or null if any part of the path is missing. */
+	@SuppressWarnings("unchecked")
+	public static Object get(Object json, String... path) {
+		Object curr = json;
+		for (String key : path) {
+			if (!(curr instanceof Map)) {
+				return null;
+			}
+			curr = ((Map<String, Object>) curr).get(key);
+		}
+		return curr;
+	}
+
+	public static String getString(Object json, String... path) {
+		Object result = get(json, path);
+		return result == null ? null : result.toString();
+	}
+
+	/** Return the given string as a quoted JSON string literal */
+	public static String quote(String str) {
+		if (str == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(str.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+
+	private static class Parser {
+
+		private final String json;
+		private int pos = 0;
+
+		Parser(String json) {
+			this.json = json;
+		}
+
+		Object readValue() {
+			if (pos >= json.length()) {
+				throw error("Unexpected end of input");
+			}
+			char c = json.charAt(pos);
+			switch (c) {
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			case '"':
+				return readString();
+			case 't':
+				expect("true");
+				return Boolean.TRUE;
+			case 'f':
+				expect("false");
+				return Boolean.FALSE;
+			case 'n':
+				expect("null");
+				return null;
+			default:
+				return readNumber();
+			}
+		}
+
+		Map<String, Object> readObject() {
+			Map<String, Object> result = new LinkedHashMap<>();
+			pos++;
+			skipWhitespace();
+			if (peek() == '}') {
+				pos++;
+				return result;
+			}
+			while (true) {
+				skipWhitespace();
+				String key = readString();
+				skipWhitespace();
+				if (next() != ':') {
+					throw error("Expected ':'");
+				}
+				skipWhitespace();
+				result.put(key, readValue());
+				skipWhitespace();
+				char c = next();
+				if (c == '}') {
+					return result;
+				} else if (c != ',') {
+					throw error("Expected ',' or '}'");
+				}
+			}
+		}
+
+		List<Object> readArray() {
+			List<Object> result = new ArrayList<>();
+			pos++;
+			skipWhitespace();
+			if (peek() == ']') {
+				pos++;
+				return result;
+			}
+			while (true) {
+				skipWhitespace();
+				result.add(readValue());
+				skipWhitespace();
+				char c = next();
+				if (c == ']') {
+					return result;
+				} else if (c != ',') {
+					throw error("Expected ',' or ']'");
+				}
+			}
+		}
+
+		String readString() {
+			if (next() != '"') {
+				throw error("Expected '\"'");
+			}
+			StringBuilder sb = new StringBuilder();
+			while (true) {
+				char c = next();
+				if (c == '"') {
+					return sb.toString();
+				} else if (c == '\\') {
+					char e = next();
+					switch (e) {
+					case 'b':
+						sb.append('\b');
+						break;
+					case 'f':
+						sb.append('\f');
+						break;
+					case 'n':
+						sb.append('\n');
+						break;
+					case 'r':
+						sb.append('\r');
+						break;
+					case 't':
+						sb.append('\t');
+						break;
+					case 'u':
+						if (pos + 4 > json.length()) {
+							throw error("Invalid unicode escape");
+						}
+						sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+						pos += 4;
+						break;
+					default:
+						sb.append(e);
+					}
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+
+		Object readNumber() {
+			int start = pos;
+			while (pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) != -1) {
+				pos++;
+			}
+			String num = json.substring(start, pos);
+			if (num.isEmpty()) {
+				throw error("Unexpected character");
+			}
+			if (num.indexOf('.') != -1 || num.indexOf('e') != -1 || num.indexOf('E') != -1) {
+				return Double.parseDouble(num);
+			}
+			return Long.parseLong(num);
+		}
+
+		void expect(String literal) {
+			if (!json.startsWith(literal, pos)) {
+				throw error("Expected " + literal);
+			}
+			pos += literal.length();
+		}
+
+		void skipWhitespace() {
+			while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		char peek() {
+			if (pos >= json.length()) {
+				throw error("Unexpected end of input");
+			}
+			return json.charAt(pos);
+		}
+
+		char next() {
+			char c = peek();
+			pos++;
+			return c;
+		}
+
+		IllegalArgumentException error(String msg) {
+			return new IllegalArgumentException(msg + " at position " + pos + " of JSON input");
+		}
+	}
+}
@@ -0,0 +1,390 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Small Kubernetes API client, so that IDC does not have to fork a shell and a kubectl process, which reads the
+ * kubeconfig and sets up a new TLS connection, for every pod or deployment query. Queries are filtered by label
+ * on the server, and the responses are read into typed objects rather than matched against kubectl's text.
+ *
+ * The client authenticates with the service account of the pod IDC runs in, and its connections are kept alive
+ * and reused across requests (by the JDK's HTTP keep-alive cache, with one SSL context for the API server).
+ * getInstance() returns null outside of a pod; callers then use kubectl instead (see KubeUtils).
+ */
+public class KubeApiClient {
+
+	public static final String SERVICE_ACCOUNT_DIR = "/var/run/secrets/kubernetes.io/serviceaccount";
+
+	private static final String SERVICE_HOST = "KUBERNETES_SERVICE_HOST";
+	private static final String SERVICE_PORT = "KUBERNETES_SERVICE_PORT";
+
+	private static final int CONNECT_TIMEOUT_MS = 5000;
+	private static final int READ_TIMEOUT_MS = 30000;
+
+	/** A pod, with the fields IDC reads */
+	public static class Pod {
+
+		private final String name;
+		private final String namespace;
+		private final String phase;
+		private final boolean deleting;
+		private final Map<String, String> labels;
+
+		public Pod(String name, String namespace, String phase, boolean deleting, Map<String, String> labels) {
+			this.name = name;
+			this.namespace = namespace;
+			this.phase = phase;
+			this.deleting = deleting;
+			this.labels = labels;
+		}
+
+		static Pod fromJSON(Object json) {
+			Map<String, String> labels = new LinkedHashMap<>();
+			Object labelsJSON = JSONUtils.get(json, "metadata", "labels");
+			if (labelsJSON instanceof Map) {
+				for (Map.Entry<?, ?> label : ((Map<?, ?>) labelsJSON).entrySet()) {
+					labels.put(String.valueOf(label.getKey()), String.valueOf(label.getValue()));
+				}
+			}
+			return new Pod(JSONUtils.getString(json, "metadata", "name"), JSONUtils.getString(json, "metadata", "namespace"),
+					JSONUtils.getString(json, "status", "phase"), JSONUtils.get(json, "metadata", "deletionTimestamp") != null,
+					Collections.unmodifiableMap(labels));
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getNamespace() {
+			return namespace;
+		}
+
+		/** Pending, Running, Succeeded, Failed or Unknown */
+		public String getPhase() {
+			return phase;
+		}
+
+		/** Whether the pod is being deleted, which kubectl get pods shows as Terminating */
+		public boolean isDeleting() {
+			return deleting;
+		}
+
+		/** Whether the pod is running and not being deleted, which kubectl get pods shows as Running */
+		public boolean isRunning() {
+			return "Running".equals(phase) && !deleting;
+		}
+
+		public Map<String, String> getLabels() {
+			return labels;
+		}
+	}
+
+	/** A list of pods, and the resource version to start a watch for changes to them from */
+	public static class PodList {
+
+		private final List<Pod> pods;
+		private final String resourceVersion;
+
+		PodList(List<Pod> pods, String resourceVersion) {
+			this.pods = pods;
+			this.resourceVersion = resourceVersion;
+		}
+
+		/** Read the JSON of a PodList, from the API or from kubectl get pods -o json */
+		public static PodList fromJSON(Object json) {
+			List<Pod> pods = new ArrayList<>();
+			Object items = JSONUtils.get(json, "items");
+			if (items instanceof List) {
+				for (Object item : (List<?>) items) {
+					pods.add(Pod.fromJSON(item));
+				}
+			}
+			return new PodList(Collections.unmodifiableList(pods), JSONUtils.getString(json, "metadata", "resourceVersion"));
+		}
+
+		public List<Pod> getPods() {
+			return pods;
+		}
+
+		public String getResourceVersion() {
+			return resourceVersion;
+		}
+	}
+
+	/**
+	 * A watch that is reading events; close it to stop passing events to the listener.
+	 *
+	 * A read from an HttpURLConnection can't be interrupted (and disconnect() waits for it), so the connection
+	 * itself is closed by the reading thread once the next event arrives or the server ends the watch at its
+	 * timeout.
+	 */
+	public static class Watch implements Closeable {
+
+		private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+		private volatile boolean closed = false;
+
+		/** Completes when the server ends the watch, or it is closed */
+		public CompletableFuture<Void> getCompletion() {
+			return completion;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			completion.complete(null);
+		}
+	}
+
+	private static KubeApiClient instance;
+	private static boolean instanceResolved = false;
+
+	private final String baseUrl;
+	private final String namespace;
+	private final String token;
+	private final File tokenFile;
+	private final SSLSocketFactory sslSocketFactory;
+
+	/**
+	 * Client for the API server at the given URL, such as https://10.0.0.1:443
+	 * @param token The bearer token to send, or null
+	 * @param sslSocketFactory Trusts the API server's certificate, or null for an http URL or the default trust
+	 */
+	public KubeApiClient(String baseUrl, String namespace, String token, SSLSocketFactory sslSocketFactory) {
+		this(baseUrl, namespace, token, null, sslSocketFactory);
+	}
+
+	private KubeApiClient(String baseUrl, String namespace, String token, File tokenFile, SSLSocketFactory sslSocketFactory) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		this.namespace = namespace;
+		this.token = token;
+		this.tokenFile = tokenFile;
+		this.sslSocketFactory = sslSocketFactory;
+	}
+
+	/** Return the client for the API server of the cluster IDC is running in, or null if IDC is not running in a
+	 * pod with a service account. */
+	public static synchronized KubeApiClient getInstance() {
+		if (!instanceResolved) {
+			instance = fromServiceAccount(System.getenv(SERVICE_HOST), System.getenv(SERVICE_PORT), new File(SERVICE_ACCOUNT_DIR));
+			instanceResolved = true;
+		}
+		return instance;
+	}
+
+	static KubeApiClient fromServiceAccount(String host, String port, File serviceAccountDir) {
+		File tokenFile = new File(serviceAccountDir, "token");
+		File caFile = new File(serviceAccountDir, "ca.crt");
+		File namespaceFile = new File(serviceAccountDir, "namespace");
+		if (host == null || host.trim().isEmpty() || !tokenFile.isFile() || !caFile.isFile()) {
+			return null;
+		}
+
+		try {
+			String namespace = namespaceFile.isFile()
+					? new String(Files.readAllBytes(namespaceFile.toPath()), StandardCharsets.UTF_8).trim() : "default";
+			// IPv6 service addresses must be bracketed in the URL
+			String address = host.indexOf(':') != -1 ? "[" + host.trim() + "]" : host.trim();
+			String url = "https://" + address + ":" + (port == null || port.trim().isEmpty() ? "443" : port.trim());
+			return new KubeApiClient(url, namespace, null, tokenFile, trusting(caFile));
+		} catch (IOException | GeneralSecurityException e) {
+			Logger.info("Unable to use the service account for the Kubernetes API, using kubectl instead: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/** An SSL socket factory that trusts the certificates in the PEM file */
+	private static SSLSocketFactory trusting(File caFile) throws IOException, GeneralSecurityException {
+		KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+		trustStore.load(null, null);
+		try (InputStream is = new FileInputStream(caFile)) {
+			int index = 0;
+			for (Certificate certificate : CertificateFactory.getInstance("X.509").generateCertificates(is)) {
+				trustStore.setCertificateEntry("ca-" + index++, certificate);
+			}
+		}
+		TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagers.init(trustStore);
+		SSLContext sslContext = SSLContext.getInstance("TLS");
+		sslContext.init(null, trustManagers.getTrustManagers(), null);
+		return sslContext.getSocketFactory();
+	}
+
+	public String getNamespace() {
+		return namespace;
+	}
+
+	/** GET /api/v1/namespaces/{namespace}/pods, optionally filtered by a label selector such as release=name */
+	public PodList listPods(String labelSelector) throws IOException {
+		return PodList.fromJSON(requestJSON(podsPath() + query(labelSelector)));
+	}
+
+	/** GET /api/v1/namespaces/{namespace}/pods/{name}; returns null if there is no such pod */
+	public Pod getPod(String name) throws IOException {
+		Object json = requestJSON(podsPath() + "/" + encode(name));
+		return json == null ? null : Pod.fromJSON(json);
+	}
+
+	/** Return the names of the deployments, optionally filtered by a label selector */
+	public List<String> listDeploymentNames(String labelSelector) throws IOException {
+		Object json = requestJSON("/apis/apps/v1/namespaces/" + encode(namespace) + "/deployments" + query(labelSelector));
+		List<String> result = new ArrayList<>();
+		Object items = JSONUtils.get(json, "items");
+		if (items instanceof List) {
+			for (Object item : (List<?>) items) {
+				result.add(JSONUtils.getString(item, "metadata", "name"));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Start watching for changes to the pods from the given resource version, passing each event (a line of
+	 * JSON) to the listener on a separate thread as it arrives.
+	 */
+	public Watch watchPods(String labelSelector, String resourceVersion, long timeoutSeconds, IListener listener)
+			throws IOException {
+		StringBuilder path = new StringBuilder(podsPath()).append(query(labelSelector));
+		path.append(path.indexOf("?") == -1 ? '?' : '&').append("watch=true&timeoutSeconds=").append(timeoutSeconds);
+		if (resourceVersion != null) {
+			path.append("&resourceVersion=").append(encode(resourceVersion));
+		}
+
+		HttpURLConnection connection = open(path.toString());
+		// The watch ends when the server's timeout passes, or it is closed
+		connection.setReadTimeout(0);
+		int status = connection.getResponseCode();
+		if (status != 200) {
+			String body = readBody(connection);
+			throw new IOException("Kubernetes API request GET " + path + " failed: HTTP " + status + " " + body.trim());
+		}
+
+		Watch watch = new Watch();
+		Thread reader = new Thread(() -> {
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = br.readLine()) != null && !watch.closed) {
+					listener.receiveText(line);
+				}
+			} catch (IOException e) {
+				// The connection to the server was lost, so the watch has ended
+			} finally {
+				if (watch.closed) {
+					// The rest of the watch will not be read, so the connection can't be reused
+					connection.disconnect();
+				}
+				watch.completion.complete(null);
+			}
+		}, "IDC pod watch");
+		reader.setDaemon(true);
+		reader.start();
+		return watch;
+	}
+
+	private String podsPath() throws IOException {
+		return "/api/v1/namespaces/" + encode(namespace) + "/pods";
+	}
+
+	private static String query(String labelSelector) throws IOException {
+		return labelSelector == null ? "" : "?labelSelector=" + encode(labelSelector);
+	}
+
+	private static String encode(String value) throws IOException {
+		return URLEncoder.encode(value, "UTF-8");
+	}
+
+	/** Returns the parsed response body, or null for a 404 response */
+	private Object requestJSON(String path) throws IOException {
+		HttpURLConnection connection = open(path);
+		int status = connection.getResponseCode();
+		String body = readBody(connection);
+		if (status == 404) {
+			return null;
+		}
+		if (status < 200 || status >= 300) {
+			throw new IOException("Kubernetes API request GET " + path + " failed: HTTP " + status + " " + body.trim());
+		}
+		try {
+			return JSONUtils.parse(body);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid response from the Kubernetes API for " + path, e);
+		}
+	}
+
+	private HttpURLConnection open(String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		if (sslSocketFactory != null && connection instanceof HttpsURLConnection) {
+			((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+		}
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+		connection.setReadTimeout(READ_TIMEOUT_MS);
+		connection.setRequestProperty("Accept", "application/json");
+		String bearer = tokenFile != null
+				// Service account tokens are rotated, so the current one is read for each request
+				? new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8).trim() : token;
+		if (bearer != null) {
+			connection.setRequestProperty("Authorization", "Bearer " + bearer);
+		}
+		return connection;
+	}
+
+	/** Read the whole response body, which lets the JDK reuse the connection for the next request */
+	private static String readBody(HttpURLConnection connection) throws IOException {
+		InputStream is;
+		try {
+			is = connection.getInputStream();
+		} catch (IOException e) {
+			is = connection.getErrorStream();
+		}
+		if (is == null) {
+			return "";
+		}
+		try (InputStream body = is) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int len;
+			while ((len = body.read(buffer)) != -1) {
+				baos.write(buffer, 0, len);
+			}
+			return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}
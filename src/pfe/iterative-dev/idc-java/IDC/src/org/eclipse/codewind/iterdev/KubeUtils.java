@@ -12,7 +12,11 @@
 package org.eclipse.codewind.iterdev;
 
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.eclipse.codewind.iterdev.PodTerminationWatch.Outcome;
 import org.eclipse.codewind.iterdev.tasks.TaskUtils;
 
 public class KubeUtils {
@@ -23,4 +27,127 @@ public class KubeUtils {
 		result = pr.getReceived().split("\\r?\\n");
 		return result;
 	}
-}
\ No newline at end of file
+
+	/*
+	 * The following queries go to the Kubernetes API when IDC runs in a pod with a service account (see
+	 * KubeApiClient), and otherwise, or if the API request fails, run the equivalent kubectl command.
+	 */
+
+	/** The pods, optionally filtered by a label selector such as release=name, as kubectl get pods -l lists them */
+	public static KubeApiClient.PodList listPods(IDCContext context, String labelSelector) throws IOException, InterruptedException {
+		KubeApiClient client = KubeApiClient.getInstance();
+		if (client != null) {
+			try {
+				return client.listPods(labelSelector);
+			} catch (IOException e) {
+				logApiFailure(e);
+			}
+		}
+
+		ProcessRunner pr = TaskUtils.runCmd("kubectl get pods" + (labelSelector != null ? " -l \"" + labelSelector + "\"" : "")
+				+ " -o json", context, false);
+		if (pr.getErrorCode().orElse(0) != 0) {
+			throw new IOException("Error getting K8 pods" + (labelSelector != null ? " with label " + labelSelector : "")
+					+ ". Error code: " + pr.getErrorCode());
+		}
+		try {
+			return KubeApiClient.PodList.fromJSON(JSONUtils.parse(pr.getReceived()));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Unable to read the K8 pods: " + e.getMessage());
+		}
+	}
+
+	/** The names of the deployments, optionally filtered by a label selector */
+	public static List<String> listDeploymentNames(IDCContext context, String labelSelector) throws IOException, InterruptedException {
+		KubeApiClient client = KubeApiClient.getInstance();
+		if (client != null) {
+			try {
+				return client.listDeploymentNames(labelSelector);
+			} catch (IOException e) {
+				logApiFailure(e);
+			}
+		}
+
+		ProcessRunner pr = TaskUtils.runCmd("kubectl get deployments" + (labelSelector != null ? " -l \"" + labelSelector + "\"" : "")
+				+ " --no-headers=true -o=custom-columns=NAME:.metadata.name", context, false);
+		List<String> result = new ArrayList<String>();
+		for (String line : pr.receivedLines()) {
+			if (line != null && !line.trim().isEmpty()) {
+				result.add(line.trim());
+			}
+		}
+		return result;
+	}
+
+	/** The label selector for the pods of a helm release */
+	public static String releaseSelector(String releaseName) {
+		return "release=" + releaseName;
+	}
+
+	private static void logApiFailure(IOException e) {
+		Logger.info("Kubernetes API request failed, using kubectl instead: " + e.getMessage());
+	}
+
+	/** How long to wait before listing the pods again when a watch ends without all of them being deleted */
+	private static final long WATCH_RESTART_DELAY_MILLIS = 1000;
+
+	/**
+	 * Wait for the pods of the helm release to be deleted. The pods are listed once, and their deletion is then
+	 * followed on the API server's watch stream for pods, which is read as it arrives, so the wait ends as soon as
+	 * the last pod is gone.
+	 * @return How long the pods took to be deleted in milliseconds, or -1 if they were not deleted within the timeout
+	 */
+	public static long awaitPodsTerminated(IDCContext context, String releaseName, long timeoutMillis)
+			throws IOException, InterruptedException {
+		long start = System.currentTimeMillis();
+		long deadline = start + timeoutMillis;
+		String selector = releaseSelector(releaseName);
+
+		while (System.currentTimeMillis() < deadline) {
+			KubeApiClient.PodList podList = listPods(context, selector);
+			List<String> pods = new ArrayList<String>();
+			String namespace = null;
+			for (KubeApiClient.Pod pod : podList.getPods()) {
+				pods.add(pod.getName());
+				namespace = pod.getNamespace();
+			}
+			if (pods.isEmpty()) {
+				return System.currentTimeMillis() - start;
+			}
+
+			// Watch from the version of the list, so that no deletion between the list and the watch is missed
+			String resourceVersion = podList.getResourceVersion();
+			long timeoutSeconds = Math.max(1, (deadline - System.currentTimeMillis()) / 1000);
+			PodTerminationWatch podWatch = new PodTerminationWatch(pods);
+			Outcome outcome = null;
+
+			KubeApiClient client = KubeApiClient.getInstance();
+			if (client != null) {
+				try {
+					KubeApiClient.Watch watch = client.watchPods(selector, resourceVersion, timeoutSeconds, podWatch);
+					outcome = podWatch.await(watch.getCompletion(), watch::close, deadline);
+				} catch (IOException e) {
+					logApiFailure(e);
+				}
+			}
+			if (outcome == null) {
+				String url = "/api/v1/namespaces/" + namespace + "/pods?labelSelector=" + URLEncoder.encode(selector, "UTF-8")
+						+ "&watch=true" + (resourceVersion != null ? "&resourceVersion=" + resourceVersion : "")
+						+ "&timeoutSeconds=" + timeoutSeconds;
+				ProcessRunner watch = TaskUtils.createRunnerForCmd("kubectl get --raw \"" + url + "\"", context, false);
+				outcome = podWatch.await(watch, deadline);
+			}
+
+			if (outcome == Outcome.terminated) {
+				return System.currentTimeMillis() - start;
+			} else if (outcome == Outcome.timedOut) {
+				return -1;
+			}
+
+			Logger.verbose("The watch for the pods of release " + releaseName + " ended while " + podWatch.getRemainingPods()
+					+ " remained, listing them again");
+			Thread.sleep(Math.max(0, Math.min(WATCH_RESTART_DELAY_MILLIS, deadline - System.currentTimeMillis())));
+		}
+		return -1;
+	}
+}
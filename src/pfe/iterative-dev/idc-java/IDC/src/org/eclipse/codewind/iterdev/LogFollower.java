@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Follows a log file the application container writes to the workspace, reading only the bytes written since the
+ * last time it was read. The offset read up to is checkpointed in the app DB, along with the identity (the inode)
+ * of the file, so that a later idc command resumes where the previous one stopped.
+ *
+ * The log is considered rotated, and is read again from its start, when the file at the path is a different file
+ * than the one read before, or is shorter than the offset read up to (it was truncated). A checkpoint of an earlier
+ * file, left by a previous command, is ignored: the follower then starts initialLines before the end of the file,
+ * as it does without a checkpoint, rather than replaying a log it never read. So is a checkpoint more than
+ * MAX_RESUME_BYTES behind the end of the file, so that a command started long after the previous one doesn't replay
+ * all of the log written in between. Each read returns the complete lines that were added as a Segment, which is also
+ * published to the JSON output (see EventLog); when the log was rotated, the follower of the server log also
+ * announces the new file to the portal with StatusTracker.newLogFileAvailable().
+ */
+public class LogFollower {
+
+	/** Lines read from a log, and the range of bytes of the file they were read from */
+	public static class Segment {
+
+		private final String logType;
+
+		private final File file;
+
+		private final long start;
+
+		private final long end;
+
+		private final String text;
+
+		private Segment(String logType, File file, long start, long end, String text) {
+			this.logType = logType;
+			this.file = file;
+			this.start = start;
+			this.end = end;
+			this.text = text;
+		}
+
+		public String getLogType() {
+			return logType;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public List<String> getLines() {
+			return Arrays.asList(text.split("\\r?\\n"));
+		}
+	}
+
+	public static interface ISegmentListener {
+		void newSegment(Segment segment) throws IOException;
+	}
+
+	/** The Liberty server log, relative to the application directory, where the container writes it on Linux hosts */
+	public static final String SERVER_LOG_PATH = "mc-target/liberty/wlp/usr/servers/defaultServer/logs/messages.log";
+
+	/** The most bytes read at once, so that a large backlog is returned as several segments */
+	private static final int MAX_SEGMENT_BYTES = 1024 * 1024;
+
+	/** How far back from the end of the file the initial lines are looked for, when there is no checkpoint yet */
+	private static final int MAX_INITIAL_BYTES = 64 * 1024;
+
+	/** The most bytes a follower resumes from behind the end of the file; further back, the checkpoint is ignored */
+	public static final int MAX_RESUME_BYTES = 256 * 1024;
+
+	private final DBMap db;
+
+	private final String checkpointKey;
+
+	private final String logType;
+
+	private final File file;
+
+	private final int initialLines;
+
+	/** Tells the portal a new log file is available, or null */
+	private Runnable newFileAnnouncer;
+
+	/** The identity of the file read from, or null if it has not been opened yet */
+	private String fileKey;
+
+	private long offset = -1;
+
+	/** Whether the file has been read by this follower, rather than only by a previous one */
+	private boolean polled;
+
+	/**
+	 * @param db The app DB the checkpoint is kept in
+	 * @param name Identifies the reader of the log, as each keeps its own checkpoint (for example "tail")
+	 * @param logType The type of the log, as the portal knows it: "app" or "build"
+	 * @param initialLines The number of lines, before the end of the file, to start from when there is no checkpoint
+	 */
+	public LogFollower(DBMap db, String name, String logType, File file, int initialLines) {
+		this.db = db;
+		this.checkpointKey = Constants.DB_LOG_CHECKPOINT_PREFIX + name + "." + logType;
+		this.logType = logType;
+		this.file = file;
+		this.initialLines = initialLines;
+
+		String checkpoint = db.get(checkpointKey);
+		int separator = checkpoint != null ? checkpoint.indexOf(':') : -1;
+		if (separator > 0) {
+			try {
+				offset = Long.parseLong(checkpoint.substring(0, separator));
+				fileKey = checkpoint.substring(separator + 1);
+			} catch (NumberFormatException e) {
+				Logger.verbose("Ignoring the invalid log checkpoint " + checkpointKey + "=" + checkpoint);
+			}
+		}
+	}
+
+	/**
+	 * The follower of the application's server log, or null if the container doesn't write it to the workspace
+	 * (on Kubernetes, or a Windows host), it hasn't been created yet, or it can't be read by this user (in which case
+	 * the caller reads it in the container instead)
+	 */
+	public static LogFollower forServerLog(IDCContext context, String name, int initialLines) {
+		File log = new File(context.getAppDirectory(), SERVER_LOG_PATH);
+		if (context.isK8s() || !log.isFile()) {
+			return null;
+		}
+		if (!Files.isReadable(log.toPath())) {
+			Logger.verbose("The log " + log.getPath() + " is not readable; reading it in the container");
+			return null;
+		}
+		try {
+			// Open the log once, so that the first poll doesn't fail on its permissions
+			FileChannel.open(log.toPath(), StandardOpenOption.READ).close();
+		} catch (IOException e) {
+			Logger.verbose("The log " + log.getPath() + " can't be opened (" + e + "); reading it in the container");
+			return null;
+		}
+		LogFollower follower = new LogFollower(context.getAppDb(), name, "app", log, initialLines);
+		follower.setNewFileAnnouncer(() -> StatusTracker.newLogFileAvailable(context, "app"));
+		return follower;
+	}
+
+	/** Run the announcer when the log is found to have been rotated */
+	public void setNewFileAnnouncer(Runnable announcer) {
+		this.newFileAnnouncer = announcer;
+	}
+
+	/**
+	 * Read the complete lines written since the last read, and checkpoint the offset read up to
+	 * @return The lines read, or null if there are none (or the file doesn't exist)
+	 */
+	public Segment poll() throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+
+		Object key = attributes.fileKey();
+		String currentKey = key != null ? key.toString() : Long.toString(attributes.creationTime().toMillis());
+		long size = attributes.size();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			boolean rotated = fileKey != null && offset >= 0 && (!currentKey.equals(fileKey) || size < offset);
+			if (fileKey == null || offset < 0 || (rotated && !polled)) {
+				offset = initialOffset(channel, size);
+				Logger.verbose("Following the log " + file.getPath() + " from offset " + offset);
+			} else if (rotated) {
+				Logger.verbose("The log " + file.getPath() + " was rotated; reading the new log from its start");
+				offset = 0;
+			} else if (!polled && size - offset > MAX_RESUME_BYTES) {
+				Logger.verbose("The log " + file.getPath() + " is " + (size - offset) + " bytes past its checkpoint; skipping to its end");
+				offset = initialOffset(channel, size);
+			}
+			if (rotated) {
+				announce();
+			}
+			fileKey = currentKey;
+			polled = true;
+
+			if (size <= offset) {
+				checkpoint();
+				return null;
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - offset, MAX_SEGMENT_BYTES));
+			while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+				// read until the buffer is full or the end of the file
+			}
+
+			// Leave a partly written last line to be read with the rest of it, unless it fills the buffer
+			int length = lastLineEnd(buffer.array(), buffer.position());
+			if (length == 0 && buffer.position() == MAX_SEGMENT_BYTES) {
+				length = MAX_SEGMENT_BYTES;
+			}
+			if (length == 0) {
+				checkpoint();
+				return null;
+			}
+
+			Segment segment = new Segment(logType, file, offset, offset + length,
+					new String(buffer.array(), 0, length, StandardCharsets.UTF_8));
+			offset += length;
+			checkpoint();
+
+			EventLog.emit("logSegment", "logType", logType, "file", file.getPath(), "start", segment.getStart(),
+					"end", segment.getEnd());
+			return segment;
+		}
+	}
+
+	/** Read the new lines of the log as they are written, until the thread is interrupted */
+	public void follow(ISegmentListener listener, long pollMillis) throws IOException, InterruptedException {
+		while (!Thread.currentThread().isInterrupted()) {
+			Segment segment = poll();
+			if (segment != null) {
+				listener.newSegment(segment);
+			} else {
+				Thread.sleep(pollMillis);
+			}
+		}
+	}
+
+	/** The offset of the start of the last initialLines lines of the file */
+	private long initialOffset(FileChannel channel, long size) throws IOException {
+		if (initialLines <= 0 || size == 0) {
+			return size;
+		}
+
+		long start = Math.max(0, size - MAX_INITIAL_BYTES);
+		ByteBuffer buffer = ByteBuffer.allocate((int) (size - start));
+		while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+			// read until the buffer is full
+		}
+
+		// Count the line ends back from the end, ignoring the one that ends the last line
+		byte[] bytes = buffer.array();
+		int lines = 0;
+		for (int i = buffer.position() - 2; i >= 0; i--) {
+			if (bytes[i] == '\n' && ++lines == initialLines) {
+				return start + i + 1;
+			}
+		}
+		return start;
+	}
+
+	private static int lastLineEnd(byte[] bytes, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (bytes[i] == '\n') {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	private void checkpoint() {
+		String checkpoint = offset + ":" + fileKey;
+		if (!checkpoint.equals(db.get(checkpointKey))) {
+			db.put(checkpointKey, checkpoint);
+		}
+	}
+
+	private void announce() {
+		if (newFileAnnouncer != null) {
+			newFileAnnouncer.run();
+		}
+	}
+}
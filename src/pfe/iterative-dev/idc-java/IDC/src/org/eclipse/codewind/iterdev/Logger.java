@@ -20,7 +20,7 @@ public class Logger {
 	 * Example: [IDCContext.loadIDCConfigPropertiesFromFile:262] Configuration file detected:  */
 	private static final boolean printCallingMethods = false;
 	
-    public static boolean isVerbose = false;
+    public static boolean isVerbose = Boolean.parseBoolean(System.getenv(Constants.IDC_VERBOSE));
 
 	public static void printUsage() {
 		System.out.println("Commands:");
@@ -42,8 +42,16 @@ public class Logger {
 		printIDCCmd(Constants.OPTION_CONTAINER_REFRESH);
 		printIDCCmd(Constants.OPTION_CONTAINER_REMOVE);
 		System.out.println();
-		printIDCCmd(Constants.OPTION_SYSTEM_CLEANUP);
+		printIDCCmd(Constants.OPTION_SYSTEM_CLEANUP + " [" + Constants.ASSUME_YES_KEY + "] ["
+				+ Constants.PARALLELISM_KEY + "<n>]");
 		printIDCCmd(Constants.OPTION_SHELL);
+		System.out.println();
+		printIDCCmd(Constants.OPTION_SERVER + " " + Constants.IDC_SERVER_PORT_KEY + "<port>");
+		printIDCCmd(Constants.OPTION_BATCH + " " + String.join("|", Constants.BATCH_COMMANDS) + " ["
+				+ Constants.PARALLELISM_KEY + "<n>] <project dir>...");
+		System.out.println();
+		System.out.println("Any command accepts " + Constants.OUTPUT_KEY + Constants.OUTPUT_JSON + "|" + Constants.OUTPUT_TEXT
+				+ ", to write its messages and results as JSON lines");
 	}
 
 	private static void printIDCCmd(String cmd){
@@ -52,22 +60,38 @@ public class Logger {
 
 	public static void verbose(String msg) {
 		if(isVerbose) {
+			if (EventLog.isJson()) {
+				EventLog.log("verbose", msg);
+				return;
+			}
 			Date date = new Date();
 			System.out.println("[VERBOSE " + date.toString() + "] " + msg);
 		}
 	}
 
 	public static void info(String msg) {
+		if (EventLog.isJson()) {
+			EventLog.log("info", msg);
+			return;
+		}
 		String callingMethod = printCallingMethods ? getCallingMethod(Logger.class) : "";
 		System.out.println(callingMethod + msg);
 	}
 
 	public static void error(String str) {
+		if (EventLog.isJson()) {
+			EventLog.error(str, null);
+			return;
+		}
 		String callingMethod = printCallingMethods ? getCallingMethod(Logger.class) : "";
 		System.err.println(callingMethod + str);
 	}
 
 	public static void error(String str, Exception e) {
+		if (EventLog.isJson()) {
+			EventLog.error(str, e);
+			return;
+		}
 		String callingMethod = printCallingMethods ? getCallingMethod(Logger.class) : "";
 		System.err.println(callingMethod +  str + "\n" + e.getMessage());
 		e.printStackTrace();
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.eclipse.codewind.iterdev.ProcessRunner.CaptureMode;
+
+/** Keeps the output lines of a ProcessRunner, as selected by its CaptureMode. Lines may be added from the
+ * stdout and stderr reader threads at the same time, so all operations are synchronized. */
+abstract class OutputCapture implements Iterable<String> {
+
+	/** Set by finish(), after which lines are no longer added */
+	private boolean finished = false;
+
+	static OutputCapture create(CaptureMode mode, int maxLines) {
+		switch (mode) {
+		case none:
+			return new NoCapture();
+		case lastLines:
+			return new LastLinesCapture(maxLines);
+		default:
+			return new AllCapture();
+		}
+	}
+
+	/** Add a line of output, unless the output was already finished */
+	final synchronized void addLine(String line) {
+		if (!finished) {
+			add(line);
+		}
+	}
+
+	abstract void add(String line);
+
+	/** All of the captured lines, each terminated by a newline */
+	abstract String getText();
+
+	/** Called once the process has exited and its output was read (or the reader threads were given up on). Any line
+	 * the readers add after this is dropped, so that the captured output doesn't change once the process is complete. */
+	final synchronized void finish() {
+		finished = true;
+	}
+
+	/** Release anything held by the captured output; the output is discarded. */
+	void close() {
+	}
+
+	/** Keeps all of the output in memory */
+	private static class AllCapture extends OutputCapture {
+
+		private List<String> lines = new ArrayList<>();
+
+		@Override
+		synchronized void add(String line) {
+			lines.add(line);
+		}
+
+		@Override
+		synchronized String getText() {
+			StringBuilder sb = new StringBuilder();
+			for (String line : lines) {
+				sb.append(line).append('\n');
+			}
+			return sb.toString();
+		}
+
+		/** Iterates over the lines captured so far, without copying them */
+		@Override
+		public synchronized Iterator<String> iterator() {
+			final List<String> captured = lines;
+			final int size = captured.size();
+			return new Iterator<String>() {
+				private int next = 0;
+
+				@Override
+				public boolean hasNext() {
+					return next < size;
+				}
+
+				@Override
+				public String next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					synchronized (AllCapture.this) {
+						return captured.get(next++);
+					}
+				}
+			};
+		}
+
+		@Override
+		synchronized void close() {
+			// Iterators that are still in use keep the old list
+			lines = new ArrayList<>();
+		}
+	}
+
+	private static class NoCapture extends OutputCapture {
+
+		@Override
+		void add(String line) {
+		}
+
+		@Override
+		String getText() {
+			return "";
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return Collections.emptyIterator();
+		}
+	}
+
+	/** Keeps the last maxLines lines of output in a ring buffer */
+	private static class LastLinesCapture extends OutputCapture {
+
+		private final ArrayDeque<String> lines;
+
+		private final int maxLines;
+
+		LastLinesCapture(int maxLines) {
+			this.maxLines = maxLines;
+			this.lines = new ArrayDeque<>(Math.min(maxLines, 1024));
+		}
+
+		@Override
+		synchronized void add(String line) {
+			if (maxLines <= 0) {
+				return;
+			}
+			if (lines.size() == maxLines) {
+				lines.removeFirst();
+			}
+			lines.addLast(line);
+		}
+
+		@Override
+		synchronized String getText() {
+			StringBuilder sb = new StringBuilder();
+			for (String line : lines) {
+				sb.append(line).append('\n');
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public synchronized Iterator<String> iterator() {
+			return new ArrayList<>(lines).iterator();
+		}
+
+		@Override
+		synchronized void close() {
+			lines.clear();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.codewind.iterdev.ProcessRunner.CaptureMode;
+
+/**
+ * Waits for a set of pods to be deleted by reading a Kubernetes watch stream, one JSON event per line, as it is
+ * written by the API server (see KubeApiClient.watchPods()) or a long-running process (such as kubectl get --raw
+ * on a watch URL), rather than listing the pods again every few seconds.
+ *
+ * The wait ends as soon as the event deleting the last of the pods is read. A pod added by the stream (for example
+ * one recreated by its replica set) must also be deleted before the wait ends.
+ */
+public class PodTerminationWatch implements IListener {
+
+	public static enum Outcome {
+		/** All of the pods were deleted */
+		terminated,
+		/** The stream ended, or the server ended the watch (for example because the resource version has expired)
+		 * before all of the pods were deleted, so the pods must be listed again and a new watch started */
+		restart,
+		/** The deadline passed before all of the pods were deleted */
+		timedOut
+	};
+
+	private final Set<String> pods;
+
+	private final CompletableFuture<Outcome> result = new CompletableFuture<>();
+
+	/** @param pods The names of the pods, as listed at the resource version the watch starts from */
+	public PodTerminationWatch(Collection<String> pods) {
+		this.pods = new HashSet<String>(pods);
+		if (this.pods.isEmpty()) {
+			result.complete(Outcome.terminated);
+		}
+	}
+
+	/**
+	 * Start the watch process and read its events until the pods are deleted, the stream ends, or the deadline
+	 * passes; the process is then destroyed.
+	 * @param deadline The time, in milliseconds since the epoch, to wait until
+	 */
+	public Outcome await(ProcessRunner watch, long deadline) throws IOException, InterruptedException {
+		if (result.isDone()) {
+			return result.getNow(Outcome.terminated);
+		}
+
+		// The watch never ends by itself while the pods exist, so none of its output is kept
+		watch.setCaptureMode(CaptureMode.none);
+		watch.addListener(this);
+		return await(watch.start(), watch::destroy, deadline);
+	}
+
+	/**
+	 * Wait for the events of a stream that was started with this as its listener, until the pods are deleted, the
+	 * stream ends, or the deadline passes; the stream is then closed.
+	 * @param streamEnded Completes when the stream ends
+	 */
+	public Outcome await(CompletableFuture<?> streamEnded, Runnable closeStream, long deadline)
+			throws IOException, InterruptedException {
+		try {
+			CompletableFuture.anyOf(result, streamEnded).get(Math.max(0, deadline - System.currentTimeMillis()),
+					TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			return Outcome.timedOut;
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			closeStream.run();
+		}
+		return result.getNow(Outcome.restart);
+	}
+
+	/** The pods that have not been deleted yet */
+	public synchronized Set<String> getRemainingPods() {
+		return new HashSet<String>(pods);
+	}
+
+	@Override
+	public synchronized void receiveText(String line) {
+		String trimmed = line.trim();
+		if (result.isDone() || !trimmed.startsWith("{")) {
+			// Messages from kubectl on stderr are not events; if the watch failed the stream ends
+			return;
+		}
+
+		Object event;
+		try {
+			event = JSONUtils.parse(trimmed);
+		} catch (IllegalArgumentException e) {
+			Logger.verbose("Ignoring a watch event that is not valid JSON: " + line);
+			return;
+		}
+
+		String type = JSONUtils.getString(event, "type");
+		String name = JSONUtils.getString(event, "object", "metadata", "name");
+		if ("ERROR".equals(type)) {
+			Logger.verbose("The pod watch ended with: " + JSONUtils.getString(event, "object", "message"));
+			result.complete(Outcome.restart);
+		} else if ("DELETED".equals(type) && name != null) {
+			pods.remove(name);
+			if (pods.isEmpty()) {
+				result.complete(Outcome.terminated);
+			}
+		} else if ("ADDED".equals(type) && name != null) {
+			pods.add(name);
+		}
+	}
+}
@@ -78,9 +78,7 @@ public class PortCmd {
 				return;
 			}
 			
-			if(userHttpPort == 0) {
-				newPorts = PortMapUtil.getPortsForApplication(context).orElseThrow( () -> new IllegalStateException("Unable to acquire free application ports") );
-			} else {
+			if(userHttpPort != 0) {
 				newPorts.put(PortMapUtil.HTTP_PORT, userHttpPort);
 				newPorts.put(PortMapUtil.HTTPS_PORT, userHttpsPort);
 			}
@@ -105,10 +103,14 @@ public class PortCmd {
 			
 			System.out.println("* Reserving ports "+userHttpPort+" and "+userHttpsPort);
 			
-			// Remove old ports from DB
-			PortMapUtil.removePortMapping(context, PortMapUtil.HTTP_PORT);
-			PortMapUtil.removePortMapping(context, PortMapUtil.HTTPS_PORT);
-			PortMapUtil.reservePortsInDatabase(context, newPorts);
+			// Replace the old ports in the DB. The ports are checked and reserved with a single commit, as another IDC process may
+			// have reserved them since they were read.
+			if(userHttpPort == 0) {
+				newPorts = PortMapUtil.acquirePortsForApplication(context).orElseThrow( () -> new IllegalStateException("Unable to acquire free application ports") );
+			} else if(!PortMapUtil.reservePortsInDatabase(context, newPorts)) {
+				Logger.error("Unable to reserve ports "+userHttpPort+" and "+userHttpsPort+", another application has reserved one of them.");
+				return;
+			}
 			
 			
 			System.out.println("* Run a new container "+context.getContainerName());
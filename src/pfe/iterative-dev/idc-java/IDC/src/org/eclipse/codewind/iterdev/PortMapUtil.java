@@ -13,6 +13,7 @@ package org.eclipse.codewind.iterdev;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,15 +26,36 @@ public class PortMapUtil {
 	public static final String HTTPS_PORT = "https";
 	
 	/** This method does not acquire the ports, it merely returns to the calling method that they are available. To reserve the ports in the 
-	 * global database, call reservePortsInDatabase(...). */
+	 * global database, call acquirePortsForApplication(...) instead. */
 	public static Optional<Map<String, Integer>> getPortsForApplication(IDCContext context) {
+		return findPorts(context.getAppId(), getPortMappingsFromDatabase(context.getGlobalDb()));
+	}
+	
+	/** Find ports for the application as getPortsForApplication(...) does, and reserve them in the global database. The ports are
+	 * found and reserved with a single DBMap.update(...), so another IDC process can't reserve the same free ports in between. */
+	public static Optional<Map<String, Integer>> acquirePortsForApplication(IDCContext context) {
+		
+		Map<String, String> entries = context.getGlobalDb().update(current -> {
+			Optional<Map<String, Integer>> ports = findPorts(context.getAppId(), getPortMappings(current));
+			return ports.isPresent() ? toEntries(context, ports.get()) : Collections.emptyMap();
+		});
 		
-		Map<String /* app id*/, PortMapping> portMappings =  getPortMappingsFromDatabase(context.getGlobalDb());
+		if(entries.isEmpty()) {
+			return Optional.empty();
+		}
+		
+		HashMap<String, Integer> result = new HashMap<String, Integer>();
+		result.put(HTTPS_PORT, Integer.parseInt(entries.get(generateKey(context, HTTPS_PORT))));
+		result.put(HTTP_PORT, Integer.parseInt(entries.get(generateKey(context, HTTP_PORT))));
+		return Optional.of(result);
+	}
+	
+	private static Optional<Map<String, Integer>> findPorts(String appId, Map<String /* app id*/, PortMapping> portMappings) {
 		
 		HashMap<String, Integer> result = new HashMap<String, Integer>();
 		
 		// 1) Does this app ip already have ports mapped?
-		PortMapping pm = portMappings.get(context.getAppId());
+		PortMapping pm = portMappings.get(appId);
 		if(pm != null) {
 			// If yes, use them.
 			Integer httpsPort = pm.getMap().get(HTTPS_PORT);
@@ -112,12 +134,31 @@ public class PortMapUtil {
 		
 	}
 	
-	public static void reservePortsInDatabase(IDCContext context, Map<String, Integer> ports) {
+	/** Reserve the given ports for the application in the global database, replacing the ports it had, unless another application
+	 * has reserved any of them. The check and the reservation are a single DBMap.update(...), so that two IDC processes can't
+	 * both reserve the same port. Returns false if another application holds one of the ports. */
+	public static boolean reservePortsInDatabase(IDCContext context, Map<String, Integer> ports) {
 		
-		ports.entrySet().stream().forEach( e -> {
-			putPortMapping(context, e.getKey(), e.getValue());
+		Map<String, String> entries = toEntries(context, ports);
+		
+		Map<String, String> committed = context.getGlobalDb().update(current -> {
+			boolean portInUse = getPortMappings(current).values().stream().anyMatch( (PortMapping e) ->
+				!e.getAppId().equals(context.getAppId()) && e.getMap().values().stream().anyMatch(ports::containsValue) );
+			
+			return portInUse ? Collections.emptyMap() : entries;
 		});
 		
+		return !committed.isEmpty();
+	}
+	
+	/** All of the ports as a single commit, so other IDC processes never see half a reservation */
+	private static Map<String, String> toEntries(IDCContext context, Map<String, Integer> ports) {
+		Map<String, String> entries = new HashMap<>();
+		ports.entrySet().stream().forEach( e -> {
+			validatePortMapping(e.getKey(), e.getValue());
+			entries.put(generateKey(context, e.getKey()), ""+e.getValue());
+		});
+		return entries;
 	}
 	
 	
@@ -135,7 +176,7 @@ public class PortMapUtil {
 		context.getGlobalDb().remove(generateKey(context, portName));
 	}
 	
-	private static void putPortMapping(IDCContext context, String portName, int portValue) {
+	private static void validatePortMapping(String portName, int portValue) {
 		
 		if(portValue > 65535 || portValue < 0) {
 			throw new IllegalArgumentException("Invalid port value: "+portValue);
@@ -145,15 +186,6 @@ public class PortMapUtil {
 			throw new IllegalArgumentException("Invalid port name");
 		}
 		
-//		String appId = context.getAppId();
-//		String appName = context.getAppName(); 
-//		
-//		String key = "port-mapping-appname("+appName+")-appid("+appId+")-portname("+portName+")";
-		
-		String key = generateKey(context, portName);
-		
-		context.getGlobalDb().put(key, ""+portValue);
-		
 	}
 	
 
@@ -168,11 +200,13 @@ public class PortMapUtil {
 
 	
 	public static Map<String /*app id */, PortMapping> getPortMappingsFromDatabase(DBMap db) {
+			return getPortMappings(db.getMap());
+	}
+	
+	private static Map<String /*app id */, PortMapping> getPortMappings(Map<String, String> dbValues) {
 		
 			Map<String, PortMapping> result = new HashMap<>();
 		
-			Map<String, String> dbValues =  db.getMap();
-		
 			dbValues.entrySet().stream().filter(e -> e.getKey().startsWith("port-mapping") ).forEach(e -> {
 				
 				String text = e.getKey();
@@ -22,11 +22,28 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class ProcessRunner {
 	
 	public static enum ConsoleStream {ERR, OUT }; 
 
+	/** How the output of the process is kept for getReceived() and receivedLines() */
+	public static enum CaptureMode {
+		/** Keep all of the output in memory */
+		all,
+		/** Don't keep the output; listeners still receive each line */
+		none,
+		/** Keep only the last lines of the output */
+		lastLines
+	};
+
+	/** Number of lines kept by CaptureMode.lastLines, unless set with setCaptureMode(mode, maxLines) */
+	public static final int DEFAULT_CAPTURE_LINES = 1000;
+
 
 	private final String[] args;
 	
@@ -36,11 +53,23 @@ public class ProcessRunner {
 	
 	private final List<IListener> listeners = new ArrayList<>();
 	
-	private final StringBuilder received = new StringBuilder();
+	private volatile OutputCapture received = OutputCapture.create(CaptureMode.all, 0);
 	
 	private final boolean echoOutput;
 	
-	private Optional<Integer> errorCode = Optional.empty();
+	private volatile Optional<Integer> errorCode = Optional.empty();
+
+	private volatile Process process;
+
+	/** Set once destroy() is called, when the output streams closing under the reader threads is expected */
+	private volatile boolean destroyed = false;
+
+	private final CompletableFuture<Integer> completion = new CompletableFuture<>();
+
+	/** How long to wait for the output to be closed once the process has exited, unless set with setDrainTimeout(...) */
+	public static final int DEFAULT_DRAIN_TIMEOUT_SECONDS = 10;
+
+	private long drainTimeoutMs = TimeUnit.SECONDS.toMillis(DEFAULT_DRAIN_TIMEOUT_SECONDS);
 	
 	private final Map<String, String> envVars = new HashMap<String, String>();
 	
@@ -55,7 +84,26 @@ public class ProcessRunner {
 		this.echoOutput = echoOutput;
 	}
 	
+	/** Run the process and wait until it has exited and all of its output has been read */
 	public int startAndWaitForTermination() throws IOException, InterruptedException {
+		return waitFor(start());
+	}
+
+	/** Run the process and wait for it as startAndWaitForTermination() does, but for no longer than the given
+	 * timeout; if the process is still running by then it is destroyed and a TimeoutException is thrown. */
+	public int startAndWaitForTermination(long timeout, TimeUnit unit) throws IOException, InterruptedException, TimeoutException {
+		CompletableFuture<Integer> completion = start();
+		try {
+			return waitFor(completion, timeout, unit);
+		} catch (TimeoutException e) {
+			destroy();
+			throw new TimeoutException("'" + String.join(" ", args) + "' did not complete within " + unit.toMillis(timeout) + "ms");
+		}
+	}
+
+	/** Start the process and return without waiting for it. The returned future completes with the exit code once
+	 * the process has exited and all of its output has been read (and so getReceived() is complete). */
+	public CompletableFuture<Integer> start() throws IOException {
 		
 		ProcessBuilder pb = new ProcessBuilder(args);
 		
@@ -64,31 +112,125 @@ public class ProcessRunner {
 		});
 		
 		
+		OutputCapture received = this.received;
+		long drainTimeoutMs = this.drainTimeoutMs;
+
+		long startTime = System.currentTimeMillis();
 		Process p = pb.start();
+		process = p;
 		
 		os = p.getOutputStream();
 		
-		ReadThread input = new ReadThread(p.getInputStream(), echoOutput ? System.out : null, ConsoleStream.OUT);
+		ReadThread input = new ReadThread(p.getInputStream(), echoOutput ? System.out : null, ConsoleStream.OUT, received);
 		input.start();
 		
-		ReadThread err = new ReadThread(p.getErrorStream(), echoOutput ? System.err : null, ConsoleStream.ERR);
+		ReadThread err = new ReadThread(p.getErrorStream(), echoOutput ? System.err : null, ConsoleStream.ERR, received);
 		err.start();
 
-		errorCode = Optional.of(p.waitFor());
+		CompletableFuture<Void> drained = CompletableFuture.allOf(input.drained, err.drained);
+
+		// Java 8 has no Process.onExit(), so a thread waits for the process to exit and then for its output to drain
+		Thread waiter = new Thread(() -> {
+			try {
+				int exitCode = p.waitFor();
+				long exitTime = System.currentTimeMillis();
+
+				try {
+					drained.get(drainTimeoutMs, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					// A child of the process may have inherited its stdout/stderr and still be running. The reader threads
+					// are left to it, but the output they read from now on is not captured (see OutputCapture.finish()).
+					Logger.info("The output of '" + String.join(" ", args) + "' was still open " + drainTimeoutMs
+							+ "ms after it exited, continuing without it");
+				}
+
+				Logger.verbose("'" + String.join(" ", args) + "' exited with " + exitCode + " after " + (exitTime - startTime)
+						+ "ms, output drained after " + (System.currentTimeMillis() - startTime) + "ms");
+
+				received.finish();
+
+				errorCode = Optional.of(exitCode);
+				completion.complete(exitCode);
+			} catch (Throwable t) {
+				completion.completeExceptionally(t);
+			}
+		}, "ProcessRunner waiter");
+		waiter.setDaemon(true);
+		waiter.start();
+
+		return completion;
+	}
+
+	/** Wait for the future returned by start(), rethrowing its failure */
+	public static int waitFor(CompletableFuture<Integer> completion) throws IOException, InterruptedException {
+		try {
+			return completion.get();
+		} catch (ExecutionException e) {
+			throw toIOException(e);
+		}
+	}
 
-		while(!input.isFinished) {
-			Thread.sleep(200);
+	public static int waitFor(CompletableFuture<Integer> completion, long timeout, TimeUnit unit)
+			throws IOException, InterruptedException, TimeoutException {
+		try {
+			return completion.get(timeout, unit);
+		} catch (ExecutionException e) {
+			throw toIOException(e);
 		}
-		
-		return errorCode.get();
+	}
+
+	private static IOException toIOException(ExecutionException e) {
+		return e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+	}
+
+	/** Forcibly end the process, if it was started and is still running */
+	public void destroy() {
+		Process p = process;
+		if (p != null) {
+			destroyed = true;
+			p.destroyForcibly();
+		}
+	}
+
+	/** Completes with the exit code once the process has exited and its output has been read */
+	public CompletableFuture<Integer> getCompletion() {
+		return completion;
 	}
 	
 	public Map<String, String> getEnvVars() {
 		return envVars;
 	}
 
+	/** Select how the output is kept; this must be called before the process is started. The default is
+	 * CaptureMode.all. */
+	public void setCaptureMode(CaptureMode mode) {
+		setCaptureMode(mode, DEFAULT_CAPTURE_LINES);
+	}
+
+	public void setCaptureMode(CaptureMode mode, int maxLines) {
+		received.close();
+		received = OutputCapture.create(mode, maxLines);
+	}
+
+	/** Set how long to wait, once the process has exited, for its output to be closed; this must be called before the
+	 * process is started. */
+	public void setDrainTimeout(long timeout, TimeUnit unit) {
+		drainTimeoutMs = unit.toMillis(timeout);
+	}
+
+	/** The captured output, each line terminated by a newline */
 	public String getReceived() {
-		return received.toString();
+		return received.getText();
+	}
+
+	/** Iterate over the captured output one line at a time, without first building it into a single string */
+	public Iterable<String> receivedLines() {
+		return received;
+	}
+
+	/** Discard the captured output */
+	public void clearReceived() {
+		received.close();
 	}
 
 	public void addListener(IListener listener) {
@@ -116,12 +258,14 @@ public class ProcessRunner {
 		final InputStream is;
 		final PrintStream ps;
 		final ConsoleStream cs;
-		private boolean isFinished = false;
+		final OutputCapture received;
+		final CompletableFuture<Void> drained = new CompletableFuture<>();
 		
-		public ReadThread(InputStream is, PrintStream ps, ConsoleStream cs) {
+		public ReadThread(InputStream is, PrintStream ps, ConsoleStream cs, OutputCapture received) {
 			this.is = is;
 			this.ps = ps;
 			this.cs = cs;
+			this.received = received;
 			setDaemon(true);
 		}
 		
@@ -142,12 +286,14 @@ public class ProcessRunner {
 					}
 					
 					if(ps != null && !exclude) {
-						ps.append(str+"\n");
+						if (EventLog.isJson()) {
+							EventLog.output(cs, str);
+						} else {
+							ps.append(str+"\n");
+						}
 					}
 					
-					synchronized(received) {
-						received.append(str+"\n");
-					}
+					received.addLine(str);
 					
 					
 					for(IListener listener : listeners) {
@@ -155,9 +301,12 @@ public class ProcessRunner {
 					}
 					
 				}
-				isFinished = true;
 			} catch (IOException e) {
-				e.printStackTrace();
+				if (!destroyed) {
+					e.printStackTrace();
+				}
+			} finally {
+				drained.complete(null);
 			}
 			
 		}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Sends status requests to the portal's internal project API.
+ *
+ * Connections are not disconnect()ed; instead each response is read to the end and closed, which returns the
+ * connection to the JDK's keep-alive cache, so a burst of status updates reuses one TCP (and TLS) connection.
+ * The portal uses a self-signed certificate, so HTTPS connections trust all certificates; the SSL context for
+ * that is created once, and only applied to the connections made here rather than installed as the JVM default.
+ */
+public class StatusClient {
+
+	private static final String PORTAL_HTTPS = System.getenv().get("PORTAL_HTTPS");
+	private static final String PORTAL_PROTOCOL = "true".equals(PORTAL_HTTPS) ? "https" : "http";
+	private static final String PORTAL_PORT = "true".equals(PORTAL_HTTPS) ? "9191" : "9090";
+
+	private static final String PROJECTS_API = PORTAL_PROTOCOL + "://localhost:" + PORTAL_PORT + "/internal/api/v1/projects/";
+
+	private static SSLSocketFactory sslSocketFactory;
+
+	private static final HostnameVerifier TRUST_ALL_HOSTS = (hostname, session) -> true;
+
+	/** Response code and message of a status request */
+	public static class Response {
+
+		public final int code;
+		public final String message;
+
+		public Response(int code, String message) {
+			this.code = code;
+			this.message = message;
+		}
+
+		public boolean isOK() {
+			return code == HttpURLConnection.HTTP_OK;
+		}
+	}
+
+	/** POST the JSON body to the given path under /internal/api/v1/projects/ */
+	public static Response post(String path, String json) throws IOException {
+		return send("POST", path, json.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** GET the given path under /internal/api/v1/projects/ */
+	public static Response get(String path) throws IOException {
+		return send("GET", path, null);
+	}
+
+	private static Response send(String method, String path, byte[] body) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL(PROJECTS_API + path).openConnection();
+		if (conn instanceof HttpsURLConnection) {
+			((HttpsURLConnection) conn).setSSLSocketFactory(getSSLSocketFactory());
+			((HttpsURLConnection) conn).setHostnameVerifier(TRUST_ALL_HOSTS);
+		}
+		conn.setRequestMethod(method);
+
+		if (body != null) {
+			conn.setDoOutput(true);
+			conn.setFixedLengthStreamingMode(body.length);
+			conn.setRequestProperty("Content-Type", "application/json");
+			try (OutputStream os = conn.getOutputStream()) {
+				os.write(body);
+			}
+		}
+
+		int code = conn.getResponseCode();
+		String message = conn.getResponseMessage();
+
+		// Read the rest of the response so that the connection can be reused for the next request
+		InputStream is = code >= HttpURLConnection.HTTP_BAD_REQUEST ? conn.getErrorStream() : conn.getInputStream();
+		if (is != null) {
+			try {
+				byte[] buffer = new byte[1024];
+				while (is.read(buffer) != -1) {
+					// discard
+				}
+			} finally {
+				is.close();
+			}
+		}
+
+		return new Response(code, message);
+	}
+
+	private static synchronized SSLSocketFactory getSSLSocketFactory() throws IOException {
+		if (sslSocketFactory == null) {
+			TrustManager[] trustAllCerts = new TrustManager[] { new X509TrustManager() {
+				public X509Certificate[] getAcceptedIssuers() {
+					return new X509Certificate[0];
+				}
+
+				public void checkClientTrusted(X509Certificate[] certs, String authType) {
+				}
+
+				public void checkServerTrusted(X509Certificate[] certs, String authType) {
+				}
+			} };
+
+			try {
+				SSLContext sc = SSLContext.getInstance("SSL");
+				sc.init(null, trustAllCerts, new SecureRandom());
+				sslSocketFactory = sc.getSocketFactory();
+			} catch (Exception e) {
+				throw new IOException("Fail to trust self-signed certificate for updating build/app status", e);
+			}
+		}
+		return sslSocketFactory;
+	}
+}
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Sends status events to the portal from a background thread, so that the build never waits on the portal.
+ *
+ * Events are queued by key (the project and the type of state). An event that is queued while an earlier
+ * event with the same key is still waiting replaces it, so for example starting, stopping, stopped within one
+ * flush window is sent as just stopped. Each flush sends the queued events back to back over the kept-alive
+ * StatusClient connection; a failed event is retried with exponential backoff, unless a newer event for the same
+ * key has been queued in the meantime. Queued events are flushed when a command completes, and when the JVM exits.
+ *
+ * PORTAL sends the events to the portal; other instances, with their own sender, are for tests.
+ */
+public class StatusDispatcher {
+
+	/** How long the dispatcher waits after the first queued event for more events to arrive */
+	private static final long FLUSH_WINDOW_MS = 100;
+
+	private static final int MAX_ATTEMPTS = 4;
+
+	private static final long INITIAL_BACKOFF_MS = 250;
+
+	/** How long a completing command, or JVM exit, waits for the queued events to be sent */
+	private static final long EXIT_FLUSH_TIMEOUT_MS = 5000;
+
+	/** Sends a single status event, returning the response */
+	public static interface ISender {
+		public StatusClient.Response send(StatusEvent event) throws IOException;
+	}
+
+	/** A status request for the portal; a null body makes it a GET. */
+	public static class StatusEvent {
+
+		public final String key;
+		public final String path;
+		public final String body;
+		public final String failureMessage;
+
+		/**
+		 * @param key Events with the same key replace each other while queued
+		 * @param path Path under the portal's internal projects API
+		 * @param body JSON body to POST, or null to GET the path
+		 * @param failureMessage Logged, followed by the cause, if the request fails
+		 */
+		public StatusEvent(String key, String path, String body, String failureMessage) {
+			this.key = key;
+			this.path = path;
+			this.body = body;
+			this.failureMessage = failureMessage;
+		}
+	}
+
+	public static final StatusDispatcher PORTAL = new StatusDispatcher(
+			event -> event.body == null ? StatusClient.get(event.path) : StatusClient.post(event.path, event.body),
+			FLUSH_WINDOW_MS, INITIAL_BACKOFF_MS);
+
+	private final ISender sender;
+
+	private final long flushWindowMs;
+
+	private final long initialBackoffMs;
+
+	private final LinkedHashMap<String, StatusEvent> pending = new LinkedHashMap<>();
+
+	private Thread dispatcher;
+
+	/** Whether the dispatcher is sending a batch that was taken off the queue */
+	private boolean sending = false;
+
+	/** Number of threads waiting in flush(); the dispatcher skips the flush window while there are any */
+	private int flushWaiters = 0;
+
+	public StatusDispatcher(ISender sender, long flushWindowMs, long initialBackoffMs) {
+		this.sender = sender;
+		this.flushWindowMs = flushWindowMs;
+		this.initialBackoffMs = initialBackoffMs;
+	}
+
+	public void submit(StatusEvent event) {
+		synchronized (pending) {
+			if (pending.remove(event.key) != null) {
+				Logger.verbose("Replacing the queued status event for " + event.key);
+			}
+			pending.put(event.key, event);
+			startDispatcher();
+			pending.notifyAll();
+		}
+	}
+
+	/** Wait until all queued events have been sent (or given up on); returns false if the timeout expires first */
+	public boolean flush(long timeoutMs) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		synchronized (pending) {
+			flushWaiters++;
+			try {
+				pending.notifyAll();
+				long remaining;
+				while ((!pending.isEmpty() || sending) && (remaining = deadline - System.currentTimeMillis()) > 0) {
+					pending.wait(remaining);
+				}
+				return pending.isEmpty() && !sending;
+			} finally {
+				flushWaiters--;
+			}
+		}
+	}
+
+	/**
+	 * Wait a bounded time for the queued events to be sent, so that the portal has the status updates of a command
+	 * before the command reports its exit code.
+	 */
+	public void flushBeforeExit() {
+		try {
+			if (!flush(EXIT_FLUSH_TIMEOUT_MS)) {
+				Logger.error("Some status updates could not be sent before exiting");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void startDispatcher() {
+		if (dispatcher != null) {
+			return;
+		}
+
+		dispatcher = new Thread(this::dispatch, "IDC status dispatcher");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			ConsoleRouter.clearConsole();
+			flushBeforeExit();
+		}, "IDC status flush"));
+	}
+
+	private void dispatch() {
+		// This thread outlives the command that started it, so its output goes to the original console
+		ConsoleRouter.clearConsole();
+
+		while (true) {
+			try {
+				List<StatusEvent> batch;
+				synchronized (pending) {
+					while (pending.isEmpty()) {
+						pending.wait();
+					}
+
+					long deadline = System.currentTimeMillis() + flushWindowMs;
+					long remaining;
+					while (flushWaiters == 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+						pending.wait(remaining);
+					}
+
+					batch = new ArrayList<>(pending.values());
+					pending.clear();
+					sending = true;
+				}
+
+				try {
+					for (StatusEvent event : batch) {
+						send(event);
+					}
+				} finally {
+					synchronized (pending) {
+						sending = false;
+						pending.notifyAll();
+					}
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (Throwable t) {
+				Logger.error("Unexpected error sending status updates: " + t);
+			}
+		}
+	}
+
+	private void send(StatusEvent event) throws InterruptedException {
+		long backoff = initialBackoffMs;
+		for (int attempt = 1;; attempt++) {
+			String failure;
+			try {
+				StatusClient.Response response = sender.send(event);
+				if (response.isOK()) {
+					return;
+				}
+				failure = "with code: " + response.code + ", and message: " + response.message;
+				if (response.code < 500) {
+					// The portal rejected the request, so sending it again won't help
+					Logger.error(event.failureMessage + ", " + failure);
+					return;
+				}
+			} catch (IOException e) {
+				failure = e.toString();
+			}
+
+			if (attempt == MAX_ATTEMPTS) {
+				Logger.error(event.failureMessage + ", " + failure);
+				return;
+			}
+
+			synchronized (pending) {
+				if (pending.containsKey(event.key)) {
+					// A newer state for the same key is queued; it replaces this one
+					return;
+				}
+			}
+			Thread.sleep(backoff);
+			backoff *= 2;
+		}
+	}
+}
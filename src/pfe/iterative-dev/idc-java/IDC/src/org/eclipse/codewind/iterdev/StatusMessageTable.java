@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Maps the message IDs a runtime writes to its console (such as Liberty's CWWKZ0018I) to the application state
+ * the StatusTracker should report. A line is scanned once: each occurrence of a registered message ID prefix is
+ * looked up in the table, and if a line contains several registered IDs, the one registered first wins.
+ *
+ * The table for a runtime can be replaced, or tables added for other runtimes, with register(runtime, table).
+ */
+public class StatusMessageTable {
+
+	public static final String RUNTIME_LIBERTY = "liberty";
+
+	/** The state change for a message ID; a null state means the message is recognized but changes nothing. */
+	public static class StatusUpdate {
+
+		public final String stateType;
+		public final String state;
+		public final String msg;
+
+		public StatusUpdate(String stateType, String state, String msg) {
+			this.stateType = stateType;
+			this.state = state;
+			this.msg = msg;
+		}
+	}
+
+	private static final Map<String, StatusMessageTable> runtimeTables = new HashMap<>();
+
+	static {
+		register(RUNTIME_LIBERTY, createLibertyTable());
+	}
+
+	private static class Entry {
+		final StatusUpdate update;
+		final int priority;
+
+		Entry(StatusUpdate update, int priority) {
+			this.update = update;
+			this.priority = priority;
+		}
+	}
+
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	/** Distinct leading characters of the registered IDs, used to find candidate IDs in a line */
+	private final TreeSet<String> prefixes = new TreeSet<>();
+
+	/** Distinct lengths of the registered IDs */
+	private final TreeSet<Integer> lengths = new TreeSet<>();
+
+	private static final int PREFIX_LENGTH = 4;
+
+	public static synchronized void register(String runtime, StatusMessageTable table) {
+		runtimeTables.put(runtime, table);
+	}
+
+	/** The table registered for the given runtime, or null if there is none */
+	public static synchronized StatusMessageTable forRuntime(String runtime) {
+		return runtimeTables.get(runtime);
+	}
+
+	/** Register the state change for a message ID; a null state registers a message that changes nothing */
+	public synchronized StatusMessageTable add(String messageId, String stateType, String state, String msg) {
+		if (!entries.containsKey(messageId)) {
+			entries.put(messageId, new Entry(new StatusUpdate(stateType, state, msg), entries.size()));
+			prefixes.add(messageId.substring(0, Math.min(PREFIX_LENGTH, messageId.length())));
+			lengths.add(messageId.length());
+		}
+		return this;
+	}
+
+	/** Return the update for the highest priority message ID in the line, or null if it contains none */
+	public synchronized StatusUpdate match(String line) {
+		Entry result = null;
+		for (String prefix : prefixes) {
+			int index = line.indexOf(prefix);
+			while (index != -1) {
+				for (int length : lengths) {
+					if (index + length > line.length()) {
+						break;
+					}
+					Entry entry = entries.get(line.substring(index, index + length));
+					if (entry != null && (result == null || entry.priority < result.priority)) {
+						result = entry;
+					}
+				}
+				index = line.indexOf(prefix, index + 1);
+			}
+		}
+		return result == null ? null : result.update;
+	}
+
+	private static StatusMessageTable createLibertyTable() {
+		StatusMessageTable table = new StatusMessageTable();
+
+		// The application status will be updated to started in FW projectStatusController.pingApplication()
+		// CWWKZ0001I: Application {0} started in {1} seconds.
+		table.add("CWWKZ0001I", "app", null, null);
+		// CWWKZ0003I: The application {0} updated in {1} seconds.
+		table.add("CWWKZ0003I", "app", null, null);
+		// CWWKZ0062I: The {0} application has been updated, but not restarted.
+		table.add("CWWKZ0062I", "app", null, null);
+
+		// CWWKZ0018I: Starting application {0}.
+		table.add("CWWKZ0018I", "app", "starting", null);
+
+		// CWWKT0017I: Web application removed (default_host): {0}
+		table.add("CWWKT0017I", "app", "stopping", null);
+
+		// CWWKZ0009I: The application {0} has stopped successfully.
+		table.add("CWWKZ0009I", "app", "stopped", null);
+
+		String containerStopped = "projectStatusController.appStatusContainerStopped";
+		// CWWKZ0002E: An exception occurred while starting the application {0}. The exception message was: {1}
+		table.add("CWWKZ0002E", "app", "stopped", containerStopped);
+		// CWWKZ0005E: The application {0} cannot start because the server is not configured to handle applications of type {1}.
+		table.add("CWWKZ0005E", "app", "stopped", containerStopped);
+		// CWWKZ0012I: The application {0} was not started.
+		table.add("CWWKZ0012I", "app", "stopped", containerStopped);
+		// CWWKZ0004E: An exception occurred while starting the application {0}. The exception message was: {1}
+		table.add("CWWKZ0004E", "app", "stopped", containerStopped);
+		// CWWKZ0020I: Application {0} not updated.
+		table.add("CWWKZ0020I", "app", "stopped", containerStopped);
+		// CWWKZ0014W: The application {0} could not be started as it could not be found at location {1}.
+		table.add("CWWKZ0014W", "app", "stopped", containerStopped);
+
+		// CWWKZ0010E: An exception occurred while stopping the application {0}. The exception message was: {1}
+		table.add("CWWKZ0010E", "app", "unknown", "projectStatusController.appErrorWhenStopping");
+
+		return table;
+	}
+}
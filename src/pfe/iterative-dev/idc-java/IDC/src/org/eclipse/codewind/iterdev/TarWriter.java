@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Writes a tar archive (ustar, with GNU long name entries for names over 100 bytes) to a stream, one entry at a
+ * time, so that a file's contents go straight from the file to the stream.
+ */
+public class TarWriter implements Closeable {
+
+	private static final int BLOCK_SIZE = 512;
+
+	private static final int NAME_LENGTH = 100;
+
+	private static final long MAX_SIZE = 077777777777L;
+
+	private static final byte TYPE_FILE = '0';
+	private static final byte TYPE_SYMLINK = '2';
+	private static final byte TYPE_DIRECTORY = '5';
+	private static final byte TYPE_GNU_LONG_NAME = 'L';
+	private static final byte TYPE_GNU_LONG_LINK = 'K';
+
+	/** The ustar magic and version */
+	private static final byte[] USTAR_MAGIC = { 'u', 's', 't', 'a', 'r', 0, '0', '0' };
+
+	private final OutputStream os;
+
+	private final byte[] padding = new byte[BLOCK_SIZE];
+
+	public TarWriter(OutputStream os) {
+		this.os = os;
+	}
+
+	public void addDirectory(String name, Path dir) throws IOException {
+		String dirName = name.endsWith("/") ? name : name + "/";
+		writeHeader(dirName, TYPE_DIRECTORY, modeOf(dir, 0755), 0, Files.getLastModifiedTime(dir).toMillis(), null);
+	}
+
+	public void addFile(String name, Path file) throws IOException {
+		long size = Files.size(file);
+		if (size > MAX_SIZE) {
+			throw new IOException(file + " is too large to add to a tar archive");
+		}
+		writeHeader(name, TYPE_FILE, modeOf(file, 0644), size, Files.getLastModifiedTime(file).toMillis(), null);
+
+		long copied = Files.copy(file, os);
+		if (copied != size) {
+			throw new IOException(file + " changed size while it was added to a tar archive");
+		}
+		pad(size);
+	}
+
+	public void addSymbolicLink(String name, Path link) throws IOException {
+		String target = Files.readSymbolicLink(link).toString();
+		writeHeader(name, TYPE_SYMLINK, 0777, 0,
+				Files.getLastModifiedTime(link, LinkOption.NOFOLLOW_LINKS).toMillis(), target);
+	}
+
+	/** Write the end of archive marker, and close the stream */
+	@Override
+	public void close() throws IOException {
+		try {
+			os.write(padding);
+			os.write(padding);
+			os.flush();
+		} finally {
+			os.close();
+		}
+	}
+
+	private void writeHeader(String name, byte type, int mode, long size, long mtimeMillis, String linkName) throws IOException {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		if (nameBytes.length > NAME_LENGTH) {
+			writeLongName(TYPE_GNU_LONG_NAME, nameBytes);
+		}
+		byte[] linkBytes = linkName == null ? new byte[0] : linkName.getBytes(StandardCharsets.UTF_8);
+		if (linkBytes.length > NAME_LENGTH) {
+			writeLongName(TYPE_GNU_LONG_LINK, linkBytes);
+		}
+
+		byte[] header = new byte[BLOCK_SIZE];
+		System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, NAME_LENGTH));
+		writeOctal(header, 100, 8, mode);
+		writeOctal(header, 108, 8, 0);
+		writeOctal(header, 116, 8, 0);
+		writeOctal(header, 124, 12, size);
+		writeOctal(header, 136, 12, mtimeMillis / 1000);
+		header[156] = type;
+		System.arraycopy(linkBytes, 0, header, 157, Math.min(linkBytes.length, NAME_LENGTH));
+		System.arraycopy(USTAR_MAGIC, 0, header, 257, USTAR_MAGIC.length);
+
+		// The checksum is calculated with the checksum field set to spaces
+		Arrays.fill(header, 148, 156, (byte) ' ');
+		long checksum = 0;
+		for (byte b : header) {
+			checksum += b & 0xff;
+		}
+		writeOctal(header, 148, 7, checksum);
+
+		os.write(header);
+	}
+
+	private void writeLongName(byte type, byte[] name) throws IOException {
+		writeHeader("././@LongLink", type, 0644, name.length + 1, 0, null);
+		os.write(name);
+		os.write(0);
+		pad(name.length + 1);
+	}
+
+	private void pad(long size) throws IOException {
+		int remainder = (int) (size % BLOCK_SIZE);
+		if (remainder != 0) {
+			os.write(padding, 0, BLOCK_SIZE - remainder);
+		}
+	}
+
+	/** Write the value as zero padded octal digits followed by a NUL */
+	private static void writeOctal(byte[] header, int offset, int length, long value) {
+		String octal = Long.toOctalString(value);
+		int digits = length - 1;
+		for (int i = 0; i < digits; i++) {
+			int index = octal.length() - digits + i;
+			header[offset + i] = (byte) (index < 0 ? '0' : octal.charAt(index));
+		}
+		header[offset + digits] = 0;
+	}
+
+	private static int modeOf(Path path, int defaultMode) {
+		try {
+			Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+			int mode = 0;
+			for (PosixFilePermission permission : permissions) {
+				// The enum is declared in order from OWNER_READ (0400) to OTHERS_EXECUTE (01)
+				mode |= 0400 >> permission.ordinal();
+			}
+			return mode;
+		} catch (UnsupportedOperationException | IOException e) {
+			// Not a POSIX file system, so the only permission that can be carried over is execute
+			return Files.isExecutable(path) ? defaultMode | 0111 : defaultMode;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how long each phase of an IDC command takes, when IDC_TRACE=true is set in the environment, and writes the
+ * spans to .idc/trace as a file in the Chrome trace event format, which chrome://tracing and Perfetto can open.
+ *
+ * Each command has its own trace, which the threads it creates also record to. A phase is recorded as a span with
+ * Trace.call("name", () -> ...) or Trace.run("name", () -> ...); while tracing is off (or outside a command) the
+ * task is only run, so the instrumentation can stay in place.
+ */
+public class Trace {
+
+	/**
+	 * A task run as a span. It may throw InterruptedException, as most of what IDC waits for does, and one other type
+	 * of exception, which the caller of Trace.call() then throws as it is.
+	 */
+	public static interface ISpanTask<T, E extends Exception> {
+		T call() throws E, InterruptedException;
+	}
+
+	public static interface ISpanRunnable<E extends Exception> {
+		void run() throws E, InterruptedException;
+	}
+
+	/** A span of a trace, which ends when end() is called; see span() */
+	public static class Span {
+
+		private final Trace trace;
+
+		private final String name;
+
+		private final long startNanos;
+
+		private Span(Trace trace, String name) {
+			this.trace = trace;
+			this.name = name;
+			this.startNanos = System.nanoTime();
+		}
+
+		public void end() {
+			if (trace != null) {
+				trace.record(name, startNanos, System.nanoTime());
+			}
+		}
+	}
+
+	/** Set from IDC_TRACE; read by every command thread, so volatile in case setEnabled() changes it */
+	private static volatile boolean enabled = Boolean.parseBoolean(System.getenv(Constants.IDC_TRACE));
+
+	private static final Span NO_SPAN = new Span(null, null);
+
+	/** The number of trace files kept in .idc/trace; the oldest are deleted once there are more */
+	private static final int MAX_TRACE_FILES = 50;
+
+	private static final InheritableThreadLocal<Trace> current = new InheritableThreadLocal<>();
+
+	private final String command;
+
+	private final Trace parent;
+
+	private final long startNanos = System.nanoTime();
+
+	private final long startMillis = System.currentTimeMillis();
+
+	private final List<String> events = new ArrayList<>();
+
+	private final Map<Long, String> threadNames = new LinkedHashMap<>();
+
+	private File directory;
+
+	private String appId;
+
+	private Trace(String command, Trace parent) {
+		this.command = command;
+		this.parent = parent;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/** Turn tracing on or off for the commands that begin after this, overriding IDC_TRACE */
+	public static void setEnabled(boolean isEnabled) {
+		enabled = isEnabled;
+	}
+
+	/** Start the trace of a command on the current thread, or return null if tracing is off */
+	public static Trace begin(String command) {
+		if (!enabled) {
+			return null;
+		}
+		Trace trace = new Trace(command, current.get());
+		current.set(trace);
+		return trace;
+	}
+
+	/**
+	 * Open a span of the current command's trace, for a phase that doesn't fit in call() or run(). While tracing is
+	 * off this returns a shared span that does nothing.
+	 */
+	public static Span span(String name) {
+		if (!enabled) {
+			return NO_SPAN;
+		}
+		Trace trace = current.get();
+		return trace != null ? new Span(trace, name) : NO_SPAN;
+	}
+
+	/** Run the task as a span of the current command's trace, and return its result */
+	public static <T, E extends Exception> T call(String name, ISpanTask<T, E> task) throws E, InterruptedException {
+		Span span = span(name);
+		try {
+			return task.call();
+		} finally {
+			span.end();
+		}
+	}
+
+	/** Run the task as a span of the current command's trace */
+	public static <E extends Exception> void run(String name, ISpanRunnable<E> task) throws E, InterruptedException {
+		Span span = span(name);
+		try {
+			task.run();
+		} finally {
+			span.end();
+		}
+	}
+
+	/** Name the trace file of the current command after the application, and write it to the given .idc directory */
+	public static void setApplication(File idcBase, String appId) {
+		Trace trace = enabled ? current.get() : null;
+		if (trace != null) {
+			trace.directory = new File(idcBase, "trace");
+			trace.appId = appId;
+		}
+	}
+
+	/**
+	 * Record the whole command as a span, write the trace file if the command ran against an application, and
+	 * restore the trace of the enclosing command (of idc batch) if there is one.
+	 */
+	public void end() {
+		record(command, startNanos, System.nanoTime());
+		current.set(parent);
+		if (directory == null) {
+			return;
+		}
+
+		String fileName = appId + "-" + command + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date(startMillis)) + ".json";
+		File file = new File(directory, fileName);
+		try {
+			Files.createDirectories(directory.toPath());
+			write(file);
+			Logger.verbose("Wrote the trace of " + command + " to " + file.getPath());
+			prune(directory);
+		} catch (IOException e) {
+			Logger.error("Unable to write the trace file " + file.getPath(), e);
+		}
+	}
+
+	private synchronized void record(String name, long startNanos, long endNanos) {
+		Thread thread = Thread.currentThread();
+		threadNames.putIfAbsent(thread.getId(), thread.getName());
+
+		// A complete ("X") event, with its start relative to the start of the command, in microseconds
+		events.add("{\"name\":" + JSONUtils.quote(name) + ",\"cat\":\"idc\",\"ph\":\"X\",\"ts\":"
+				+ (startNanos - this.startNanos) / 1000 + ",\"dur\":" + (endNanos - startNanos) / 1000
+				+ ",\"pid\":1,\"tid\":" + thread.getId() + "}");
+	}
+
+	private synchronized void write(File file) throws IOException {
+		try (Writer w = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+			w.write("{\"displayTimeUnit\":\"ms\",\"otherData\":{\"command\":" + JSONUtils.quote(command)
+					+ ",\"appId\":" + JSONUtils.quote(appId) + ",\"startTime\":" + startMillis + "},\"traceEvents\":[\n");
+			w.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":" + JSONUtils.quote("idc " + command) + "}}");
+			for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+				w.write(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey() + ",\"args\":{\"name\":"
+						+ JSONUtils.quote(thread.getValue()) + "}}");
+			}
+			for (String event : events) {
+				w.write(",\n");
+				w.write(event);
+			}
+			w.write("\n]}\n");
+		}
+	}
+
+	private static void prune(File directory) {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".json"));
+		if (files == null || files.length <= MAX_TRACE_FILES) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < files.length - MAX_TRACE_FILES; i++) {
+			if (!files[i].delete()) {
+				Logger.verbose("Unable to delete the old trace file " + files[i].getPath());
+			}
+		}
+	}
+}
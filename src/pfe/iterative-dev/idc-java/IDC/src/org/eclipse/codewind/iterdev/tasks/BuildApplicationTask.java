@@ -11,16 +11,23 @@
 
 package org.eclipse.codewind.iterdev.tasks;
 
+import java.io.IOException;
+
+import org.eclipse.codewind.iterdev.BuildLogScanner;
 import org.eclipse.codewind.iterdev.Constants;
 import org.eclipse.codewind.iterdev.DBMap;
 import org.eclipse.codewind.iterdev.FileMonitor;
 import org.eclipse.codewind.iterdev.IDCContext;
 import org.eclipse.codewind.iterdev.Logger;
 import org.eclipse.codewind.iterdev.ProcessRunner;
+import org.eclipse.codewind.iterdev.ProcessRunner.CaptureMode;
 import org.eclipse.codewind.iterdev.StatusTracker;
+import org.eclipse.codewind.iterdev.Trace;
 
 public class BuildApplicationTask {
 
+	private static final String MAVEN_BUILD_LOG = "/home/default/logs/maven.build.log";
+
 	public static boolean execute(IDCContext context, String[] args) throws Exception {
 		String logFileName = context.getLogFileName();
 		String MAVEN_SETTINGS = System.getProperty(Constants.MAVEN_SETTINGS, "");
@@ -95,10 +102,11 @@ public class BuildApplicationTask {
 				appDb.put(FileMonitor.CONFIGUPDATE_HASH, curNewConfigUpdateHash);
 			}
 			
-			ProcessRunner pr = TaskUtils.runCmd(cmdTemplate + " /home/default/artifacts/clean_build_server.sh"
-							+ " " + logFileName + " " + libertyEnvValue + " \"" + MAVEN_SETTINGS + "\"", context, true);
+			BuildLogScanner scanner = new BuildLogScanner();
+			ProcessRunner pr = runMavenBuild(cmdTemplate + " /home/default/artifacts/clean_build_server.sh"
+					+ " " + logFileName + " " + libertyEnvValue + " \"" + MAVEN_SETTINGS + "\"", context, scanner);
 			errorCode = pr.getErrorCode().orElseThrow(() -> new IllegalStateException("Build process did not complete."));
-			result = (errorCode == 0 && (!isBuildFailed(cmdTemplate,logFileName, context)));
+			result = (errorCode == 0 && (!isBuildFailed(scanner, cmdTemplate, context)));
 			if (result) {
 				Logger.info("Clean build completed for project " + context.getAppName());
 				return true;
@@ -123,10 +131,11 @@ public class BuildApplicationTask {
 				curRunCmd = curRunCmd + " " + Constants.BUILD_OPTION_CONFIG;
 				appDb.put(FileMonitor.CONFIGUPDATE_HASH, curNewConfigUpdateHash);
 				
-				ProcessRunner pr = TaskUtils.runCmd(cmdTemplate + " /home/default/artifacts/build_and_update_features.sh"
-								+ " " + logFileName + " " + libertyEnvValue + " \"" + MAVEN_SETTINGS + "\"", context, true);
+				BuildLogScanner scanner = new BuildLogScanner();
+				ProcessRunner pr = runMavenBuild(cmdTemplate + " /home/default/artifacts/build_and_update_features.sh"
+						+ " " + logFileName + " " + libertyEnvValue + " \"" + MAVEN_SETTINGS + "\"", context, scanner);
 				errorCode = pr.getErrorCode().orElseThrow(() -> new IllegalStateException("Build process did not complete."));
-				result = (errorCode == 0 && (!isBuildFailed(cmdTemplate,logFileName, context)));
+				result = (errorCode == 0 && (!isBuildFailed(scanner, cmdTemplate, context)));
 				if (result) {
 					statusMsg = "Application build for server config change completed for project " + context.getAppName(); // :NLS
 					Logger.info("Application build for server config change completed for project " + context.getAppName());
@@ -145,13 +154,14 @@ public class BuildApplicationTask {
 		statusMsg = "buildApplicationTask.compileApplication";
 		Logger.info("Compiling application for project " + context.getAppName());
 		StatusTracker.updateProjectState(context, "build", "inProgress", statusMsg, null);
-		ProcessRunner pr = TaskUtils.runCmd(curRunCmd, context, true);
+		BuildLogScanner scanner = new BuildLogScanner();
+		ProcessRunner pr = runMavenBuild(curRunCmd, context, scanner);
 		
 		Logger.info("Triggering log file event for: maven build log");
 		StatusTracker.newLogFileAvailable(context, "build");
 
 		errorCode = pr.getErrorCode().orElseThrow(() -> new IllegalStateException("Build process did not complete."));
-		result = (errorCode == 0 && (!isBuildFailed(cmdTemplate,logFileName, context)));
+		result = (errorCode == 0 && (!isBuildFailed(scanner, cmdTemplate, context)));
 		if (result) {
 			Logger.info("Application build completed for project " + context.getAppName());
 			return true;
@@ -182,20 +192,26 @@ public class BuildApplicationTask {
 		return false;
 	}
 
-	private static boolean isBuildFailed(String cmdTemplate, String logFileName, IDCContext context) throws Exception {
-		String logFilePath = "/home/default/logs/" + "maven.build.log";
-		String curRunCmd;
-		if (context.isK8s())
-			curRunCmd = "kubectl exec " + context.getKubePodId() + " cat "+ logFilePath;
-		else
-			curRunCmd = cmdTemplate + " cat "+ logFilePath;
-		ProcessRunner pr = TaskUtils.runCmd(curRunCmd, context, true);
-		String buildOutput = pr.getReceived();
-
-		// If build log does not exist
-		if(buildOutput.contains("No such file or directory"))
-			Logger.info("Build log " + logFilePath + " does not exist for project " + context.getAppName());
-
-		return !buildOutput.contains("BUILD SUCCESS");
+	/** Run a build script, with the scanner reading its Maven output as it runs */
+	private static ProcessRunner runMavenBuild(String cmd, IDCContext context, BuildLogScanner scanner) throws IOException, InterruptedException {
+		return Trace.call("mavenBuild", () -> TaskUtils.runCmd(cmd, context, true, CaptureMode.lastLines, scanner));
+	}
+
+	/**
+	 * Whether the build failed, according to the Maven output the build wrote to its stdout, or else to maven.build.log.
+	 * The build scripts are added to the image when it is built, so an image built before the scripts wrote the Maven
+	 * output to stdout still only writes the build log.
+	 */
+	private static boolean isBuildFailed(BuildLogScanner scanner, String cmdTemplate, IDCContext context) throws IOException, InterruptedException {
+		if (scanner.getVerdict() == BuildLogScanner.Verdict.pending) {
+			Logger.info("No Maven build result was found in the build output for project " + context.getAppName()
+					+ ", reading " + MAVEN_BUILD_LOG);
+			scanner = new BuildLogScanner();
+			TaskUtils.runCmd(cmdTemplate + " cat " + MAVEN_BUILD_LOG, context, false, CaptureMode.none, scanner);
+			if (scanner.getVerdict() == BuildLogScanner.Verdict.pending) {
+				Logger.info("No Maven build result was found in " + MAVEN_BUILD_LOG + " for project " + context.getAppName());
+			}
+		}
+		return scanner.getVerdict() != BuildLogScanner.Verdict.success;
 	}
 }
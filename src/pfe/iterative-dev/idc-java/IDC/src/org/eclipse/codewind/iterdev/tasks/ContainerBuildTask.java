@@ -13,14 +13,17 @@ package org.eclipse.codewind.iterdev.tasks;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
+import org.eclipse.codewind.iterdev.BuildContextTar;
 import org.eclipse.codewind.iterdev.Constants;
 import org.eclipse.codewind.iterdev.DockerUtils;
+import org.eclipse.codewind.iterdev.FileCopier;
 import org.eclipse.codewind.iterdev.IDCContext;
-import org.eclipse.codewind.iterdev.IDCUtils;
 import org.eclipse.codewind.iterdev.Logger;
 import org.eclipse.codewind.iterdev.ProcessRunner;
 import org.eclipse.codewind.iterdev.StatusTracker;
+import org.eclipse.codewind.iterdev.Trace;
 
 public class ContainerBuildTask {
 
@@ -28,7 +31,7 @@ public class ContainerBuildTask {
         String statusMsg = "containerBuildTask.containerBuild";
         Logger.info("Building container image");
         StatusTracker.updateProjectState(context, "build", "inProgress", statusMsg, null);
-        boolean result = DockerUtils.generateDockerfile(context.getAppDockerBase(), context);
+        boolean result = Trace.call("generateDockerfile", () -> DockerUtils.generateDockerfile(context.getAppDockerBase(), context));
         if(!result) {
             statusMsg = "containerBuildTask.containerBuildFailDockerfileGenerate";
             Logger.error("Container image failed to build: failed on generating Dockerfile");
@@ -36,7 +39,10 @@ public class ContainerBuildTask {
             return false;
         }
 
-       result = DockerUtils.handleDockerImageBuildSetup(context.getAppDirectory(), context.getAppDockerBase());	
+        // A streamed build context is read from the app directory, so the app's files don't need copying
+        boolean streamContext = context.isBuildContextStreamed();
+        result = Trace.call("dockerfileSetup",
+                () -> DockerUtils.handleDockerImageBuildSetup(context.getAppDirectory(), context.getAppDockerBase(), !streamContext));
         	
         if (!result) {	
             statusMsg = "containerBuildTask.containerBuildFailDockerfileSetup";	
@@ -45,7 +51,7 @@ public class ContainerBuildTask {
             return false;	
         }
 
-		boolean isContainerImagePresent = DockerUtils.checkForContainerImage(context);
+        boolean isContainerImagePresent = Trace.call("checkImage", () -> DockerUtils.checkForContainerImage(context));
 
         if (isContainerImagePresent) {
             statusMsg = "containerBuildTask.containerBuildFailImageExist";
@@ -62,7 +68,8 @@ public class ContainerBuildTask {
             context.getAppDockerBase().getAbsolutePath() + " " + 
             logFileName + " " +
             "\"" + context.getAppName() + "-" + context.getprojectID() + "\" " +
-            context.getprojectID();
+            context.getprojectID() +
+            (streamContext ? " -" : "");
         Logger.info("*** Build Command " + buildCmd);
         
         // Copy artifacts that are needed by the application image into the same location as the Dockerfile
@@ -74,13 +81,21 @@ public class ContainerBuildTask {
             StatusTracker.updateProjectState(context, "build", "failed", statusMsg, null);
             return false;
         }
-        IDCUtils.copyDir(artifactsDir.getAbsolutePath(),
-                context.getAppDockerBase().getPath() + Constants.SLASH + artifactsDir.getName());
+        if (!streamContext) {
+            FileCopier.Mode stagingMode = context.getArtifactsStagingMode();
+            FileCopier.Result staged = Trace.call("stageArtifacts", () -> FileCopier.copyDirectory(artifactsDir.toPath(),
+                    new File(context.getAppDockerBase(), artifactsDir.getName()).toPath(), stagingMode));
+            if (stagingMode == FileCopier.Mode.link) {
+                Logger.info("Linked " + staged.getFilesLinked() + " artifacts into the build context, saving " + staged.getBytesLinked()
+                        + " bytes; copied " + (staged.getFilesCopied() + staged.getFilesSkipped()) + " artifacts");
+            }
+        }
 
         Logger.info("Build app image using cmd: " + buildCmd);
 
         // "iterative-dev" here is the container image name, not the container name
-        ProcessRunner pr = TaskUtils.runCmd(buildCmd, context, true);
+        ProcessRunner pr = Trace.call("dockerBuild", () -> streamContext ? runBuildWithStreamedContext(buildCmd, context)
+                : TaskUtils.runCmd(buildCmd, context, true));
 
         int errorCode = pr.getErrorCode()
                 .orElseThrow(() -> new IllegalStateException("Build process did not complete."));
@@ -103,4 +118,24 @@ public class ContainerBuildTask {
         return result;
     }
 
+    /** Run the build command, writing the build context tar to its stdin */
+    private static ProcessRunner runBuildWithStreamedContext(String buildCmd, IDCContext context) throws IOException, InterruptedException {
+        ProcessRunner pr = TaskUtils.createRunnerForCmd(buildCmd, context, true);
+        CompletableFuture<Integer> completion = pr.start();
+        try {
+            BuildContextTar.write(context.getAppDirectory().toPath(), context.getAppDockerBase().toPath(),
+                    context.getArtifactsDirectory().toPath(), pr.getOutput());
+        } catch (IOException e) {
+            // If the build stops reading the context, its output says why
+            Logger.error("Unable to stream the build context to the container build", e);
+            try {
+                pr.getOutput().close();
+            } catch (IOException e2) {
+                // ignore
+            }
+        }
+        ProcessRunner.waitFor(completion);
+        return pr;
+    }
+
 }
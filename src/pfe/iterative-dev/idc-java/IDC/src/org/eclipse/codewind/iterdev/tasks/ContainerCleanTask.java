@@ -14,216 +14,305 @@ package org.eclipse.codewind.iterdev.tasks;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.codewind.iterdev.Constants;
 import org.eclipse.codewind.iterdev.DBMap;
+import org.eclipse.codewind.iterdev.DockerUtils;
 import org.eclipse.codewind.iterdev.IDCContext;
 import org.eclipse.codewind.iterdev.IDCUtils;
+import org.eclipse.codewind.iterdev.KubeUtils;
 import org.eclipse.codewind.iterdev.Logger;
 import org.eclipse.codewind.iterdev.ProcessRunner;
 
+/**
+ * Cleans up after applications whose directory, .idc directory, container or deployment was removed without IDC.
+ *
+ * Each database is loaded once, the running containers (or deployments) are looked up in a set, and the removals,
+ * which each run docker, helm or kubectl commands, are run concurrently. The questions asking whether to remove
+ * each application are asked first, one at a time, unless the answers are assumed to be yes; the confirmed removals
+ * only start after the last question, so that their output does not mix with the questions.
+ */
 public class ContainerCleanTask {
 
 	public static boolean execute(IDCContext context) throws Exception {
+		return execute(context, false, Constants.DEFAULT_CLEANUP_PARALLELISM);
+	}
+
+	/**
+	 * @param assumeYes Answer yes to each question instead of asking, so that the cleanup can run without a terminal
+	 * @param parallelism The number of removals to run at once
+	 */
+	public static boolean execute(IDCContext context, boolean assumeYes, int parallelism) throws Exception {
 		//boolean isK8s = System.getenv(Constants.IN_K8).equals("true");
 		
 		Logger.info("* Cleaning up containers... ");
 		
-		if (context.isK8s()) {
-			if (!context.getIDCBase().exists()) {
-				ProcessRunner pr = TaskUtils.runCmd("helm list -q", context, false);
-				for (String str : pr.getReceived().split("\\r?\\n")) {
-					Logger.info("----");
-					Logger.info("Helm Release Name: " + str);
-					Logger.info("----");
-					if (str != null) {
-						if (str.contains("idc") && IDCUtils.getUserResponse(Constants.missingIDCDirPromptQues).equalsIgnoreCase("yes")) {
-							Logger.info("* Deleting the helm release");
-							TaskUtils.runCmd("helm delete " + str + " --purge", context, false);
+		Removals removals = new Removals(parallelism);
+		try {
+			if (context.isK8s()) {
+				if (!context.getIDCBase().exists()) {
+					ProcessRunner pr = TaskUtils.runCmd("helm list -q", context, false);
+					for (String str : pr.receivedLines()) {
+						Logger.info("----");
+						Logger.info("Helm Release Name: " + str);
+						Logger.info("----");
+						if (str != null) {
+							if (str.contains("idc") && confirm(Constants.missingIDCDirPromptQues, assumeYes)) {
+								removals.add("helm release " + str, () -> {
+									Logger.info("* Deleting the helm release " + str);
+									TaskUtils.runCmd("helm delete " + str + " --purge", context, false);
+								});
+							}
 						}
 					}
 				}
-				Thread.sleep(1000);
+				else {
+					Map<String, DBMap> appDbs = loadAppDbs(context.getIDCBase());
+
+					/*
+					 * If the user modifies/deletes the app dir then we need to handle the associated idc 
+					 * container. Print the modified/deleted dir container id and prompt the user before 
+					 * removing the container.
+					 */
+					for (Iterator<DBMap> it = appDbs.values().iterator(); it.hasNext();) {
+						DBMap appDB = it.next();
+
+						String fileName = appDB.get(Constants.DB_APP_DIR);
+						Logger.info("checking if filename is present: " + fileName);
+						File appDir = new File(fileName);
+						if (!appDir.exists()) {
+							String releaseID = appDB.get(Constants.DB_HELM_RELEASE);
+							Logger.info("----");
+							Logger.info("Missing Application Directory: " + fileName);
+							Logger.info("Helm Release: " + releaseID);
+							Logger.info("----");
+							if (confirm(Constants.modifiedAppDirPromptQues, assumeYes)) {
+								// The removal deletes the database, so it is not checked again below
+								it.remove();
+								removals.add("helm release " + releaseID, () -> {
+									Logger.info("* Deleting the Helm release " + releaseID);
+
+									TaskUtils.runCmd("helm delete " + releaseID + " --purge", context, false);
+									DockerUtils.removeImage(context, appDB.get(Constants.DB_CONTAINER_NAME), true);
+
+									// Delete .idc db and docker dir contents
+									deleteCorrespondingIDCContents(context.getIDCBase(), appDB.get(Constants.DB_APP_ID));
+								});
+							}
+						}
+					}
+					
+					/*
+					 * If the user explicitly deletes a container using the docker command, we 
+					 * need to clean up the corresponding .idc db and docker dir contents
+					 */
+
+					Logger.info("Checking if any deployments have been explicitly removed without IDC.");
+					Logger.info("If yes, the corresponding .idc db and docker contents will be deleted.");
+					Set<String> runningDeployments = new HashSet<String>(KubeUtils.listDeploymentNames(context, null));
+
+					removeStaleContents(context, appDbs.values(), runningDeployments, "deployment", removals);
+				}
+				removals.runAll();
+				Logger.info("Finished cleaning up helm releases");
+				return removals.succeeded();
 			}
 			else {
-				/*
-				 * If the user modifies/deletes the app dir then we need to handle the associated idc 
-				 * container. Print the modified/deleted dir container id and prompt the user before 
-				 * removing the container.
-				 */
-				String dbDirPath = context.getIDCBase().toString() + Constants.SLASH + "db";
-				File dbDir = new File(dbDirPath);
-				File dbFiles[] = dbDir.listFiles();
-
-				for (int i = 0; i < dbFiles.length; i++) {
-					DBMap appDB = new DBMap(dbFiles[i].getName().substring(DBMap.DBPREFIX.length()), context.getIDCBase());
-
-					String fileName = appDB.get(Constants.DB_APP_DIR);
-					if(fileName == null)
-						continue;
-					Logger.info("checking if filename is present: " + fileName);
-					File appDir = new File(fileName);
-					if (!appDir.exists()) {
-						String releaseID = appDB.get(Constants.DB_HELM_RELEASE);
+				if (!context.getIDCBase().exists()) {
+					/*If the user deletes the .idc dir,
+					then we need to handle the associated idc 
+					containers. Print the container image name 
+					and prompt the user before removing the 
+					container.*/
+					List<String> images = DockerUtils.listRunningContainerImages(context);
+
+					for (String str : images) {
 						Logger.info("----");
-						Logger.info("Missing Application Directory: " + fileName);
-						Logger.info("Helm Release: " + releaseID);
+						Logger.info("Container Image Name: " + str);
 						Logger.info("----");
-						if (IDCUtils.getUserResponse(Constants.modifiedAppDirPromptQues).equalsIgnoreCase("yes")) {
-							Logger.info("* Deleting the Helm release. ");
+						if (str != null) {
 
-							TaskUtils.runCmd("helm delete " + releaseID + " --purge", context, false);
-							TaskUtils.runCmd("docker image rm " + appDB.get(Constants.DB_CONTAINER_NAME) + " -f", context, false);
+							if (str.contains("-idc-") && confirm(Constants.missingIDCDirPromptQues, assumeYes)) {
+								removals.add("container " + str, () -> {
+									Logger.info("* Stopping and Removing the Container " + str);
 
-							// Delete .idc db and docker dir contents
-							deleteCorrespondingIDCContents(context.getIDCBase(), appDB.get(Constants.DB_APP_ID));
+									DockerUtils.stopContainer(context, str);
+									DockerUtils.removeContainer(context, str, false);
+									DockerUtils.removeImage(context, str, false);
+								});
+							}
 						}
 					}
-				}
-				
-				/*
-				 * If the user explicitly deletes a container using the docker command, we 
-				 * need to clean up the corresponding .idc db and docker dir contents
-				 */
-
-				ArrayList<String> runningDeployments = new ArrayList<String>();
-				Logger.info("Checking if any deployments have been explicitly removed without IDC.");
-				Logger.info("If yes, the corresponding .idc db and docker contents will be deleted.");
-				ProcessRunner pr = TaskUtils.runCmd("kubectl get deployments --no-headers=true -o=custom-columns=NAME:.metadata.name", context, false);
-
-				Thread.sleep(1000);
-				for (String str : pr.getReceived().split("\\r?\\n")) {
-					if (str != null) {
-						runningDeployments.add(str);
-					}
-				}
-
-				nextdbfile : for (int i = 0; i < dbFiles.length; i++) {
-					DBMap appDB = new DBMap(dbFiles[i].getName().substring(DBMap.DBPREFIX.length()), context.getIDCBase());
-					String deploymentID = appDB.get(Constants.DB_LAST_CONTAINER_ID);
-					if(deploymentID == null)
-						continue nextdbfile;
-					Logger.info("Checking for deployment " + deploymentID);
-					for (int j = 0; j < runningDeployments.size(); j++) {
-						if (deploymentID.equals(runningDeployments.get(j))) {
-							// Found a running container for this db file so no need to clean up
-							continue nextdbfile;
+				} else {
+					Map<String, DBMap> appDbs = loadAppDbs(context.getIDCBase());
+
+					/*
+					 * If the user modifies/deletes the app dir then we need to handle the associated idc 
+					 * container. Print the modified/deleted dir container id and prompt the user before 
+					 * removing the container.
+					 */
+					for (Iterator<DBMap> it = appDbs.values().iterator(); it.hasNext();) {
+						DBMap appDB = it.next();
+
+						String fileName = appDB.get(Constants.DB_APP_DIR);
+						Logger.info("checking if filename is present: " + fileName);
+						File appDir = new File(fileName);
+						if (!appDir.exists()) {
+							String containerID = appDB.get(Constants.DB_LAST_CONTAINER_ID);
+							Logger.info("----");
+							Logger.info("Missing Application Directory: " + fileName);
+							Logger.info("Container ID: " + containerID);
+							Logger.info("----");
+							if (confirm(Constants.modifiedAppDirPromptQues, assumeYes)) {
+								// The removal deletes the database, so it is not checked again below
+								it.remove();
+								removals.add("container " + containerID, () -> {
+									Logger.info("* Stopping and Removing the Container " + containerID);
+
+									DockerUtils.removeContainer(context, containerID, true);
+									DockerUtils.removeImage(context, appDB.get(Constants.DB_CONTAINER_NAME), false);
+
+									// Delete .idc db and docker dir contents
+									deleteCorrespondingIDCContents(context.getIDCBase(), appDB.get(Constants.DB_APP_ID));
+								});
+							}
 						}
 					}
 
-					// Delete .idc db and docker dir contents
-					Logger.info("Deleting db contents with app id: " + appDB.get(Constants.DB_APP_ID));
-					deleteCorrespondingIDCContents(context.getIDCBase(), appDB.get(Constants.DB_APP_ID));
+					/*
+					 * If the user explicitly deletes a container using the docker command, we 
+					 * need to clean up the corresponding .idc db and docker dir contents
+					 */
+
+					Logger.info("Checking if any containers have been explicitly removed without IDC.");
+					Logger.info("If yes, the corresponding .idc db and docker contents will be deleted.");
+					Set<String> runningContainers = new HashSet<String>(DockerUtils.listRunningContainerIds(context));
+
+					removeStaleContents(context, appDbs.values(), runningContainers, "container", removals);
 				}
-				
-				
+				removals.runAll();
+				Logger.info("* Finished cleaning up containers.");
+				return removals.succeeded();
+			}
+		} finally {
+			removals.shutdown();
+		}
+		
+	}
+
+	/** Load the database of each application that has an app directory recorded, keyed by db id */
+	private static Map<String, DBMap> loadAppDbs(File idcBase) throws IOException {
+		Map<String, DBMap> appDbs = new LinkedHashMap<String, DBMap>();
+		for (String dbId : DBMap.listIds(idcBase)) {
+			DBMap appDB = DBMap.open(dbId, idcBase);
+			if (appDB.get(Constants.DB_APP_DIR) != null) {
+				appDbs.put(dbId, appDB);
+			}
+		}
+		return appDbs;
+	}
+
+	/** Delete the .idc contents of the applications whose container (or deployment) is no longer running */
+	private static void removeStaleContents(IDCContext context, Collection<DBMap> appDbs, Set<String> running,
+			String type, Removals removals) {
+		for (DBMap appDB : appDbs) {
+			String containerID = appDB.get(Constants.DB_LAST_CONTAINER_ID);
+			if (containerID == null)
+				continue;
+			Logger.info("Checking for " + type + " " + containerID);
+			if (running.contains(containerID)) {
+				// Found a running container for this db file so no need to clean up
+				continue;
 			}
-			Logger.info("Finished cleaning up helm releases");
+
+			// Delete .idc db and docker dir contents
+			String appId = appDB.get(Constants.DB_APP_ID);
+			removals.add("db contents of " + appId, () -> {
+				Logger.info("Deleting db contents with app id: " + appId);
+				deleteCorrespondingIDCContents(context.getIDCBase(), appId);
+			});
+		}
+	}
+
+	private static boolean confirm(String promptQuestion, boolean assumeYes) throws IOException {
+		if (assumeYes) {
+			Logger.info("[IDC] " + promptQuestion + "yes");
 			return true;
 		}
-		else {
-			if (!context.getIDCBase().exists()) {
-				/*If the user deletes the .idc dir,
-				then we need to handle the associated idc 
-				containers. Print the container image name 
-				and prompt the user before removing the 
-				container.*/
-				ProcessRunner pr = TaskUtils.runCmd("docker ps --format \"{{.Image}}\"", context, false);
-
-				Thread.sleep(1000);
-				for (String str : pr.getReceived().split("\\r?\\n")) {
-					Logger.info("----");
-					Logger.info("Container Image Name: " + str);
-					Logger.info("----");
-					if (str != null) {
-
-						if (str.contains("-idc-")
-								&& IDCUtils.getUserResponse(Constants.missingIDCDirPromptQues).equalsIgnoreCase("yes")) {
-							Logger.info("* Stopping and Removing the Container. ");
-
-							TaskUtils.runCmd("docker stop " + str, context, false);
-							TaskUtils.runCmd("docker rm " + str, context, false);
-							TaskUtils.runCmd("docker image rm " + str, context, false);
-						}
-					}
-				}
-			} else {
-				/*
-				 * If the user modifies/deletes the app dir then we need to handle the associated idc 
-				 * container. Print the modified/deleted dir container id and prompt the user before 
-				 * removing the container.
-				 */
-				String dbDirPath = context.getIDCBase().toString() + Constants.SLASH + "db";
-				File dbDir = new File(dbDirPath);
-				File dbFiles[] = dbDir.listFiles();
-
-				for (int i = 0; i < dbFiles.length; i++) {
-					DBMap appDB = new DBMap(dbFiles[i].getName().substring(DBMap.DBPREFIX.length()), context.getIDCBase());
-
-					String fileName = appDB.get(Constants.DB_APP_DIR);
-					if(fileName == null)
-						continue;
-					Logger.info("checking if filename is present: " + fileName);
-					File appDir = new File(fileName);
-					if (!appDir.exists()) {
-						String containerID = appDB.get(Constants.DB_LAST_CONTAINER_ID);
-						Logger.info("----");
-						Logger.info("Missing Application Directory: " + fileName);
-						Logger.info("Container ID: " + containerID);
-						Logger.info("----");
-						if (IDCUtils.getUserResponse(Constants.modifiedAppDirPromptQues).equalsIgnoreCase("yes")) {
-							Logger.info("* Stopping and Removing the Container. ");
+		return IDCUtils.getUserResponse(promptQuestion).equalsIgnoreCase("yes");
+	}
 
-							TaskUtils.runCmd("docker rm -f " + containerID, context, false);
-							TaskUtils.runCmd("docker image rm " + appDB.get(Constants.DB_CONTAINER_NAME), context,
-									false);
+	private static interface IRemoval {
+		void run() throws Exception;
+	}
 
-							// Delete .idc db and docker dir contents
-							deleteCorrespondingIDCContents(context.getIDCBase(), appDB.get(Constants.DB_APP_ID));
-						}
-					}
-				}
+	/** Collects removals, then runs them on a bounded pool of threads, and records whether any of them failed */
+	private static class Removals {
 
-				/*
-				 * If the user explicitly deletes a container using the docker command, we 
-				 * need to clean up the corresponding .idc db and docker dir contents
-				 */
+		private final ExecutorService pool;
 
-				ArrayList<String> runningContainers = new ArrayList<String>();
-				Logger.info("Checking if any containers have been explicitly removed without IDC.");
-				Logger.info("If yes, the corresponding .idc db and docker contents will be deleted.");
-				ProcessRunner pr = TaskUtils.runCmd("docker ps --no-trunc -q", context, false);
+		private final List<IRemoval> removals = new ArrayList<IRemoval>();
 
-				Thread.sleep(1000);
-				for (String str : pr.getReceived().split("\\r?\\n")) {
-					if (str != null) {
-						runningContainers.add(str);
-					}
-				}
+		private final List<String> descriptions = new ArrayList<String>();
 
-				nextdbfile : for (int i = 0; i < dbFiles.length; i++) {
-					DBMap appDB = new DBMap(dbFiles[i].getName().substring(DBMap.DBPREFIX.length()), context.getIDCBase());
-					String containerID = appDB.get(Constants.DB_LAST_CONTAINER_ID);
-					if(containerID == null)
-						continue nextdbfile;
-					Logger.info("Checking for container " + containerID);
-					for (int j = 0; j < runningContainers.size(); j++) {
-						if (containerID.equals(runningContainers.get(j))) {
-							// Found a running container for this db file so no need to clean up
-							continue nextdbfile;
-						}
-					}
+		private boolean failed = false;
 
-					// Delete .idc db and docker dir contents
-					Logger.info("Deleting db contents with app id: " + appDB.get(Constants.DB_APP_ID));
-					deleteCorrespondingIDCContents(context.getIDCBase(), appDB.get(Constants.DB_APP_ID));
-				}
+		Removals(int parallelism) {
+			pool = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+				Thread t = new Thread(r, "IDC cleanup");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+
+		void add(String description, IRemoval removal) {
+			descriptions.add(description);
+			removals.add(removal);
+		}
 
+		/** Run the removals that were added, and wait for them to finish */
+		void runAll() throws InterruptedException {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (IRemoval removal : removals) {
+				futures.add(pool.submit(() -> {
+					removal.run();
+					return null;
+				}));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).get();
+				} catch (ExecutionException e) {
+					failed = true;
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception) {
+						Logger.error("Unable to clean up the " + descriptions.get(i), (Exception) cause);
+					} else {
+						Logger.error("Unable to clean up the " + descriptions.get(i) + ": " + cause);
+					}
+				}
 			}
-			Logger.info("* Finished cleaning up containers.");
-			return true;
 		}
-		
+
+		boolean succeeded() {
+			return !failed;
+		}
+
+		void shutdown() {
+			pool.shutdownNow();
+		}
 	}
 
 	private static void deleteCorrespondingIDCContents(File IDC_BASE, String appid) throws IOException {
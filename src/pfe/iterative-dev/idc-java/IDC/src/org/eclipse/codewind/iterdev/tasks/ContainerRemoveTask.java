@@ -13,11 +13,14 @@ package org.eclipse.codewind.iterdev.tasks;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.codewind.iterdev.Constants;
 import org.eclipse.codewind.iterdev.DBMap;
+import org.eclipse.codewind.iterdev.DockerUtils;
 import org.eclipse.codewind.iterdev.IDCContext;
 import org.eclipse.codewind.iterdev.IDCUtils;
+import org.eclipse.codewind.iterdev.KubeUtils;
 import org.eclipse.codewind.iterdev.Logger;
 import org.eclipse.codewind.iterdev.ProcessRunner;
 
@@ -40,81 +43,84 @@ public class ContainerRemoveTask {
 		Use the container name to remove the container instead of relying on the id because if there was a problem with running the container then
 		IDC may not have the id but the container still exists.
 		*/
+		/*
+		The removal steps run as a graph: each step starts once the steps it depends on have succeeded, so the
+		image removals run at the same time, and a failed step doesn't stop the steps that don't depend on it.
+		*/
+		TaskGraph removal = new TaskGraph("Application removal");
+
 		if (context.isK8s()) {
 			String releaseName = context.getAppDb().get(Constants.DB_HELM_RELEASE);
 			if (releaseName != null) {
 				Logger.info("* Stopping and removing application: " + releaseName);
 				
+				TaskGraph.Step helmDelete = null;
 				if(releaseName != null && !releaseName.isEmpty()) {
 					// Delete the helm release, then the docker image
-					ProcessRunner pr = TaskUtils.runCmd("helm delete " + releaseName + " --purge", context, false);
-					if(pr.getErrorCode().orElse(0) != 0) {
-						Logger.error("Error code: " + pr.getErrorCode() + ", Failed to remove the the Helm release " + releaseName);
-						return false;
-					} else {
+					helmDelete = removal.add("helm delete", () -> {
+						ProcessRunner pr = TaskUtils.runCmd("helm delete " + releaseName + " --purge", context, false);
+						if(pr.getErrorCode().orElse(0) != 0) {
+							Logger.error("Error code: " + pr.getErrorCode() + ", Failed to remove the the Helm release " + releaseName);
+							return false;
+						}
 						Logger.info("Successfully removed the Helm release " + releaseName);
-					}
+						return true;
+					});
 				}
 
-				Logger.info("Awaiting resource deleting confirmation for release " + releaseName);
-				int MAX_ATTEMPT = 36; //Set timeout: 36*5 = 3mins
-				int numTries = 0;
-				boolean terminated = false;
-				while (numTries < MAX_ATTEMPT) {
-					ProcessRunner pr = TaskUtils.runCmd("kubectl get pods  -l  \"release=" + releaseName + "\"", context, false);
-					if(pr.getErrorCode().orElse(0) != 0) {
-						Logger.error("Error getting K8 pod with release name " + releaseName + ". Error code: " + pr.getErrorCode());
+				// The images can't be removed while the pods using them are still running
+				TaskGraph.Step podTermination = removal.add("pod termination", () -> {
+					Logger.info("Awaiting resource deleting confirmation for release " + releaseName);
+					long waited;
+					try {
+						waited = KubeUtils.awaitPodsTerminated(context, releaseName, TimeUnit.MINUTES.toMillis(3));
+					} catch (IOException e) {
+						Logger.error(e.getMessage());
 						return false;
 					}
-					if (pr.getReceived().contains(releaseName)){
-						//K8 pod for this release is still running.
-						Thread.sleep(5000);
-						numTries++;
-					} else {
-						Logger.info("K8 pod for release " + releaseName + "has been terminated");
-						terminated = true;
-						break;
+					if (waited < 0) {
+						Logger.error("Timeout: K8 pod for release " + releaseName + " cannot be terminated within 3 minutes.");
+						return false;
 					}
-
-				}
-				if (!terminated) {
-					Logger.error("Timeout: K8 pod for release " + releaseName + "cannot be terminated within 3 minutes.");
-					return false;
-				}
+					Logger.info("K8 pod for release " + releaseName + " has been terminated, after waiting " + waited + "ms");
+					return true;
+				}, helmDelete == null ? new TaskGraph.Step[0] : new TaskGraph.Step[] { helmDelete });
 				
 				String imageName = appDB.get(Constants.DB_CONTAINER_NAME);
 				if (imageName != null) {
-					ProcessRunner pr = TaskUtils.runCmd("docker rmi " + imageName + " -f", context,
-							false);
-					if(pr.getErrorCode().orElse(0) != 0) {
-						Logger.error("Error code: " + pr.getErrorCode() + ", Failed to remove the image " + imageName);
-						return false;
-					} else {
+					removal.add("image removal", () -> {
+						if(!DockerUtils.removeImage(context, imageName, true)) {
+							Logger.error("Failed to remove the image " + imageName);
+							return false;
+						}
 						Logger.info("Successfully removed the application image " + imageName);
-					}
+						return true;
+					}, podTermination);
 
 					String dockerRegistry = appDB.get(Constants.DB_DOCKER_REGISTRY);
 					if (dockerRegistry != null) {
-						pr = TaskUtils.runCmd("docker rmi -f " + dockerRegistry + "/" + imageName, context,
-								false);
-						if(pr.getErrorCode().orElse(0) != 0) {
-							Logger.error("Error code: " + pr.getErrorCode() + ", Failed to remove the image " + imageName +
-							" from docker registry " + dockerRegistry);
-							return false;
-						} else {
+						removal.add("registry image removal", () -> {
+							if(!DockerUtils.removeImage(context, dockerRegistry + "/" + imageName, true)) {
+								Logger.error("Failed to remove the image " + imageName +
+								" from docker registry " + dockerRegistry);
+								return false;
+							}
 							Logger.info("Successfully removed the application image " + imageName + " from docker registry " + dockerRegistry);
-						}
+							return true;
+						}, podTermination);
 					}
 
 					// Delete the image from Kube
-					pr = TaskUtils.runCmd("kubectl delete image " + imageName + " --force --grace-period=0", context,
-							false);
-					if(pr.getErrorCode().orElse(0) != 0) {
-						Logger.error("Error code: " + pr.getErrorCode() + ", Failed to remove the image from Kubernetes " + imageName);
-						return false;
-					} else {
+					removal.add("kubectl delete image", () -> {
+						ProcessRunner pr = TaskUtils.runCmd("kubectl delete image " + imageName + " --force --grace-period=0", context,
+								false);
+						if(pr.getErrorCode().orElse(0) != 0) {
+							Logger.error("Error code: " + pr.getErrorCode() + ", Failed to remove the image from Kubernetes " + imageName);
+							return false;
+						}
 						Logger.info("Successfully removed the application image from Kubernetes " + imageName);
-					}
+						return true;
+					}, podTermination);
 				}
 			}
 		}
@@ -124,37 +130,37 @@ public class ContainerRemoveTask {
 				Logger.info("* Stopping and removing application: " + containerName);
 				
 				// Get the container id using the container name
-				ProcessRunner pr = TaskUtils.runCmd("docker ps -aq -f name=" + containerName, context, false);
-				if(pr.getErrorCode().orElse(0) != 0) {
-					Logger.error("Error code: " + pr.getErrorCode() + ", No container with the name " + containerName + " was found.");
-				}
-				String[] lines = pr.getReceived().split("\\r?\\n");
-				String containerID = lines[lines.length - 1].trim();
+				String containerID = DockerUtils.findContainerId(context, containerName);
 			
+				TaskGraph.Step containerRemoval = null;
 				if(containerID != null && !containerID.isEmpty()) {
-					pr = TaskUtils.runCmd("docker rm -f " + containerID, context, false);
-					if(pr.getErrorCode().orElse(0) != 0) {
-						Logger.error("Error code: " + pr.getErrorCode() + ", Failed to remove the container " + containerID);
-						return false;
-					} else {
+					containerRemoval = removal.add("container removal", () -> {
+						if(!DockerUtils.removeContainer(context, containerID, true)) {
+							Logger.error("Failed to remove the container " + containerID);
+							return false;
+						}
 						Logger.info("Successfully removed the application container " + containerID);
-					}
+						return true;
+					});
 				}
 				
 				String imageName = appDB.get(Constants.DB_CONTAINER_NAME);
 				if(imageName != null){
-					pr = TaskUtils.runCmd("docker image rm " + imageName, context,
-							false);
-					if(pr.getErrorCode().orElse(0) != 0) {
-						Logger.error("Error Code: " + pr.getErrorCode() + ", Failed to remove the image " + imageName);
-						return false;
-					} else {
+					removal.add("image removal", () -> {
+						if(!DockerUtils.removeImage(context, imageName, false)) {
+							Logger.error("Failed to remove the image " + imageName);
+							return false;
+						}
 						Logger.info("Successfully removed the application image " + imageName);
-					}
+						return true;
+					}, containerRemoval == null ? new TaskGraph.Step[0] : new TaskGraph.Step[] { containerRemoval });
 				}
 			}
 		}
 		
+		if (!removal.run()) {
+			return false;
+		}
 
 		Logger.info("* Successfully removed the application");
 		return true;
@@ -11,12 +11,17 @@
 
 package org.eclipse.codewind.iterdev.tasks;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.codewind.iterdev.Constants;
+import org.eclipse.codewind.iterdev.EventLog;
 import org.eclipse.codewind.iterdev.IConsoleFilter;
 import org.eclipse.codewind.iterdev.IDCContext;
 import org.eclipse.codewind.iterdev.Logger;
 import org.eclipse.codewind.iterdev.ProcessRunner;
 import org.eclipse.codewind.iterdev.ProcessRunner.ConsoleStream;
+import org.eclipse.codewind.iterdev.Trace;
 
 public class ContainerRunTask {
 
@@ -29,7 +34,7 @@ public class ContainerRunTask {
         // arg to be passed after -p to expose debug port to localhost only
         final String debugPortPublishArg = "127.0.0.1::" + context.getDebugPort();
 
-        String cmd = null;
+        String cmd;
         if (isWindows) {
             cmd = context.getArtifactsDirectory().getPath() + Constants.SLASH + "run_docker.bat "
                     + context.getContainerName() + " " + context.getImageName() + " \"-p "
@@ -50,7 +55,7 @@ public class ContainerRunTask {
                     + context.getLogDir();
         }
 
-        ProcessRunner pr = runContainer(cmd, context);
+        ProcessRunner pr = Trace.call("runContainer", () -> runContainer(cmd, context));
         int exitCode = 0;
         try {
             exitCode = pr.getErrorCode().orElseThrow(() -> new IllegalStateException("Process did not terminate."));
@@ -67,7 +72,7 @@ public class ContainerRunTask {
              */
             Logger.info("The first attempt to run the container was unsuccessful. Exit code: " + exitCode);
             Logger.info("Retrying start container stage");
-            pr = runContainer(cmd, context);
+            pr = Trace.call("retryRunContainer", () -> runContainer(cmd, context));
             exitCode = pr.getErrorCode().orElseThrow(() -> new IllegalStateException("Process did not terminate."));
         }
 
@@ -85,22 +90,26 @@ public class ContainerRunTask {
             String podID = lines[lines.length-2];
             String releaseID = lines[lines.length-1];
 
+            Map<String, String> values = new HashMap<>();
+
             // Get the port the deployment is running on
             for (String line : lines) {
                 if (line.contains("9080:")) {
-                   context.getAppDb().put(Constants.DB_KUBE_PORT, line.split(":")[1].split("/TCP")[0]);
+                   values.put(Constants.DB_KUBE_PORT, line.split(":")[1].split("/TCP")[0]);
                    break;
                 }
             }
 
             // Add the app db. (Store the deployment id in DB_LAST_CONTAINER_ID)
-            context.getAppDb().put(Constants.DB_LAST_CONTAINER_ID, deploymentID);
-            context.getAppDb().put(Constants.DB_HELM_RELEASE, releaseID);
-            context.getAppDb().put(Constants.DB_DEPLOYMENT_ID, deploymentID);
-            context.getAppDb().put(Constants.DB_POD_ID, podID);
-            context.getAppDb().put(Constants.DB_APP_ID, context.getAppId());
-            context.getAppDb().put(Constants.DB_APP_DIR, context.getAppDirectory().toString());
-            context.getAppDb().put(Constants.DB_CONTAINER_NAME, context.getContainerName());
+            values.put(Constants.DB_LAST_CONTAINER_ID, deploymentID);
+            values.put(Constants.DB_HELM_RELEASE, releaseID);
+            values.put(Constants.DB_DEPLOYMENT_ID, deploymentID);
+            values.put(Constants.DB_POD_ID, podID);
+            values.put(Constants.DB_APP_ID, context.getAppId());
+            values.put(Constants.DB_APP_DIR, context.getAppDirectory().toString());
+            values.put(Constants.DB_CONTAINER_NAME, context.getContainerName());
+            context.getAppDb().putAll(values);
+            EventLog.pod(releaseID, deploymentID, podID);
             return releaseID;
         }
         else {
@@ -110,10 +119,13 @@ public class ContainerRunTask {
 
             if (result) {
                 Logger.info("Stored application container for " + context.getAppName() + ": " + containerId);
-                context.getAppDb().put(Constants.DB_LAST_CONTAINER_ID, containerId);
-                context.getAppDb().put(Constants.DB_APP_ID, context.getAppId());
-                context.getAppDb().put(Constants.DB_APP_DIR, context.getAppDirectory().toString());
-                context.getAppDb().put(Constants.DB_CONTAINER_NAME, context.getContainerName());
+                Map<String, String> values = new HashMap<>();
+                values.put(Constants.DB_LAST_CONTAINER_ID, containerId);
+                values.put(Constants.DB_APP_ID, context.getAppId());
+                values.put(Constants.DB_APP_DIR, context.getAppDirectory().toString());
+                values.put(Constants.DB_CONTAINER_NAME, context.getContainerName());
+                context.getAppDb().putAll(values);
+                EventLog.container(containerId);
             } else {
                 Logger.error("Start container stage failed: failed to get containerID");
                 containerId = null;
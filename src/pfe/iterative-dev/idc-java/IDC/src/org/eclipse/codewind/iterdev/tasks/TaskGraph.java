@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2019 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.codewind.iterdev.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.codewind.iterdev.Logger;
+
+/**
+ * Runs a set of steps, such as the commands that remove an application, each as soon as the steps it depends on
+ * have succeeded, so that steps which don't depend on each other run at the same time.
+ *
+ * A step that fails doesn't stop the steps that don't depend on it; the steps that do depend on it are skipped.
+ * Each step is timed, and once all of the steps are done the failures are reported together.
+ */
+public class TaskGraph {
+
+	public static interface IStep {
+		/** @return Whether the step succeeded */
+		boolean run() throws Exception;
+	}
+
+	public static enum Status { succeeded, failed, skipped };
+
+	public static class Step {
+
+		private final String name;
+
+		private final IStep step;
+
+		private final Step[] dependencies;
+
+		private CompletableFuture<Status> result;
+
+		private volatile long elapsedMillis;
+
+		private volatile Exception error;
+
+		private Step(String name, IStep step, Step[] dependencies) {
+			this.name = name;
+			this.step = step;
+			this.dependencies = dependencies;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/** The status of the step, once the graph has been run */
+		public Status getStatus() {
+			return result == null ? null : result.getNow(null);
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		private Status run() {
+			long start = System.currentTimeMillis();
+			try {
+				return step.run() ? Status.succeeded : Status.failed;
+			} catch (Exception e) {
+				error = e;
+				return Status.failed;
+			} finally {
+				elapsedMillis = System.currentTimeMillis() - start;
+			}
+		}
+	}
+
+	private final String name;
+
+	private final List<Step> steps = new ArrayList<Step>();
+
+	public TaskGraph(String name) {
+		this.name = name;
+	}
+
+	/** Add a step that runs once all of the given steps, which must already have been added, have succeeded */
+	public Step add(String name, IStep step, Step... dependencies) {
+		Step result = new Step(name, step, dependencies);
+		steps.add(result);
+		return result;
+	}
+
+	/**
+	 * Run the steps, and wait for all of them to be done.
+	 * @return Whether every step succeeded
+	 */
+	public boolean run() throws InterruptedException {
+		if (steps.isEmpty()) {
+			return true;
+		}
+
+		long start = System.currentTimeMillis();
+		// A thread for each step, so a step never waits for a thread while its dependencies are done
+		ExecutorService pool = Executors.newFixedThreadPool(steps.size(), r -> {
+			Thread t = new Thread(r, "IDC " + name);
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			for (Step step : steps) {
+				CompletableFuture<?>[] dependencies = new CompletableFuture<?>[step.dependencies.length];
+				for (int i = 0; i < dependencies.length; i++) {
+					dependencies[i] = step.dependencies[i].result;
+				}
+				step.result = CompletableFuture.allOf(dependencies).thenApplyAsync(v -> {
+					for (Step dependency : step.dependencies) {
+						if (dependency.getStatus() != Status.succeeded) {
+							return Status.skipped;
+						}
+					}
+					return step.run();
+				}, pool);
+			}
+
+			List<String> failures = new ArrayList<String>();
+			for (Step step : steps) {
+				try {
+					step.result.get();
+				} catch (ExecutionException e) {
+					// Step.run() doesn't throw, so this is not expected
+					step.error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+				Status status = step.getStatus();
+				Logger.verbose(name + ": " + step.name + " " + (status != null ? status : Status.failed)
+						+ (status == Status.skipped ? "" : " after " + step.elapsedMillis + "ms"));
+				if (status != Status.succeeded) {
+					failures.add(step.name + (status == Status.skipped ? " (skipped)" : ""));
+				}
+				if (step.error != null) {
+					Logger.error(name + ": " + step.name + " failed", step.error);
+				}
+			}
+
+			Logger.verbose(name + " took " + (System.currentTimeMillis() - start) + "ms");
+			if (!failures.isEmpty()) {
+				Logger.error(name + " did not complete: " + String.join(", ", failures));
+			}
+			return failures.isEmpty();
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
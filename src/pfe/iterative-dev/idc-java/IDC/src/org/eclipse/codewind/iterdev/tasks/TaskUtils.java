@@ -12,10 +12,13 @@
 package org.eclipse.codewind.iterdev.tasks;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.codewind.iterdev.IConsoleFilter;
 import org.eclipse.codewind.iterdev.IDCContext;
+import org.eclipse.codewind.iterdev.IListener;
 import org.eclipse.codewind.iterdev.ProcessRunner;
+import org.eclipse.codewind.iterdev.ProcessRunner.CaptureMode;
 
 public class TaskUtils {
 
@@ -43,6 +46,43 @@ public class TaskUtils {
 		return pr;
 	}
 
+	/**
+	 * Run a given command, keeping its output as selected by the capture mode; use this for commands
+	 * with a lot of output (such as builds) or that run until they are stopped (such as tail).
+	 */
+	public static ProcessRunner runCmd(String cmd, IDCContext context, boolean showOutput, CaptureMode captureMode)
+			throws IOException, InterruptedException {
+
+		ProcessRunner pr = createRunnerForCmd(cmd, context.getRootPassword().orElse(null), showOutput);
+		pr.setCaptureMode(captureMode);
+		pr.startAndWaitForTermination();
+
+		return pr;
+	}
+
+	/** Run a given command as with runCmd(cmd, context, showOutput, captureMode), sending each line of its output to the listener */
+	public static ProcessRunner runCmd(String cmd, IDCContext context, boolean showOutput, CaptureMode captureMode, IListener listener)
+			throws IOException, InterruptedException {
+
+		ProcessRunner pr = createRunnerForCmd(cmd, context.getRootPassword().orElse(null), showOutput);
+		pr.setCaptureMode(captureMode);
+		pr.addListener(listener);
+		pr.startAndWaitForTermination();
+
+		return pr;
+	}
+
+	/**
+	 * Start a given command without waiting for it, so that several commands can run at the same time
+	 * @return Completes with the ProcessRunner once the command has exited and its output has been read
+	 */
+	public static CompletableFuture<ProcessRunner> startCmd(String cmd, IDCContext context, boolean showOutput)
+			throws IOException, InterruptedException {
+
+		ProcessRunner pr = createRunnerForCmd(cmd, context.getRootPassword().orElse(null), showOutput);
+		return pr.start().thenApply(exitCode -> pr);
+	}
+
 	public static ProcessRunner createRunnerForCmd(String cmd, IDCContext context, boolean showOutput)
 			throws IOException, InterruptedException {
 		return createRunnerForCmd(cmd, context.getRootPassword().orElse(null), showOutput);
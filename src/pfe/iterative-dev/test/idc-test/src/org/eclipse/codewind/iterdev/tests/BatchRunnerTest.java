@@ -0,0 +1,155 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.BatchRunner;
+import org.eclipse.codewind.iterdev.ConsoleRouter;
+import org.eclipse.codewind.iterdev.ConsoleRouter.IConsole;
+import org.eclipse.codewind.iterdev.IDC;
+import org.eclipse.codewind.iterdev.IDCServer;
+import org.eclipse.codewind.iterdev.ProcessRunner.ConsoleStream;
+
+/**
+ * Runs idc batch against project directories in a temporary directory, with a stub in place of the IDC commands
+ * that prints the command it was given and exits with the code in the project's name.
+ */
+public class BatchRunnerTest {
+
+	/** The ordinals of Constants.ErrorCode, which are the exit codes */
+	private static final int WRONG_USAGE = 0;
+
+	private static final int BATCH_FAILED = 7;
+
+	private File workspace;
+
+	private final List<String> commands = Collections.synchronizedList(new ArrayList<String>());
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	@Before
+	public void setUp() throws Exception {
+		workspace = Files.createTempDirectory("idc-batch").toFile().getCanonicalFile();
+		IDCServer.commandRunner = new IDCServer.ICommandRunner() {
+			@Override
+			public int execute(String[] args, File appDir) {
+				commands.add(appDir.getName() + ": " + String.join(" ", args));
+				System.out.println("building " + appDir.getName());
+				System.out.print("done");
+				int separator = appDir.getName().lastIndexOf('-');
+				return separator >= 0 ? Integer.parseInt(appDir.getName().substring(separator + 1)) : 0;
+			}
+		};
+
+		ConsoleRouter.install();
+		ConsoleRouter.setConsole(new IConsole() {
+			@Override
+			public void write(ConsoleStream s, byte[] b, int off, int len) {
+				synchronized (out) {
+					out.write(b, off, len);
+				}
+			}
+
+			@Override
+			public void flush(ConsoleStream s) {
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ConsoleRouter.clearConsole();
+		IDCServer.commandRunner = new IDCServer.ICommandRunner() {
+			@Override
+			public int execute(String[] args, File appDir) {
+				return IDC.execute(args, appDir);
+			}
+		};
+		File[] projects = workspace.listFiles();
+		if (projects != null) {
+			for (File project : projects) {
+				project.delete();
+			}
+		}
+		workspace.delete();
+	}
+
+	@Test
+	public void testUsage() throws Exception {
+		String app = project("app").getPath();
+		assertEquals(WRONG_USAGE, BatchRunner.execute(new String[] { "batch", "build" }));
+		assertEquals(WRONG_USAGE, BatchRunner.execute(new String[] { "batch", "shell", app }));
+		assertEquals(WRONG_USAGE, BatchRunner.execute(new String[] { "batch", "build", "--parallelism=0", app }));
+		assertEquals(WRONG_USAGE, BatchRunner.execute(new String[] { "batch", "build", "--parallelism=x", app }));
+		assertEquals(WRONG_USAGE, BatchRunner.execute(new String[] { "batch", "build", "--parallelism=2" }));
+		assertEquals(WRONG_USAGE, BatchRunner.execute(new String[] { "batch", "build", app, new File(workspace, "missing").getPath() }));
+		assertTrue(commands.isEmpty());
+	}
+
+	@Test
+	public void testEachProjectRunsOnce() throws Exception {
+		File app1 = project("app1");
+		File app2 = project("app2");
+		String sameAsApp1 = new File(app1, "../" + app1.getName()).getPath();
+		File linkToApp2 = Files.createSymbolicLink(new File(workspace, "link").toPath(), app2.toPath()).toFile();
+
+		assertEquals(0, BatchRunner.execute(new String[] { "batch", "build", "--parallelism=1", app1.getPath(),
+				"--force", app2.getPath(), app1.getPath(), sameAsApp1, linkToApp2.getPath() }));
+
+		// Options other than the parallelism are passed on to each command
+		Collections.sort(commands);
+		assertEquals(Arrays.asList("app1: build --force", "app2: build --force"), commands);
+	}
+
+	@Test
+	public void testPrefixedOutput() throws Exception {
+		assertEquals(0, BatchRunner.execute(new String[] { "batch", "start", project("app1").getPath(), project("app2").getPath() }));
+
+		List<String> lines = lines();
+		for (String app : new String[] { "app1", "app2" }) {
+			int building = lines.indexOf("[" + app + "] building " + app);
+			assertTrue(lines.toString(), building >= 0);
+
+			// The last line of a project's output is written when the project is done, even if it isn't complete
+			assertTrue(lines.toString(), lines.indexOf("[" + app + "] done") > building);
+		}
+		assertTrue(lines.toString(), lines.contains("2 of 2 projects succeeded"));
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		File app = project("app");
+		File failed = project("failed-2");
+		assertEquals(BATCH_FAILED, BatchRunner.execute(new String[] { "batch", "build", app.getPath(), failed.getPath() }));
+
+		List<String> lines = lines();
+		assertTrue(lines.toString(), lines.contains("  " + app.getPath() + ": succeeded"));
+		assertTrue(lines.toString(), lines.contains("  " + failed.getPath() + ": failed with exit code 2 (Container build failed.)"));
+		assertTrue(lines.toString(), lines.contains("1 of 2 projects succeeded"));
+	}
+
+	private File project(String name) {
+		File dir = new File(workspace, name);
+		dir.mkdirs();
+		return dir;
+	}
+
+	private List<String> lines() {
+		synchronized (out) {
+			return Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n"));
+		}
+	}
+}
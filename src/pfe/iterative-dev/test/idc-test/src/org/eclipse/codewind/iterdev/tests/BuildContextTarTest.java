@@ -0,0 +1,198 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.BuildContextTar;
+import org.eclipse.codewind.iterdev.tests.utils.IDCTestUtil;
+
+/**
+ * Streams a build context into a stub build, which reads the tar back, and checks that it has the contents
+ * build_docker_image.sh would have copied into the context directory.
+ */
+public class BuildContextTarTest {
+
+	private Path root;
+	private Path appDir;
+	private Path contextDir;
+	private Path artifactsDir;
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("idc-context");
+		appDir = Files.createDirectories(root.resolve("app"));
+		contextDir = Files.createDirectories(root.resolve("docker-app"));
+		artifactsDir = Files.createDirectories(root.resolve("artifacts"));
+
+		write(contextDir, "Dockerfile-idc", "FROM scratch\nCOPY /src/main/liberty/config /config/\n");
+		Files.createDirectories(contextDir.resolve("target/liberty/wlp/usr/servers"));
+		write(contextDir, "artifacts/stale.sh", "stale copy of the artifacts");
+
+		write(artifactsDir, "server_setup.sh", "#!/bin/bash\n");
+		Files.setPosixFilePermissions(artifactsDir.resolve("server_setup.sh"), PosixFilePermissions.fromString("rwxr-xr-x"));
+		write(artifactsDir, "new_entrypoint.sh", "#!/bin/bash\nexec \"$@\"\n");
+
+		write(appDir, "pom.xml", "<project/>");
+		write(appDir, "src/main/liberty/config/server.xml", "<server/>");
+		write(appDir, "Dockerfile-idc", "FROM app's own file, which cp -rf copies over the generated one\n");
+		write(appDir, ".dockerignore", "# build output\nnode_modules\n**/*.log\n!keep.log\n");
+		write(appDir, "node_modules/left-pad/index.js", "module.exports = {};");
+		write(appDir, "logs/messages.log", "excluded");
+		write(appDir, "keep.log", "kept");
+
+		char[] longName = new char[150];
+		Arrays.fill(longName, 'x');
+		write(appDir, "src/main/java/" + new String(longName) + ".java", "class X {}");
+		Files.createSymbolicLink(appDir.resolve("config"), appDir.resolve("src/main/liberty/config"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		IDCTestUtil.deleteTree(root.toFile());
+	}
+
+	@Test
+	public void testContents() throws Exception {
+		ByteArrayOutputStream build = new ByteArrayOutputStream();
+		int files = BuildContextTar.write(appDir, contextDir, artifactsDir, build);
+
+		Map<String, Entry> entries = readTar(build.toByteArray());
+
+		assertEquals(files, count(entries, '0'));
+		assertEquals("FROM app's own file, which cp -rf copies over the generated one\n", entries.get("Dockerfile-idc").text());
+		assertEquals("<server/>", entries.get("src/main/liberty/config/server.xml").text());
+		assertEquals('5', entries.get("target/liberty/wlp/usr/servers/").type);
+
+		// The artifacts come from the artifacts directory, not the stale copy in the context directory
+		assertFalse(entries.containsKey("artifacts/stale.sh"));
+		assertEquals("#!/bin/bash\n", entries.get("artifacts/server_setup.sh").text());
+		assertEquals(0755, entries.get("artifacts/server_setup.sh").mode);
+
+		// .dockerignore exclusions
+		assertFalse(entries.containsKey("node_modules/"));
+		assertFalse(entries.containsKey("node_modules/left-pad/index.js"));
+		assertFalse(entries.containsKey("logs/messages.log"));
+		assertTrue(entries.containsKey("logs/"));
+		assertEquals("kept", entries.get("keep.log").text());
+		assertTrue(entries.containsKey(".dockerignore"));
+
+		String longName = "src/main/java/" + new String(new char[150]).replace('\0', 'x') + ".java";
+		assertEquals("class X {}", entries.get(longName).text());
+
+		assertEquals('2', entries.get("config").type);
+		assertEquals(appDir.resolve("src/main/liberty/config").toString(), entries.get("config").linkName);
+	}
+
+	@Test
+	public void testSystemTarCanRead() throws Exception {
+		File tarFile = root.resolve("context.tar").toFile();
+		BuildContextTar.write(appDir, contextDir, artifactsDir, Files.newOutputStream(tarFile.toPath()));
+
+		Process p = new ProcessBuilder("tar", "-tf", tarFile.getAbsolutePath()).redirectErrorStream(true).start();
+		String listing = new String(readAll(p.getInputStream()), StandardCharsets.UTF_8);
+		assertEquals(listing, 0, p.waitFor());
+		assertTrue(listing, listing.contains("artifacts/new_entrypoint.sh\n"));
+		assertTrue(listing, listing.contains(new String(new char[150]).replace('\0', 'x') + ".java\n"));
+	}
+
+	private static class Entry {
+		char type;
+		int mode;
+		String linkName;
+		byte[] data;
+
+		String text() {
+			return new String(data, StandardCharsets.UTF_8);
+		}
+	}
+
+	/** The stub build: reads the tar entries, including GNU long names */
+	private static Map<String, Entry> readTar(byte[] tar) throws IOException {
+		Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+		String longName = null;
+		int offset = 0;
+		while (offset + 512 <= tar.length) {
+			byte[] header = Arrays.copyOfRange(tar, offset, offset + 512);
+			offset += 512;
+			if (header[0] == 0) {
+				break;
+			}
+
+			long checksum = 0;
+			for (int i = 0; i < 512; i++) {
+				checksum += (i >= 148 && i < 156) ? ' ' : header[i] & 0xff;
+			}
+			assertEquals(checksum, octal(header, 148, 8));
+
+			Entry entry = new Entry();
+			entry.type = (char) header[156];
+			entry.mode = (int) octal(header, 100, 8);
+			entry.linkName = string(header, 157, 100);
+			int size = (int) octal(header, 124, 12);
+			entry.data = Arrays.copyOfRange(tar, offset, offset + size);
+			offset += (size + 511) / 512 * 512;
+
+			if (entry.type == 'L') {
+				longName = new String(entry.data, 0, size - 1, StandardCharsets.UTF_8);
+				continue;
+			}
+			entries.put(longName != null ? longName : string(header, 0, 100), entry);
+			longName = null;
+		}
+		return entries;
+	}
+
+	private static int count(Map<String, Entry> entries, char type) {
+		int count = 0;
+		for (Entry entry : entries.values()) {
+			count += entry.type == type ? 1 : 0;
+		}
+		return count;
+	}
+
+	private static long octal(byte[] header, int offset, int length) {
+		String value = string(header, offset, length).trim();
+		return value.isEmpty() ? 0 : Long.parseLong(value, 8);
+	}
+
+	private static String string(byte[] header, int offset, int length) {
+		int end = offset;
+		while (end < offset + length && header[end] != 0) {
+			end++;
+		}
+		return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int len;
+		while ((len = is.read(buffer)) != -1) {
+			bytes.write(buffer, 0, len);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void write(Path dir, String name, String contents) throws IOException {
+		Path file = dir.resolve(name);
+		Files.createDirectories(file.getParent());
+		Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,52 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.BuildLogScanner;
+import org.eclipse.codewind.iterdev.BuildLogScanner.Verdict;
+import org.eclipse.codewind.iterdev.ProcessRunner;
+import org.eclipse.codewind.iterdev.ProcessRunner.CaptureMode;
+
+/**
+ * Runs BuildLogScanner on the output of a shell script that writes what the build scripts write: their own
+ * messages, and then the Maven output.
+ */
+public class BuildLogScannerTest {
+
+	@Test
+	public void testSuccess() throws Exception {
+		assertEquals(Verdict.success, scan("[INFO] Compiling 12 source files", "[INFO] BUILD SUCCESS",
+				"[INFO] Total time: 4.2 s", "Finished mvn compile"));
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		assertEquals(Verdict.failure, scan("[ERROR] COMPILATION ERROR", "[INFO] BUILD FAILURE",
+				"[ERROR] Failed to execute goal", "Finished mvn compile"));
+	}
+
+	@Test
+	public void testLastBuildIsTheVerdict() throws Exception {
+		assertEquals(Verdict.failure, scan("[INFO] BUILD SUCCESS", "Start mvn package", "[INFO] BUILD FAILURE"));
+	}
+
+	@Test
+	public void testNoBuild() throws Exception {
+		assertEquals(Verdict.pending, scan("Start mvn compile", "/bin/bash: mvn: command not found"));
+	}
+
+	private static Verdict scan(String... lines) throws Exception {
+		StringBuilder script = new StringBuilder();
+		for (String line : lines) {
+			script.append("echo '").append(line).append("'\n");
+		}
+		BuildLogScanner scanner = new BuildLogScanner();
+		ProcessRunner build = new ProcessRunner(new String[] { "/bin/sh", "-c", script.toString() }, false);
+		build.setCaptureMode(CaptureMode.none);
+		build.addListener(scanner);
+		build.startAndWaitForTermination();
+		return scanner.getVerdict();
+	}
+}
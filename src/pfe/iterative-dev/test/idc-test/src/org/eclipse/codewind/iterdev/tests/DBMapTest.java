@@ -0,0 +1,225 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.DBMap;
+
+/**
+ * Writes databases in a temporary .idc directory, and reads them back with new instances, as a later IDC process
+ * would.
+ */
+public class DBMapTest {
+
+	private File idcBase;
+
+	private File dbDir;
+
+	@Before
+	public void setUp() throws Exception {
+		idcBase = Files.createTempDirectory("idc-db").toFile();
+		dbDir = new File(idcBase, "db");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		File[] files = dbDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dbDir.delete();
+		idcBase.delete();
+	}
+
+	@Test
+	public void testFirstCommitIsListed() throws Exception {
+		DBMap db = new DBMap("abc", idcBase);
+		db.put("CONTAINER_NAME", "myapp-idc-abc");
+		db.put("PROJECT_ID", "1234");
+
+		assertTrue(new File(dbDir, DBMap.DBPREFIX + "abc").exists());
+		assertEquals(Arrays.asList("abc"), DBMap.listIds(idcBase));
+	}
+
+	@Test
+	public void testJournalOnlyDatabaseIsListed() throws Exception {
+		// Databases written before the first commit created the snapshot have only a journal
+		dbDir.mkdirs();
+		write(DBMap.JOURNALPREFIX + "old", "+CONTAINER_NAME@#@myapp-idc-old\n=1\n");
+		write(DBMap.DBPREFIX + "new.tmp", "");
+		new DBMap("new", idcBase).put("PROJECT_ID", "5678");
+
+		List<String> ids = DBMap.listIds(idcBase);
+		assertEquals(Arrays.asList("new", "old"), ids);
+		assertEquals("myapp-idc-old", new DBMap("old", idcBase).get("CONTAINER_NAME"));
+	}
+
+	@Test
+	public void testJournalReplay() throws Exception {
+		DBMap db = new DBMap("abc", idcBase);
+		db.put("a", "1");
+		db.put("b", "2");
+		Map<String, String> entries = new HashMap<String, String>();
+		entries.put("a", null);
+		entries.put("c", "3");
+		db.putAll(entries);
+
+		DBMap reread = new DBMap("abc", idcBase);
+		assertNull(reread.get("a"));
+		assertEquals("2", reread.get("b"));
+		assertEquals("3", reread.get("c"));
+		assertEquals(db.getVersion(), reread.getVersion());
+
+		// A commit that was not completely written is ignored
+		Files.write(new File(dbDir, DBMap.JOURNALPREFIX + "abc").toPath(), "+d@#@4\n".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		assertNull(new DBMap("abc", idcBase).get("d"));
+	}
+
+	@Test
+	public void testChangesOfOtherInstancesAreKept() throws Exception {
+		DBMap first = new DBMap("global", idcBase);
+		DBMap second = new DBMap("global", idcBase);
+		first.put("a", "1");
+		second.put("b", "2");
+		first.put("c", "3");
+
+		DBMap reread = new DBMap("global", idcBase);
+		assertEquals("1", reread.get("a"));
+		assertEquals("2", reread.get("b"));
+		assertEquals("3", reread.get("c"));
+	}
+
+	@Test
+	public void testUpdateSeesCommitsOfOtherInstances() throws Exception {
+		DBMap first = new DBMap("global", idcBase);
+		DBMap second = new DBMap("global", idcBase);
+		second.put("port-app2", "9080");
+
+		// The first instance hasn't re-read the database, but its update is computed from the latest contents
+		Map<String, String> committed = first.update(new DBMap.IUpdate() {
+			@Override
+			public Map<String, String> apply(Map<String, String> current) {
+				return Collections.singletonMap("port-app1", Integer.toString(nextFreePort(current)));
+			}
+		});
+		assertEquals(Collections.singletonMap("port-app1", "9081"), committed);
+
+		// An update that computes no entries commits nothing
+		long version = first.getVersion();
+		assertTrue(first.update(new DBMap.IUpdate() {
+			@Override
+			public Map<String, String> apply(Map<String, String> current) {
+				return Collections.emptyMap();
+			}
+		}).isEmpty());
+		assertEquals(version, new DBMap("global", idcBase).getVersion());
+	}
+
+	@Test
+	public void testRacingUpdates() throws Exception {
+		final DBMap[] instances = { new DBMap("global", idcBase), new DBMap("global", idcBase) };
+		final int reservations = 50;
+
+		// Each thread reserves the lowest port no one holds, through its own instance, as two IDC processes would
+		ExecutorService threads = Executors.newFixedThreadPool(instances.length);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int i = 0; i < instances.length; i++) {
+			final int thread = i;
+			results.add(threads.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int j = 0; j < reservations; j++) {
+						final String key = "port-app" + thread + "-" + j;
+						instances[thread].update(new DBMap.IUpdate() {
+							@Override
+							public Map<String, String> apply(Map<String, String> current) {
+								return Collections.singletonMap(key, Integer.toString(nextFreePort(current)));
+							}
+						});
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<?> result : results) {
+			result.get(30, TimeUnit.SECONDS);
+		}
+		threads.shutdown();
+
+		Map<String, String> ports = new DBMap("global", idcBase).getMap();
+		assertEquals(instances.length * reservations, ports.size());
+		assertEquals(ports.size(), new HashSet<String>(ports.values()).size());
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		DBMap db = new DBMap("abc", idcBase);
+		for (int i = 0; i < 300; i++) {
+			db.put("key" + i, "value" + i);
+		}
+
+		// The journal was folded into the snapshot once it was long enough, and started again
+		File journal = new File(dbDir, DBMap.JOURNALPREFIX + "abc");
+		int journalLines = journal.exists() ? Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8).size() : 0;
+		assertTrue("journal has " + journalLines + " lines", journalLines < 300);
+		String snapshot = new String(Files.readAllBytes(new File(dbDir, DBMap.DBPREFIX + "abc").toPath()), StandardCharsets.UTF_8);
+		assertTrue(snapshot.contains("key0@#@value0"));
+
+		DBMap reread = new DBMap("abc", idcBase);
+		assertEquals(300, reread.getMap().size());
+		assertEquals("value299", reread.get("key299"));
+		assertEquals(db.getVersion(), reread.getVersion());
+	}
+
+	@Test
+	public void testUTF8() throws Exception {
+		DBMap db = new DBMap("abc", idcBase);
+		db.put("APP_DIR", "/workspace/caf\u00e9-\u65e5\u672c");
+		for (int i = 0; i < 300; i++) {
+			db.put("key", Integer.toString(i));
+		}
+
+		String snapshot = new String(Files.readAllBytes(new File(dbDir, DBMap.DBPREFIX + "abc").toPath()), StandardCharsets.UTF_8);
+		assertTrue(snapshot.contains("/workspace/caf\u00e9-\u65e5\u672c"));
+		assertEquals("/workspace/caf\u00e9-\u65e5\u672c", new DBMap("abc", idcBase).get("APP_DIR"));
+		assertFalse(new DBMap("abc", idcBase).getMap().containsKey("#version"));
+	}
+
+	private static int nextFreePort(Map<String, String> ports) {
+		int port = 9080;
+		while (ports.containsValue(Integer.toString(port))) {
+			port++;
+		}
+		return port;
+	}
+
+	private void write(String name, String contents) throws Exception {
+		Files.write(new File(dbDir, name).toPath(), contents.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,98 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.Constants;
+import org.eclipse.codewind.iterdev.IDCUtils;
+import org.eclipse.codewind.iterdev.tests.utils.IDCTestUtil;
+
+/**
+ * Hashes a chart directory in a temporary directory with IDCUtils.calculateHashOfDirectoryContents(), and with the
+ * shell pipeline IDC ran before, whose hashes are stored in the app DBs of existing applications.
+ */
+public class DirectoryHashTest {
+
+	private File dir;
+
+	private File chart;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("idc-hash").toFile();
+		chart = new File(dir, "chart");
+		chart.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		IDCTestUtil.deleteTree(dir);
+	}
+
+	@Test
+	public void testSameAsPipeline() throws Exception {
+		write("Chart.yaml", "name: app\nversion: 1.0.0\n");
+		write("values.yaml", "replicaCount: 1\n");
+		write("templates/deployment.yaml", "kind: Deployment\n");
+		write("templates/service.yaml", "kind: Service\n");
+		write("templates/copy.yaml", "kind: Service\n");
+		write("templates/NOTES.txt", "not hashed\n");
+		write("templates/values.yml", "not hashed\n");
+		write("templates/with space.yaml", "kind: ConfigMap\n");
+		write(".hidden/secret.yaml", "kind: Secret\n");
+		write("deep/er/and/deeper/.yaml", "");
+
+		// Symbolic links are not followed, and links to files aren't regular files to find -type f
+		File outside = new File(dir, "outside");
+		outside.mkdirs();
+		Files.write(new File(outside, "linked.yaml").toPath(), "kind: Linked\n".getBytes(StandardCharsets.UTF_8));
+		Files.createSymbolicLink(new File(chart, "linked").toPath(), outside.toPath());
+		Files.createSymbolicLink(new File(chart, "link.yaml").toPath(), new File(outside, "linked.yaml").toPath());
+
+		String hash = IDCUtils.calculateHashOfDirectoryContents(chart, ".yaml", Constants.CHARTDIR_HASH_ALGORITHM);
+		assertEquals(pipeline(), hash);
+
+		// Changing any of the hashed files changes the hash
+		write(".hidden/secret.yaml", "kind: Secret\ndata: {}\n");
+		String changed = IDCUtils.calculateHashOfDirectoryContents(chart, ".yaml", Constants.CHARTDIR_HASH_ALGORITHM);
+		assertFalse(hash.equals(changed));
+		assertEquals(pipeline(), changed);
+	}
+
+	@Test
+	public void testEmptyDirectory() throws Exception {
+		write("templates/NOTES.txt", "not hashed\n");
+		assertEquals(pipeline(), IDCUtils.calculateHashOfDirectoryContents(chart, ".yaml", Constants.CHARTDIR_HASH_ALGORITHM));
+	}
+
+	/** The hash the pipeline IDC ran before calculates, without its trailing "  -" */
+	private String pipeline() throws Exception {
+		String cmd = "find " + chart.getPath() + " -type f -name \"*.yaml\" -exec sha256sum {} + | awk '{print $1}' | sort | sha256sum";
+		Process process = new ProcessBuilder("/bin/sh", "-c", cmd).redirectErrorStream(true).start();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (InputStream is = process.getInputStream()) {
+			byte[] buffer = new byte[4096];
+			for (int len = is.read(buffer); len != -1; len = is.read(buffer)) {
+				output.write(buffer, 0, len);
+			}
+		}
+		assertEquals(0, process.waitFor());
+		return new String(output.toByteArray(), StandardCharsets.UTF_8).split(" ")[0];
+	}
+
+	private void write(String path, String contents) throws Exception {
+		File file = new File(chart, path);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,149 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.EnvironmentSnapshot;
+import org.eclipse.codewind.iterdev.KubeApiClient.Pod;
+
+/**
+ * Reads an EnvironmentSnapshot whose queries are stubs that record each time they are run.
+ */
+public class EnvironmentSnapshotTest {
+
+	private static class StubQueries implements EnvironmentSnapshot.IQueries {
+
+		final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+
+		List<String> images = Arrays.asList("myapp-idc-1234");
+
+		Set<String> containers = new HashSet<String>(Arrays.asList("c1"));
+
+		List<Pod> releasePods = new ArrayList<Pod>();
+
+		List<Pod> allPods = new ArrayList<Pod>();
+
+		IOException failure;
+
+		@Override
+		public List<String> listImageRepositories() throws IOException {
+			queries.add("images");
+			if (failure != null) {
+				throw failure;
+			}
+			return images;
+		}
+
+		@Override
+		public boolean checkForContainerImage(List<String> imageRepositories) {
+			return imageRepositories.contains("myapp-idc-1234");
+		}
+
+		@Override
+		public Set<String> listRunningContainerIds() {
+			queries.add("containers");
+			return containers;
+		}
+
+		@Override
+		public List<Pod> listPods(boolean all) {
+			queries.add(all ? "all pods" : "release pods");
+			return all ? allPods : releasePods;
+		}
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		StubQueries stub = new StubQueries();
+		EnvironmentSnapshot snapshot = EnvironmentSnapshot.prefetch(stub, false);
+		assertTrue(snapshot.checkForContainerImage());
+		assertTrue(snapshot.isContainerRunning("c1"));
+		assertFalse(snapshot.isContainerRunning("c2"));
+		assertEquals(new HashSet<String>(Arrays.asList("images", "containers")), new HashSet<String>(stub.queries));
+
+		// Once IDC has changed the containers, the lists are queried again, once
+		stub.queries.clear();
+		stub.images = Collections.emptyList();
+		stub.containers = new HashSet<String>(Arrays.asList("c2"));
+		snapshot.invalidate();
+		assertFalse(snapshot.checkForContainerImage());
+		assertTrue(snapshot.isContainerRunning("c2"));
+		assertFalse(snapshot.isContainerRunning("c1"));
+		assertEquals(Arrays.asList("images", "containers"), stub.queries);
+	}
+
+	@Test
+	public void testPodOutsideOfRelease() throws Exception {
+		StubQueries stub = new StubQueries();
+		stub.releasePods.add(pod("myapp-idc-1234-old", "Running", true));
+		stub.allPods.addAll(stub.releasePods);
+		stub.allPods.add(pod("myapp-idc-1234-new", "Running", false));
+
+		EnvironmentSnapshot snapshot = EnvironmentSnapshot.prefetch(stub, true);
+		assertFalse(snapshot.isPodRunning("myapp-idc-1234-old"));
+		assertEquals(Arrays.asList("images", "release pods"), sorted(stub.queries));
+
+		// A pod that isn't among the release's pods is looked for among all of the pods, which are then kept
+		assertTrue(snapshot.isPodRunning("myapp-idc-1234-new"));
+		assertFalse(snapshot.isPodRunning("missing"));
+		assertEquals(Arrays.asList("all pods", "images", "release pods"), sorted(stub.queries));
+
+		stub.queries.clear();
+		snapshot.invalidate();
+		assertFalse(snapshot.isPodRunning("missing"));
+		assertEquals(Arrays.asList("release pods", "all pods"), stub.queries);
+	}
+
+	@Test
+	public void testOnDemand() throws Exception {
+		StubQueries stub = new StubQueries();
+		EnvironmentSnapshot snapshot = EnvironmentSnapshot.onDemand(stub);
+		assertEquals(Collections.emptyList(), stub.queries);
+
+		// Only the lists that are read are queried
+		assertTrue(snapshot.isContainerRunning("c1"));
+		assertTrue(snapshot.isContainerRunning("c1"));
+		assertEquals(Arrays.asList("containers"), stub.queries);
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		StubQueries stub = new StubQueries();
+		stub.failure = new IOException("Cannot connect to the Docker daemon");
+		EnvironmentSnapshot snapshot = EnvironmentSnapshot.prefetch(stub, false);
+		try {
+			snapshot.checkForContainerImage();
+			fail();
+		} catch (IOException e) {
+			assertSame(stub.failure, e);
+		}
+
+		// A failed list is queried again after the snapshot is invalidated
+		stub.failure = null;
+		snapshot.invalidate();
+		assertTrue(snapshot.checkForContainerImage());
+	}
+
+	private static Pod pod(String name, String phase, boolean deleting) {
+		return new Pod(name, "codewind", phase, deleting, Collections.<String, String>emptyMap());
+	}
+
+	private static List<String> sorted(List<String> queries) {
+		List<String> sorted = new ArrayList<String>(queries);
+		Collections.sort(sorted);
+		return sorted;
+	}
+}
@@ -0,0 +1,110 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.EventLog;
+import org.eclipse.codewind.iterdev.JSONUtils;
+import org.eclipse.codewind.iterdev.Logger;
+
+/**
+ * Checks that each message and event is written as one line of JSON in the JSON output mode, and that nothing but
+ * the usual text is written otherwise.
+ */
+public class EventLogTest {
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	private PrintStream originalOut;
+
+	@Before
+	public void setUp() throws Exception {
+		originalOut = System.out;
+		System.setOut(new PrintStream(out, true, "UTF-8"));
+		EventLog.setJson(true);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		EventLog.setJson(false);
+		EventLog.setProject(null);
+		System.setOut(originalOut);
+	}
+
+	@Test
+	public void testPhaseAndMessages() throws Exception {
+		boolean result = EventLog.phase("containerBuild", new EventLog.IPhase<Boolean>() {
+			@Override
+			public Boolean run() throws Exception {
+				Logger.info("Building \"myapp\"\n");
+				EventLog.container("4f2c");
+				return true;
+			}
+		});
+		assertTrue(result);
+
+		List<Map<String, Object>> events = events();
+		assertEquals(4, events.size());
+		assertEquals("phaseStart", events.get(0).get("event"));
+		assertEquals("containerBuild", events.get(0).get("phase"));
+		assertEquals("log", events.get(1).get("event"));
+		assertEquals("Building \"myapp\"\n", events.get(1).get("message"));
+		assertEquals("4f2c", events.get(2).get("containerId"));
+		assertEquals("phaseEnd", events.get(3).get("event"));
+		assertEquals(Boolean.TRUE, events.get(3).get("success"));
+		assertTrue(events.get(3).get("durationMs") instanceof Number);
+	}
+
+	@Test
+	public void testFailedPhase() throws Exception {
+		EventLog.setProject("myapp");
+		try {
+			EventLog.phase("containerRun", new EventLog.IPhase<String>() {
+				@Override
+				public String run() throws Exception {
+					throw new IllegalStateException("no such image");
+				}
+			});
+			fail("Expected the phase's exception");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		Logger.error("Unable to start container.");
+
+		List<Map<String, Object>> events = events();
+		assertEquals(3, events.size());
+		assertEquals(Boolean.FALSE, events.get(1).get("success"));
+		assertEquals("myapp", events.get(1).get("project"));
+		assertEquals("error", events.get(2).get("event"));
+		assertEquals("Unable to start container.", events.get(2).get("message"));
+	}
+
+	@Test
+	public void testTextMode() throws Exception {
+		EventLog.setJson(false);
+		EventLog.status("app", "started", null);
+		Logger.info("Container built");
+
+		assertEquals("Container built" + System.lineSeparator(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	private List<Map<String, Object>> events() {
+		List<Map<String, Object>> events = new ArrayList<Map<String, Object>>();
+		for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n")) {
+			events.add(JSONUtils.parseObject(line));
+		}
+		return events;
+	}
+}
@@ -0,0 +1,71 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.eclipse.codewind.iterdev.FileCopier;
+import org.eclipse.codewind.iterdev.tests.utils.IDCTestUtil;
+
+/**
+ * Prints how long FileCopier and the byte[] stream copy it replaced take to copy the generated Liberty project of
+ * FileCopierTest, and how long FileCopier takes when nothing has changed. It is not part of the unit tests; run
+ * its main method directly.
+ */
+public class FileCopierBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		Path root = Files.createTempDirectory("idc-copier-benchmark");
+		try {
+			Path source = root.resolve("app");
+			List<String> files = FileCopierTest.createLibertyProject(source);
+
+			// Warm up both implementations before timing them
+			legacyCopyDir(source.toFile(), root.resolve("warmup-legacy").toFile());
+			FileCopier.copyDirectory(source, root.resolve("warmup"));
+
+			long start = System.nanoTime();
+			legacyCopyDir(source.toFile(), root.resolve("legacy").toFile());
+			long legacy = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			FileCopier.copyDirectory(source, root.resolve("context"));
+			long copy = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			FileCopier.copyDirectory(source, root.resolve("context"));
+			long unchanged = System.nanoTime() - start;
+
+			System.out.println("Copy of " + files.size() + " files: byte[] streams " + legacy / 1000000 + "ms, FileCopier "
+					+ copy / 1000000 + "ms, FileCopier unchanged " + unchanged / 1000000 + "ms");
+		} finally {
+			IDCTestUtil.deleteTree(root.toFile());
+		}
+	}
+
+	/** The copy IDCUtils.copyDir used before FileCopier */
+	private static void legacyCopyDir(File sourceDir, File targetDir) throws IOException {
+		targetDir.mkdirs();
+		for (File child : sourceDir.listFiles()) {
+			File target = new File(targetDir, child.getName());
+			if (child.isDirectory()) {
+				legacyCopyDir(child, target);
+			} else {
+				try (BufferedInputStream bin = new BufferedInputStream(new FileInputStream(child));
+						BufferedOutputStream bout = new BufferedOutputStream(new FileOutputStream(target))) {
+					byte[] byteBuff = new byte[1024];
+					int length;
+					while ((length = bin.read(byteBuff)) > 0) {
+						bout.write(byteBuff, 0, length);
+					}
+				}
+			}
+		}
+	}
+}
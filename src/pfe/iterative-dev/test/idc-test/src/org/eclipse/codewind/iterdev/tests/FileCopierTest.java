@@ -0,0 +1,144 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.FileCopier;
+import org.eclipse.codewind.iterdev.tests.utils.IDCTestUtil;
+
+/**
+ * Checks FileCopier against a generated tree shaped like a Liberty project (Java sources, server config, web
+ * content and a Liberty install of jars under target). FileCopierBenchmark times the copy of the same tree.
+ */
+public class FileCopierTest {
+
+	private Path root;
+	private Path source;
+
+	/** Source files, relative to the source directory */
+	private List<String> files;
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("idc-copier");
+		source = root.resolve("app");
+		files = createLibertyProject(source);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		IDCTestUtil.deleteTree(root.toFile());
+	}
+
+	@Test
+	public void testCopyDirectory() throws Exception {
+		Path target = root.resolve("context");
+		FileCopier.Result result = FileCopier.copyDirectory(source, target);
+
+		assertEquals(files.size(), result.getFilesCopied());
+		assertEquals(0, result.getFilesSkipped());
+		for (String file : files) {
+			assertArrayEquals(file, Files.readAllBytes(source.resolve(file)), Files.readAllBytes(target.resolve(file)));
+			assertEquals(file, Files.getLastModifiedTime(source.resolve(file)), Files.getLastModifiedTime(target.resolve(file)));
+		}
+	}
+
+	@Test
+	public void testSkipsUnchangedFiles() throws Exception {
+		Path target = root.resolve("context");
+		FileCopier.copyDirectory(source, target);
+
+		FileCopier.Result result = FileCopier.copyDirectory(source, target);
+		assertEquals(0, result.getFilesCopied());
+		assertEquals(files.size(), result.getFilesSkipped());
+
+		// Same size, new contents and modification time
+		Path changed = source.resolve("src/main/liberty/config/server.xml");
+		byte[] contents = Files.readAllBytes(changed);
+		contents[0]++;
+		Files.write(changed, contents);
+		Files.setLastModifiedTime(changed, FileTime.fromMillis(System.currentTimeMillis() - 30000));
+
+		result = FileCopier.copyDirectory(source, target);
+		assertEquals(1, result.getFilesCopied());
+		assertEquals(files.size() - 1, result.getFilesSkipped());
+		assertArrayEquals(contents, Files.readAllBytes(target.resolve("src/main/liberty/config/server.xml")));
+	}
+
+	@Test
+	public void testLinkMode() throws Exception {
+		Path target = root.resolve("context");
+		FileCopier.Result result = FileCopier.copyDirectory(source, target, FileCopier.Mode.link);
+
+		assertEquals(files.size(), result.getFilesLinked());
+		assertEquals(0, result.getFilesCopied());
+		long size = 0;
+		for (String file : files) {
+			assertTrue(file, Files.isSameFile(source.resolve(file), target.resolve(file)));
+			size += Files.size(source.resolve(file));
+		}
+		assertEquals(size, result.getBytesLinked());
+
+		// Copying over the links replaces them, leaving the sources intact
+		Path pom = source.resolve("pom.xml");
+		byte[] contents = Files.readAllBytes(pom);
+		Files.setLastModifiedTime(pom, FileTime.fromMillis(System.currentTimeMillis()));
+		result = FileCopier.copyDirectory(source, target);
+		assertEquals(1, result.getFilesCopied());
+		assertFalse(Files.isSameFile(pom, target.resolve("pom.xml")));
+		assertArrayEquals(contents, Files.readAllBytes(pom));
+		assertArrayEquals(contents, Files.readAllBytes(target.resolve("pom.xml")));
+	}
+
+	/**
+	 * Generates the Liberty project tree under the source directory, returning its files relative to the source directory.
+	 * FileCopierBenchmark copies the same tree.
+	 */
+	static List<String> createLibertyProject(Path source) throws IOException {
+		List<String> files = new ArrayList<String>();
+		Random random = new Random(42);
+		for (int i = 0; i < 300; i++) {
+			createFile(source, files, "src/main/java/application/pkg" + (i % 12) + "/Resource" + i + ".java", 2000 + random.nextInt(6000), random);
+		}
+		createFile(source, files, "src/main/liberty/config/server.xml", 3000, random);
+		createFile(source, files, "src/main/liberty/config/jvm.options", 200, random);
+		createFile(source, files, "src/main/liberty/config/bootstrap.properties", 300, random);
+		for (int i = 0; i < 40; i++) {
+			createFile(source, files, "src/main/webapp/static/page" + i + ".html", 1000 + random.nextInt(20000), random);
+		}
+		for (int i = 0; i < 120; i++) {
+			createFile(source, files, "target/liberty/wlp/lib/com.ibm.ws.feature" + i + ".jar", 20000 + random.nextInt(400000), random);
+		}
+		createFile(source, files, "pom.xml", 6000, random);
+
+		// Give the files a settled modification time, so that unchanged copies can be skipped
+		FileTime mtime = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+		for (String file : files) {
+			Files.setLastModifiedTime(source.resolve(file), mtime);
+		}
+		return files;
+	}
+
+	private static void createFile(Path source, List<String> files, String path, int size, Random random) throws IOException {
+		byte[] contents = new byte[size];
+		random.nextBytes(contents);
+		Path file = source.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.write(file, contents);
+		files.add(path);
+	}
+}
@@ -0,0 +1,122 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.FileDigestCache;
+
+/**
+ * Hashes files in a temporary directory, changing them in ways the cache must (or, for a change that keeps the
+ * size, modification time and inode, cannot) notice. The cache is shared by the whole JVM, so each test hashes
+ * files of its own.
+ */
+public class FileDigestCacheTest {
+
+	private static final String ALGORITHM = "SHA-256";
+
+	/** A modification time well outside of the racy window */
+	private static final FileTime LAST_HOUR = FileTime.fromMillis(System.currentTimeMillis() - 3600 * 1000);
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("idc-digest").toFile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testUnchangedFileIsNotRead() throws Exception {
+		File file = write("pom.xml", "<project/>", LAST_HOUR);
+		assertEquals(sha256("<project/>"), FileDigestCache.digest(file, ALGORITHM));
+
+		// A change that keeps the size, modification time and inode is not seen, which shows the file wasn't read
+		write("pom.xml", "<PROJECT/>", LAST_HOUR);
+		assertEquals(sha256("<project/>"), FileDigestCache.digest(file, ALGORITHM));
+		assertEquals(sha256("<PROJECT/>"), FileDigestCache.computeDigest(file, ALGORITHM));
+	}
+
+	@Test
+	public void testSizeChange() throws Exception {
+		File file = write("server.xml", "<server/>", LAST_HOUR);
+		FileDigestCache.digest(file, ALGORITHM);
+
+		write("server.xml", "<server></server>", LAST_HOUR);
+		assertEquals(sha256("<server></server>"), FileDigestCache.digest(file, ALGORITHM));
+	}
+
+	@Test
+	public void testModificationTimeChange() throws Exception {
+		File file = write("Dockerfile", "FROM a", LAST_HOUR);
+		FileDigestCache.digest(file, ALGORITHM);
+
+		write("Dockerfile", "FROM b", FileTime.fromMillis(LAST_HOUR.toMillis() + 1000));
+		assertEquals(sha256("FROM b"), FileDigestCache.digest(file, ALGORITHM));
+	}
+
+	@Test
+	public void testReplacedFile() throws Exception {
+		File file = write("values.yaml", "a: 1", LAST_HOUR);
+		FileDigestCache.digest(file, ALGORITHM);
+
+		// An editor that saves to a new file and renames it over the old one changes the inode
+		File saved = write("values.yaml.new", "a: 2", LAST_HOUR);
+		Files.move(saved.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		assertEquals(sha256("a: 2"), FileDigestCache.digest(file, ALGORITHM));
+	}
+
+	@Test
+	public void testRacyWindow() throws Exception {
+		// A file modified just now isn't cached, as it could change again within the same clock tick
+		FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+		File file = write("Chart.yaml", "version: 1", now);
+		assertEquals(sha256("version: 1"), FileDigestCache.digest(file, ALGORITHM));
+
+		write("Chart.yaml", "version: 2", now);
+		assertEquals(sha256("version: 2"), FileDigestCache.digest(file, ALGORITHM));
+	}
+
+	@Test
+	public void testSave() throws Exception {
+		File cacheFile = new File(dir, FileDigestCache.CACHE_FILE_NAME);
+		FileDigestCache.setCacheFile(cacheFile);
+		File file = write("cached.yaml", "cached", LAST_HOUR);
+		FileDigestCache.digest(file, ALGORITHM);
+		FileDigestCache.save();
+
+		String contents = new String(Files.readAllBytes(cacheFile.toPath()), StandardCharsets.UTF_8);
+		assertTrue(contents, contents.contains(sha256("cached") + "\t" + ALGORITHM + "\t" + file.getAbsolutePath()));
+	}
+
+	private File write(String name, String contents, FileTime lastModified) throws Exception {
+		File file = new File(dir, name);
+		Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(file.toPath(), lastModified);
+		return file;
+	}
+
+	private static String sha256(String contents) {
+		return DigestUtils.sha256Hex(contents.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,216 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.IDC;
+import org.eclipse.codewind.iterdev.IDCServer;
+
+/**
+ * Sends requests to an IDC server, as the idc script does, with a stub in place of the IDC commands.
+ */
+public class IDCServerTest {
+
+	private static int port;
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			port = socket.getLocalPort();
+		}
+		Thread server = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					IDCServer.start(new String[] { "server", "--port=" + port });
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}, "IDC server");
+		server.setDaemon(true);
+		server.start();
+
+		for (int i = 0; i < 100; i++) {
+			try {
+				new Socket(InetAddress.getLoopbackAddress(), port).close();
+				return;
+			} catch (IOException e) {
+				Thread.sleep(50);
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		IDCServer.commandRunner = new IDCServer.ICommandRunner() {
+			@Override
+			public int execute(String[] args, File appDir) {
+				return IDC.execute(args, appDir);
+			}
+		};
+	}
+
+	@Test
+	public void testFraming() throws Exception {
+		IDCServer.commandRunner = new IDCServer.ICommandRunner() {
+			@Override
+			public int execute(String[] args, File appDir) {
+				System.out.println(appDir.getPath() + " " + String.join(" ", args));
+				System.out.print("out ");
+				System.err.println("err");
+				System.out.print("line");
+				System.err.print("partial");
+				return 3;
+			}
+		};
+
+		List<String> response = request("/workspace/app", Arrays.asList("build", "--output=text"), environment());
+		assertEquals(Arrays.asList("O:/workspace/app build --output=text", "E:err", "O:out line", "E:partial", "X:3"), response);
+	}
+
+	@Test
+	public void testDifferentEnvironment() throws Exception {
+		IDCServer.commandRunner = new IDCServer.ICommandRunner() {
+			@Override
+			public int execute(String[] args, File appDir) {
+				return 0;
+			}
+		};
+
+		List<String> env = environment();
+		env.set(0, "HOST_OS=" + System.getenv("HOST_OS") + "-other");
+		assertEquals(Arrays.asList("R:HOST_OS"), request("/workspace/app", Arrays.asList("build"), env));
+
+		// Requests without an environment are run with the server's
+		assertEquals(Arrays.asList("X:0"), request("/workspace/app", Arrays.asList("build"), null));
+	}
+
+	@Test
+	public void testAppLock() throws Exception {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final AtomicReference<CountDownLatch> rendezvous = new AtomicReference<CountDownLatch>();
+		IDCServer.commandRunner = new IDCServer.ICommandRunner() {
+			@Override
+			public int execute(String[] args, File appDir) {
+				int now = running.incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.set(Math.max(now, maxRunning.get()));
+				}
+				try {
+					CountDownLatch latch = rendezvous.get();
+					if (latch == null) {
+						Thread.sleep(200);
+						return 0;
+					}
+					// Both commands must be running at once for either to succeed
+					latch.countDown();
+					return latch.await(5, TimeUnit.SECONDS) ? 0 : 1;
+				} catch (InterruptedException e) {
+					return 1;
+				} finally {
+					running.decrementAndGet();
+				}
+			}
+		};
+
+		// Commands against the same application run one at a time
+		assertEquals(Arrays.asList(Arrays.asList("X:0"), Arrays.asList("X:0")),
+				concurrently(Arrays.asList("build"), Arrays.asList("build")));
+		assertEquals(1, maxRunning.get());
+
+		// Commands that follow the application output run alongside the others
+		rendezvous.set(new CountDownLatch(2));
+		assertEquals(Arrays.asList(Arrays.asList("X:0"), Arrays.asList("X:0")),
+				concurrently(Arrays.asList("build"), Arrays.asList("status-tracker")));
+		rendezvous.set(new CountDownLatch(2));
+		assertEquals(Arrays.asList(Arrays.asList("X:0"), Arrays.asList("X:0")),
+				concurrently(Arrays.asList("status-tracker"), Arrays.asList("tail")));
+		assertEquals(2, maxRunning.get());
+	}
+
+	private static List<List<String>> concurrently(final List<String> args1, final List<String> args2) throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<List<String>>> responses = new ArrayList<Future<List<String>>>();
+			for (final List<String> args : Arrays.asList(args1, args2)) {
+				responses.add(clients.submit(new Callable<List<String>>() {
+					@Override
+					public List<String> call() throws Exception {
+						return request("/workspace/app", args, environment());
+					}
+				}));
+			}
+			List<List<String>> result = new ArrayList<List<String>>();
+			for (Future<List<String>> response : responses) {
+				result.add(response.get(10, TimeUnit.SECONDS));
+			}
+			return result;
+		} finally {
+			clients.shutdownNow();
+		}
+	}
+
+	/** The environment variables the idc script sends, with the values the server has */
+	private static List<String> environment() {
+		List<String> env = new ArrayList<String>();
+		for (String name : new String[] { "HOST_OS", "IN_K8", "IDC_VERBOSE" }) {
+			String value = System.getenv(name);
+			env.add(value != null ? name + "=" + value : name);
+		}
+		return env;
+	}
+
+	private static List<String> request(String appDir, List<String> args, List<String> env) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			StringBuilder request = new StringBuilder();
+			request.append(appDir).append('\n').append(args.size()).append('\n');
+			for (String arg : args) {
+				request.append(arg).append('\n');
+			}
+			if (env != null) {
+				request.append(env.size()).append('\n');
+				for (String variable : env) {
+					request.append(variable).append('\n');
+				}
+			}
+			OutputStream os = socket.getOutputStream();
+			os.write(request.toString().getBytes(StandardCharsets.UTF_8));
+			if (env == null) {
+				socket.shutdownOutput();
+			}
+
+			List<String> response = new ArrayList<String>();
+			BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			for (String line = br.readLine(); line != null; line = br.readLine()) {
+				response.add(line);
+			}
+			return response;
+		}
+	}
+}
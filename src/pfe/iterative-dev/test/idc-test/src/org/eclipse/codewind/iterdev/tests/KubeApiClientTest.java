@@ -0,0 +1,216 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.eclipse.codewind.iterdev.KubeApiClient;
+import org.eclipse.codewind.iterdev.KubeApiClient.Pod;
+import org.eclipse.codewind.iterdev.KubeApiClient.PodList;
+import org.eclipse.codewind.iterdev.PodTerminationWatch;
+import org.eclipse.codewind.iterdev.PodTerminationWatch.Outcome;
+
+/**
+ * Runs KubeApiClient against a mock Kubernetes API server on a local port, which answers the pod and deployment
+ * requests of the codewind namespace with canned responses.
+ */
+public class KubeApiClientTest {
+
+	private static final String TOKEN = "test-token";
+
+	private static final String POD_LIST = "{\"kind\":\"PodList\",\"apiVersion\":\"v1\",\"metadata\":{\"resourceVersion\":\"4711\"},\"items\":["
+			+ pod("myapp-idc-1234-7f9c5-abcde", "Running", false) + "," + pod("myapp-idc-1234-7f9c5-fghij", "Running", true) + "]}";
+
+	private HttpServer server;
+
+	/** Released when the test is done, which ends the watches the mock server keeps open */
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	private KubeApiClient client;
+
+	/** Request lines ("path?query") received by the mock server */
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+	/** The client ports the requests came from, one for each connection */
+	private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					KubeApiClientTest.this.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+
+		client = new KubeApiClient("http://127.0.0.1:" + server.getAddress().getPort(), "codewind", TOKEN, null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		done.countDown();
+		server.stop(0);
+	}
+
+	@Test
+	public void testListPodsBySelector() throws Exception {
+		PodList pods = client.listPods("release=myapp-idc-1234");
+
+		assertEquals("/api/v1/namespaces/codewind/pods?labelSelector=release%3Dmyapp-idc-1234", requests.get(0));
+		assertEquals("4711", pods.getResourceVersion());
+		assertEquals(2, pods.getPods().size());
+
+		Pod running = pods.getPods().get(0);
+		assertEquals("myapp-idc-1234-7f9c5-abcde", running.getName());
+		assertEquals("codewind", running.getNamespace());
+		assertEquals("myapp-idc-1234", running.getLabels().get("release"));
+		assertTrue(running.isRunning());
+
+		// kubectl shows a pod being deleted as Terminating, although its phase is still Running
+		Pod terminating = pods.getPods().get(1);
+		assertEquals("Running", terminating.getPhase());
+		assertTrue(terminating.isDeleting());
+		assertFalse(terminating.isRunning());
+	}
+
+	@Test
+	public void testGetPod() throws Exception {
+		assertEquals("Running", client.getPod("myapp-idc-1234-7f9c5-abcde").getPhase());
+		assertNull(client.getPod("missing"));
+	}
+
+	@Test
+	public void testListDeploymentNames() throws Exception {
+		assertEquals(Arrays.asList("myapp-idc-1234", "otherapp-idc-5678"), client.listDeploymentNames(null));
+		assertEquals("/apis/apps/v1/namespaces/codewind/deployments", requests.get(0));
+	}
+
+	@Test
+	public void testUnauthorized() throws Exception {
+		client = new KubeApiClient("http://127.0.0.1:" + server.getAddress().getPort(), "codewind", "expired", null);
+		try {
+			client.listPods(null);
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("HTTP 401"));
+		}
+	}
+
+	@Test
+	public void testConnectionIsReused() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			client.listPods("release=myapp-idc-1234");
+			client.getPod("missing");
+		}
+		assertEquals(10, requests.size());
+		assertEquals(clientPorts.toString(), 1, clientPorts.size());
+	}
+
+	@Test
+	public void testWatchPods() throws Exception {
+		PodList pods = client.listPods("release=myapp-idc-1234");
+		List<String> names = new ArrayList<String>();
+		for (Pod pod : pods.getPods()) {
+			names.add(pod.getName());
+		}
+
+		PodTerminationWatch podWatch = new PodTerminationWatch(names);
+		KubeApiClient.Watch watch = client.watchPods("release=myapp-idc-1234", pods.getResourceVersion(), 60, podWatch);
+
+		long start = System.currentTimeMillis();
+		Outcome outcome = podWatch.await(watch.getCompletion(), watch::close, start + 20000);
+
+		assertEquals(Outcome.terminated, outcome);
+		// The mock server keeps the watch open after the last deletion, until the test is done
+		assertTrue(System.currentTimeMillis() - start < 10000);
+		assertEquals("/api/v1/namespaces/codewind/pods?labelSelector=release%3Dmyapp-idc-1234&watch=true&timeoutSeconds=60&resourceVersion=4711",
+				requests.get(1));
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getRawPath();
+		String query = exchange.getRequestURI().getRawQuery();
+		requests.add(path + (query != null ? "?" + query : ""));
+		clientPorts.add(exchange.getRemoteAddress().getPort());
+
+		if (!("Bearer " + TOKEN).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+			respond(exchange, 401, "{\"kind\":\"Status\",\"message\":\"Unauthorized\",\"code\":401}");
+		} else if (path.equals("/api/v1/namespaces/codewind/pods") && query != null && query.contains("watch=true")) {
+			watch(exchange);
+		} else if (path.equals("/api/v1/namespaces/codewind/pods")) {
+			respond(exchange, 200, POD_LIST);
+		} else if (path.equals("/api/v1/namespaces/codewind/pods/myapp-idc-1234-7f9c5-abcde")) {
+			respond(exchange, 200, pod("myapp-idc-1234-7f9c5-abcde", "Running", false));
+		} else if (path.equals("/apis/apps/v1/namespaces/codewind/deployments")) {
+			respond(exchange, 200, "{\"kind\":\"DeploymentList\",\"items\":[{\"metadata\":{\"name\":\"myapp-idc-1234\"}},"
+					+ "{\"metadata\":{\"name\":\"otherapp-idc-5678\"}}]}");
+		} else {
+			respond(exchange, 404, "{\"kind\":\"Status\",\"reason\":\"NotFound\",\"code\":404}");
+		}
+	}
+
+	/** Stream watch events, as the API server does, one line at a time */
+	private void watch(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, 0);
+		OutputStream os = exchange.getResponseBody();
+		try {
+			writeEvent(os, "MODIFIED", pod("myapp-idc-1234-7f9c5-abcde", "Running", true));
+			Thread.sleep(200);
+			writeEvent(os, "DELETED", pod("myapp-idc-1234-7f9c5-fghij", "Running", true));
+			Thread.sleep(200);
+			writeEvent(os, "DELETED", pod("myapp-idc-1234-7f9c5-abcde", "Running", true));
+			done.await(30, TimeUnit.SECONDS);
+		} catch (InterruptedException | IOException e) {
+			// the client closed the watch
+		}
+	}
+
+	private static void writeEvent(OutputStream os, String type, String object) throws IOException {
+		os.write(("{\"type\":\"" + type + "\",\"object\":" + object + "}\n").getBytes(StandardCharsets.UTF_8));
+		os.flush();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+	}
+
+	private static String pod(String name, String phase, boolean deleting) {
+		return "{\"kind\":\"Pod\",\"metadata\":{\"name\":\"" + name + "\",\"namespace\":\"codewind\","
+				+ (deleting ? "\"deletionTimestamp\":\"2019-10-01T12:00:00Z\"," : "")
+				+ "\"labels\":{\"release\":\"myapp-idc-1234\"}},\"status\":{\"phase\":\"" + phase + "\"}}";
+	}
+}
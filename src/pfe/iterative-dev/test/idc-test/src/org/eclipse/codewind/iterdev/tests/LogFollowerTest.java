@@ -0,0 +1,165 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.DBMap;
+import org.eclipse.codewind.iterdev.LogFollower;
+import org.eclipse.codewind.iterdev.LogFollower.Segment;
+import org.eclipse.codewind.iterdev.tests.utils.IDCTestUtil;
+
+/**
+ * Follows a log in a temporary directory, which stands in for the server log the container writes to the workspace,
+ * with the checkpoints kept in a temporary .idc directory.
+ */
+public class LogFollowerTest {
+
+	private File dir;
+
+	private DBMap db;
+
+	private File log;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("idc-log").toFile();
+		db = DBMap.open("1234", new File(dir, ".idc"));
+		log = new File(dir, "messages.log");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		IDCTestUtil.deleteTree(dir);
+	}
+
+	@Test
+	public void testResumesFromCheckpoint() throws Exception {
+		append("line 1\nline 2\n");
+		LogFollower follower = new LogFollower(db, "test", "app", log, 100);
+		assertEquals(Arrays.asList("line 1", "line 2"), follower.poll().getLines());
+		assertNull(follower.poll());
+
+		// A partly written line is left until the rest of it is written
+		append("line 3\nline");
+		Segment segment = new LogFollower(db, "test", "app", log, 100).poll();
+		assertEquals(Arrays.asList("line 3"), segment.getLines());
+		assertEquals(14, segment.getStart());
+		assertEquals(21, segment.getEnd());
+
+		append(" 4\n");
+		assertEquals(Arrays.asList("line 4"), new LogFollower(db, "test", "app", log, 100).poll().getLines());
+
+		// Each reader has its own checkpoint
+		assertEquals(4, new LogFollower(db, "other", "app", log, 100).poll().getLines().size());
+	}
+
+	@Test
+	public void testRotation() throws Exception {
+		append("line 1\nline 2\n");
+		LogFollower follower = new LogFollower(db, "test", "app", log, 100);
+		follower.poll();
+
+		// Liberty renames the full log, and starts a new one
+		assertTrue(log.renameTo(new File(dir, "messages_19.10.01_12.00.00.0.log")));
+		append("new line 1\nnew line 2\nnew line 3\n");
+		assertEquals(Arrays.asList("new line 1", "new line 2", "new line 3"), follower.poll().getLines());
+
+		// A truncated log is also read again from its start
+		Files.write(log.toPath(), "truncated\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+		assertEquals(Arrays.asList("truncated"), follower.poll().getLines());
+	}
+
+	@Test
+	public void testCheckpointOfEarlierLog() throws Exception {
+		append("line 1\nline 2\n");
+		new LogFollower(db, "tracker", "app", log, 0).poll();
+		new LogFollower(db, "tail", "app", log, 1).poll();
+
+		// The log was rotated between commands, so the next ones start near its end, as they do without a checkpoint
+		assertTrue(log.renameTo(new File(dir, "messages_19.10.01_12.00.00.0.log")));
+		append("new line 1\nnew line 2\n");
+		assertNull(new LogFollower(db, "tracker", "app", log, 0).poll());
+		assertEquals(Arrays.asList("new line 2"), new LogFollower(db, "tail", "app", log, 1).poll().getLines());
+
+		append("new line 3\n");
+		assertEquals(Arrays.asList("new line 3"), new LogFollower(db, "tracker", "app", log, 0).poll().getLines());
+	}
+
+	@Test
+	public void testResumeIsBounded() throws Exception {
+		append("line 1\n");
+		new LogFollower(db, "tail", "app", log, 2).poll();
+
+		// Past the most backlog a follower resumes from, it starts near the end of the log instead
+		StringBuilder backlog = new StringBuilder();
+		for (int i = 0; backlog.length() <= LogFollower.MAX_RESUME_BYTES; i++) {
+			backlog.append("backlog line ").append(i).append('\n');
+		}
+		append(backlog.toString());
+		append("last line 1\nlast line 2\n");
+		assertEquals(Arrays.asList("last line 1", "last line 2"), new LogFollower(db, "tail", "app", log, 2).poll().getLines());
+	}
+
+	@Test
+	public void testAnnouncesRotation() throws Exception {
+		final List<String> announced = new ArrayList<String>();
+		Runnable announcer = new Runnable() {
+			@Override
+			public void run() {
+				announced.add(log.getName());
+			}
+		};
+
+		// Opening a log, with or without a checkpoint, isn't announced
+		append("line 1\n");
+		LogFollower follower = new LogFollower(db, "tracker", "app", log, 0);
+		follower.setNewFileAnnouncer(announcer);
+		follower.poll();
+		append("line 2\n");
+		follower = new LogFollower(db, "tracker", "app", log, 0);
+		follower.setNewFileAnnouncer(announcer);
+		follower.poll();
+		assertEquals(Collections.emptyList(), announced);
+
+		assertTrue(log.renameTo(new File(dir, "messages_19.10.01_12.00.00.0.log")));
+		append("new line 1\n");
+		follower.poll();
+		assertEquals(Arrays.asList("messages.log"), announced);
+
+		// A rotation between commands is announced by the next follower
+		assertTrue(log.renameTo(new File(dir, "messages_19.10.01_13.00.00.0.log")));
+		append("new line 1\n");
+		follower = new LogFollower(db, "tracker", "app", log, 0);
+		follower.setNewFileAnnouncer(announcer);
+		follower.poll();
+		assertEquals(2, announced.size());
+	}
+
+	@Test
+	public void testInitialLines() throws Exception {
+		for (int i = 1; i <= 10; i++) {
+			append("line " + i + "\n");
+		}
+		assertEquals(Arrays.asList("line 9", "line 10"), new LogFollower(db, "tail", "app", log, 2).poll().getLines());
+		assertNull(new LogFollower(db, "tracker", "app", log, 0).poll());
+	}
+
+	private void append(String text) throws IOException {
+		Files.write(log.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+}
@@ -0,0 +1,102 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.PodTerminationWatch;
+import org.eclipse.codewind.iterdev.PodTerminationWatch.Outcome;
+import org.eclipse.codewind.iterdev.ProcessRunner;
+
+/**
+ * Runs PodTerminationWatch against fake watch streams, written by a shell script as the API server would write
+ * them: one JSON event per line, with the stream left open until the watch times out.
+ */
+public class PodTerminationWatchTest {
+
+	private static final String POD_A = "myapp-idc-1234-7f9c5-abcde";
+	private static final String POD_B = "myapp-idc-1234-7f9c5-fghij";
+
+	@Test
+	public void testReturnsWhenLastPodIsDeleted() throws Exception {
+		PodTerminationWatch watch = new PodTerminationWatch(Arrays.asList(POD_A, POD_B));
+		ProcessRunner stream = fakeStream(
+				event("MODIFIED", POD_A),
+				"sleep 0.2",
+				event("DELETED", POD_A),
+				"sleep 0.2",
+				event("DELETED", POD_B),
+				// The API server keeps the stream open after the last deletion
+				"sleep 30");
+
+		long start = System.currentTimeMillis();
+		Outcome outcome = watch.await(stream, start + 20000);
+		long waited = System.currentTimeMillis() - start;
+
+		assertEquals(Outcome.terminated, outcome);
+		assertTrue("waited " + waited + "ms", waited < 5000);
+		assertEquals(Collections.emptySet(), watch.getRemainingPods());
+	}
+
+	@Test
+	public void testAddedPodMustAlsoBeDeleted() throws Exception {
+		PodTerminationWatch watch = new PodTerminationWatch(Arrays.asList(POD_A));
+		ProcessRunner stream = fakeStream(
+				event("ADDED", POD_B),
+				event("DELETED", POD_A));
+
+		assertEquals(Outcome.restart, watch.await(stream, System.currentTimeMillis() + 20000));
+		assertEquals(new HashSet<String>(Arrays.asList(POD_B)), watch.getRemainingPods());
+	}
+
+	@Test
+	public void testExpiredWatchRestarts() throws Exception {
+		PodTerminationWatch watch = new PodTerminationWatch(Arrays.asList(POD_A));
+		ProcessRunner stream = fakeStream(
+				"Error from server: not an event",
+				"{\"type\":\"ERROR\",\"object\":{\"kind\":\"Status\",\"message\":\"too old resource version\",\"code\":410}}",
+				"sleep 30");
+
+		long start = System.currentTimeMillis();
+		assertEquals(Outcome.restart, watch.await(stream, start + 20000));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		PodTerminationWatch watch = new PodTerminationWatch(Arrays.asList(POD_A));
+		ProcessRunner stream = fakeStream(event("MODIFIED", POD_A), "sleep 30");
+
+		assertEquals(Outcome.timedOut, watch.await(stream, System.currentTimeMillis() + 500));
+		assertEquals(new HashSet<String>(Arrays.asList(POD_A)), watch.getRemainingPods());
+	}
+
+	@Test
+	public void testNoPods() throws Exception {
+		PodTerminationWatch watch = new PodTerminationWatch(Collections.<String>emptyList());
+		assertEquals(Outcome.terminated, watch.await(fakeStream("sleep 30"), System.currentTimeMillis() + 20000));
+	}
+
+	private static String event(String type, String pod) {
+		return "{\"type\":\"" + type + "\",\"object\":{\"kind\":\"Pod\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\""
+				+ pod + "\",\"namespace\":\"default\",\"labels\":{\"release\":\"myapp-idc-1234\"}},\"status\":{\"phase\":\"Running\"}}}";
+	}
+
+	/** A process writing the given events, and running the given sleep commands between them */
+	private static ProcessRunner fakeStream(String... lines) {
+		StringBuilder script = new StringBuilder();
+		for (String line : lines) {
+			if (line.startsWith("sleep ")) {
+				script.append(line).append('\n');
+			} else {
+				script.append("echo '").append(line).append("'\n");
+			}
+		}
+		return new ProcessRunner(new String[] { "/bin/sh", "-c", script.toString() }, false);
+	}
+}
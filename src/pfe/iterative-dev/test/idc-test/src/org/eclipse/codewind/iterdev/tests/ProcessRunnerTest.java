@@ -0,0 +1,143 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.IListener;
+import org.eclipse.codewind.iterdev.ProcessRunner;
+import org.eclipse.codewind.iterdev.ProcessRunner.CaptureMode;
+
+/**
+ * Runs shell commands through ProcessRunner, without echoing their output.
+ */
+public class ProcessRunnerTest {
+
+	@Test
+	public void testCaptureAll() throws Exception {
+		ProcessRunner pr = runner("echo one; echo two >&2; echo three; exit 2");
+		assertEquals(2, pr.startAndWaitForTermination());
+		assertEquals(Optional.of(2), pr.getErrorCode());
+
+		// stdout and stderr are read by separate threads, so only the order within each stream is known
+		List<String> lines = lines(pr);
+		assertEquals(3, lines.size());
+		assertTrue(lines.indexOf("one") < lines.indexOf("three"));
+		assertTrue(lines.contains("two"));
+		assertEquals(3, pr.getReceived().split("\n").length);
+	}
+
+	@Test
+	public void testIteratorKeepsItsLines() throws Exception {
+		ProcessRunner pr = runner("echo one; echo two");
+		pr.startAndWaitForTermination();
+
+		// An iterator sees the lines captured when it was created, even if the output is cleared while it is in use
+		Iterator<String> iterator = pr.receivedLines().iterator();
+		pr.clearReceived();
+		assertEquals("one", iterator.next());
+		assertEquals("two", iterator.next());
+		assertFalse(iterator.hasNext());
+		assertEquals(Collections.emptyList(), lines(pr));
+	}
+
+	@Test
+	public void testCaptureLastLines() throws Exception {
+		ProcessRunner pr = runner("for i in 1 2 3 4 5 6 7 8 9 10; do echo $i; done");
+		pr.setCaptureMode(CaptureMode.lastLines, 3);
+		assertEquals(0, pr.startAndWaitForTermination());
+		assertEquals(Arrays.asList("8", "9", "10"), lines(pr));
+		assertEquals("8\n9\n10\n", pr.getReceived());
+	}
+
+	@Test
+	public void testCaptureNone() throws Exception {
+		ProcessRunner pr = runner("echo one; echo two");
+		pr.setCaptureMode(CaptureMode.none);
+		final List<String> heard = Collections.synchronizedList(new ArrayList<String>());
+		pr.addListener(new IListener() {
+			@Override
+			public void receiveText(String sr) {
+				heard.add(sr);
+			}
+		});
+		assertEquals(0, pr.startAndWaitForTermination());
+
+		// Listeners still receive each line
+		assertEquals(Collections.emptyList(), lines(pr));
+		assertEquals("", pr.getReceived());
+		assertEquals(Arrays.asList("one", "two"), heard);
+	}
+
+	@Test
+	public void testStartDoesNotWait() throws Exception {
+		ProcessRunner pr = runner("read line; echo got $line");
+		CompletableFuture<Integer> completion = pr.start();
+		assertFalse(completion.isDone());
+		assertEquals(Optional.empty(), pr.getErrorCode());
+
+		pr.getOutput().write("input\n".getBytes());
+		pr.getOutput().close();
+		assertEquals(0, ProcessRunner.waitFor(completion, 10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("got input"), lines(pr));
+		assertEquals(Optional.of(0), pr.getErrorCode());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		ProcessRunner pr = runner("echo started; exec sleep 30");
+		long start = System.currentTimeMillis();
+		try {
+			pr.startAndWaitForTermination(300, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (TimeoutException e) {
+			// expected
+		}
+
+		// The process was destroyed, so the completion follows soon after
+		assertTrue(pr.getCompletion().get(10, TimeUnit.SECONDS) != 0);
+		assertTrue(System.currentTimeMillis() - start < 10000);
+		assertEquals(Arrays.asList("started"), lines(pr));
+	}
+
+	@Test
+	public void testDrainTimeout() throws Exception {
+		// The background child inherits stdout, which stays open after the shell exits
+		ProcessRunner pr = runner("(sleep 1; echo late) & echo done; exit 3");
+		pr.setDrainTimeout(200, TimeUnit.MILLISECONDS);
+		long start = System.currentTimeMillis();
+		assertEquals(3, pr.startAndWaitForTermination());
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(Arrays.asList("done"), lines(pr));
+
+		// Output read after the process completed is not captured
+		Thread.sleep(1500);
+		assertEquals(Arrays.asList("done"), lines(pr));
+		assertEquals("done\n", pr.getReceived());
+	}
+
+	private static ProcessRunner runner(String script) {
+		return new ProcessRunner(new String[] { "/bin/sh", "-c", script }, false);
+	}
+
+	private static List<String> lines(ProcessRunner pr) {
+		List<String> result = new ArrayList<String>();
+		for (String line : pr.receivedLines()) {
+			result.add(line);
+		}
+		return result;
+	}
+}
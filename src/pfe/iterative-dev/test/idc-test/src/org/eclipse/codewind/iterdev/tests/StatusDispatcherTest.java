@@ -0,0 +1,154 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.StatusClient;
+import org.eclipse.codewind.iterdev.StatusDispatcher;
+import org.eclipse.codewind.iterdev.StatusDispatcher.StatusEvent;
+
+/**
+ * Runs StatusDispatcher against a sender that records the events instead of sending them to the portal.
+ */
+public class StatusDispatcherTest {
+
+	private static final long FLUSH_WINDOW_MS = 200;
+
+	private static final long INITIAL_BACKOFF_MS = 20;
+
+	/** Bodies of the events given to the sender, one for each attempt */
+	private final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+
+	/** Times of the attempts, in ms */
+	private final List<Long> sendTimes = Collections.synchronizedList(new ArrayList<Long>());
+
+	@Test
+	public void testCoalescing() throws Exception {
+		StatusDispatcher dispatcher = dispatcher(new StatusDispatcher.ISender() {
+			@Override
+			public StatusClient.Response send(StatusEvent event) {
+				return new StatusClient.Response(200, "OK");
+			}
+		});
+
+		dispatcher.submit(event("app/appState", "starting"));
+		dispatcher.submit(event("app/buildState", "inProgress"));
+		dispatcher.submit(event("app/appState", "stopping"));
+		dispatcher.submit(event("app/appState", "stopped"));
+		assertTrue(dispatcher.flush(5000));
+
+		// The queued app states were replaced by the last one, which moved behind the build state
+		assertEquals(Arrays.asList("inProgress", "stopped"), sent);
+	}
+
+	@Test
+	public void testRetryWithBackoff() throws Exception {
+		StatusDispatcher dispatcher = dispatcher(new StatusDispatcher.ISender() {
+			@Override
+			public StatusClient.Response send(StatusEvent event) throws IOException {
+				if (sent.size() == 1) {
+					throw new IOException("Connection refused");
+				}
+				return new StatusClient.Response(sent.size() == 2 ? 503 : 200, "Service Unavailable");
+			}
+		});
+
+		dispatcher.submit(event("app/appState", "started"));
+		assertTrue(dispatcher.flush(5000));
+
+		assertEquals(Arrays.asList("started", "started", "started"), sent);
+		assertTrue(sendTimes.get(1) - sendTimes.get(0) >= INITIAL_BACKOFF_MS);
+		assertTrue(sendTimes.get(2) - sendTimes.get(1) >= 2 * INITIAL_BACKOFF_MS);
+	}
+
+	@Test
+	public void testGivesUp() throws Exception {
+		StatusDispatcher dispatcher = dispatcher(new StatusDispatcher.ISender() {
+			@Override
+			public StatusClient.Response send(StatusEvent event) {
+				return new StatusClient.Response(event.body.equals("rejected") ? 400 : 500, "Error");
+			}
+		});
+
+		// A rejected request is not retried, a failing one is tried four times
+		dispatcher.submit(event("app/buildState", "rejected"));
+		dispatcher.submit(event("app/appState", "failing"));
+		assertTrue(dispatcher.flush(5000));
+		assertEquals(Arrays.asList("rejected", "failing", "failing", "failing", "failing"), sent);
+	}
+
+	@Test
+	public void testNewerEventReplacesRetry() throws Exception {
+		final StatusDispatcher[] dispatcher = new StatusDispatcher[1];
+		dispatcher[0] = dispatcher(new StatusDispatcher.ISender() {
+			@Override
+			public StatusClient.Response send(StatusEvent event) {
+				if (event.body.equals("starting")) {
+					// A newer state arrives while the first one is failing
+					dispatcher[0].submit(event("app/appState", "started"));
+					return new StatusClient.Response(503, "Service Unavailable");
+				}
+				return new StatusClient.Response(200, "OK");
+			}
+		});
+
+		dispatcher[0].submit(event("app/appState", "starting"));
+		assertTrue(dispatcher[0].flush(5000));
+		assertEquals(Arrays.asList("starting", "started"), sent);
+	}
+
+	@Test
+	public void testFlushTimeout() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		StatusDispatcher dispatcher = dispatcher(new StatusDispatcher.ISender() {
+			@Override
+			public StatusClient.Response send(StatusEvent event) throws IOException {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				return new StatusClient.Response(200, "OK");
+			}
+		});
+
+		assertTrue(dispatcher.flush(100));
+
+		// A flush does not wait out the flush window, but it does wait for the event being sent
+		dispatcher.submit(event("app/appState", "started"));
+		long start = System.currentTimeMillis();
+		assertFalse(dispatcher.flush(100));
+		assertTrue(System.currentTimeMillis() - start < FLUSH_WINDOW_MS);
+		assertEquals(Arrays.asList("started"), sent);
+
+		release.countDown();
+		assertTrue(dispatcher.flush(5000));
+	}
+
+	/** A dispatcher that records each attempt before passing it to the sender */
+	private StatusDispatcher dispatcher(final StatusDispatcher.ISender sender) {
+		return new StatusDispatcher(new StatusDispatcher.ISender() {
+			@Override
+			public StatusClient.Response send(StatusEvent event) throws IOException {
+				sendTimes.add(System.currentTimeMillis());
+				sent.add(event.body);
+				return sender.send(event);
+			}
+		}, FLUSH_WINDOW_MS, INITIAL_BACKOFF_MS);
+	}
+
+	private static StatusEvent event(String key, String state) {
+		return new StatusEvent(key, "updateStatus", state, "Update of " + key + " failed");
+	}
+}
@@ -0,0 +1,40 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import org.eclipse.codewind.iterdev.StatusMessageTable;
+
+/**
+ * Prints how long the StatusMessageTable and the chain of String.contains checks it replaced (see
+ * StatusMessageTableTest) take to classify a sample of Liberty console lines. It is not part of the unit tests;
+ * run its main method directly.
+ */
+public class StatusMessageTableBenchmark {
+
+	private static final int ITERATIONS = 200000;
+
+	public static void main(String[] args) {
+		StatusMessageTable table = StatusMessageTable.forRuntime(StatusMessageTable.RUNTIME_LIBERTY);
+		String[] lines = StatusMessageTableTest.LINES;
+		int matches = 0;
+
+		// Warm up both implementations before timing them
+		for (int i = 0; i < ITERATIONS; i++) {
+			matches += table.match(lines[i % lines.length]) != null ? 1 : 0;
+			matches += StatusMessageTableTest.legacyClassify(lines[i % lines.length]) != null ? 1 : 0;
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			matches += StatusMessageTableTest.legacyClassify(lines[i % lines.length]) != null ? 1 : 0;
+		}
+		long legacy = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			matches += table.match(lines[i % lines.length]) != null ? 1 : 0;
+		}
+		long current = System.nanoTime() - start;
+
+		System.out.println("String.contains chain: " + legacy / ITERATIONS + "ns/line, StatusMessageTable: "
+				+ current / ITERATIONS + "ns/line (" + matches + " matches)");
+	}
+}
@@ -0,0 +1,74 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.StatusMessageTable;
+import org.eclipse.codewind.iterdev.StatusMessageTable.StatusUpdate;
+
+/**
+ * Checks that the StatusMessageTable classifies Liberty console lines the same way as the chain of
+ * String.contains checks it replaced. StatusMessageTableBenchmark times the two against each other.
+ */
+public class StatusMessageTableTest {
+
+	static final String[] LINES = {
+		"[AUDIT   ] CWWKZ0018I: Starting application demo.",
+		"[AUDIT   ] CWWKT0016I: Web application available (default_host): http://localhost:9080/demo/",
+		"[AUDIT   ] CWWKZ0001I: Application demo started in 1.234 seconds.",
+		"[AUDIT   ] CWWKT0017I: Web application removed (default_host): http://localhost:9080/demo/",
+		"[AUDIT   ] CWWKZ0009I: The application demo has stopped successfully.",
+		"[ERROR   ] CWWKZ0002E: An exception occurred while starting the application demo. The exception message was: x",
+		"[ERROR   ] CWWKZ0010E: An exception occurred while stopping the application demo. The exception message was: y",
+		"[WARNING ] CWWKZ0014W: The application demo could not be started as it could not be found at location demo.war.",
+		"[INFO    ] CWWKZ0018I and CWWKZ0003I on one line: the first registered ID wins",
+		"[INFO    ] SRVE0169I: Loading Web Module: demo.",
+		"[INFO    ] CWWKF0011I: The server defaultServer is ready to run a smarter planet.",
+		"[INFO    ] DEBUG some application output with no message ID at all",
+		"CWWKZ0020",
+		"",
+	};
+
+	@Test
+	public void testMatchesLegacyClassification() {
+		StatusMessageTable table = StatusMessageTable.forRuntime(StatusMessageTable.RUNTIME_LIBERTY);
+		for (String line : LINES) {
+			StatusUpdate update = table.match(line);
+			String actual = update == null || update.state == null ? null : update.state + "/" + update.msg;
+			assertEquals(line, legacyClassify(line), actual);
+		}
+	}
+
+	@Test
+	public void testRegisterRuntime() {
+		StatusMessageTable node = new StatusMessageTable()
+				.add("NODE-START", "app", "starting", null)
+				.add("NODE-EXIT", "app", "stopped", null);
+		StatusMessageTable.register("node", node);
+
+		assertEquals("starting", StatusMessageTable.forRuntime("node").match("[app] NODE-START listening on 3000").state);
+		assertEquals("stopped", StatusMessageTable.forRuntime("node").match("NODE-EXIT code 0").state);
+		assertNull(StatusMessageTable.forRuntime("node").match("[AUDIT   ] CWWKZ0018I: Starting application demo."));
+		assertNull(StatusMessageTable.forRuntime("spring"));
+	}
+
+	/** The classification StatusTracker used before the StatusMessageTable */
+	static String legacyClassify(String sr) {
+		if (sr.contains("CWWKZ0001I") || sr.contains("CWWKZ0003I") || sr.contains("CWWKZ0062I")) {
+			return null;
+		} else if (sr.contains("CWWKZ0018I")) {
+			return "starting/null";
+		} else if (sr.contains("CWWKT0017I")) {
+			return "stopping/null";
+		} else if (sr.contains("CWWKZ0009I")) {
+			return "stopped/null";
+		} else if (sr.contains("CWWKZ0002E") || sr.contains("CWWKZ0005E") || sr.contains("CWWKZ0012I") || sr.contains("CWWKZ0004E") || sr.contains("CWWKZ0020I") || sr.contains("CWWKZ0014W")) {
+			return "stopped/projectStatusController.appStatusContainerStopped";
+		} else if (sr.contains("CWWKZ0010E")) {
+			return "unknown/projectStatusController.appErrorWhenStopping";
+		}
+		return null;
+	}
+}
@@ -0,0 +1,88 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.tasks.TaskGraph;
+import org.eclipse.codewind.iterdev.tasks.TaskGraph.IStep;
+import org.eclipse.codewind.iterdev.tasks.TaskGraph.Status;
+import org.eclipse.codewind.iterdev.tasks.TaskGraph.Step;
+
+/**
+ * Runs graphs shaped like the removal of a Kubernetes application: a release deletion, a wait for the pods, and
+ * then three image removals that don't depend on each other.
+ */
+public class TaskGraphTest {
+
+	private final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+	@Test
+	public void testIndependentStepsRunTogether() throws Exception {
+		TaskGraph graph = new TaskGraph("test");
+		Step release = graph.add("release", sleep("release", 100, true));
+		Step pods = graph.add("pods", sleep("pods", 100, true), release);
+		Step image = graph.add("image", sleep("image", 400, true), pods);
+		Step registryImage = graph.add("registry image", sleep("registry image", 400, true), pods);
+		Step kubeImage = graph.add("kube image", sleep("kube image", 400, true), pods);
+
+		long start = System.currentTimeMillis();
+		assertTrue(graph.run());
+		long elapsed = System.currentTimeMillis() - start;
+
+		// 100 + 100 + 400ms, rather than the 1400ms the steps take one after another
+		assertTrue("took " + elapsed + "ms", elapsed < 1200);
+		assertEquals("release", order.get(0));
+		assertEquals("pods", order.get(1));
+		for (Step step : new Step[] { release, pods, image, registryImage, kubeImage }) {
+			assertEquals(Status.succeeded, step.getStatus());
+		}
+		assertTrue(image.getElapsedMillis() >= 400);
+	}
+
+	@Test
+	public void testFailuresAreAggregated() throws Exception {
+		TaskGraph graph = new TaskGraph("test");
+		Step pods = graph.add("pods", sleep("pods", 10, true));
+		Step image = graph.add("image", sleep("image", 10, false), pods);
+		Step registryImage = graph.add("registry image", new IStep() {
+			@Override
+			public boolean run() throws Exception {
+				throw new IllegalStateException("registry is unavailable");
+			}
+		}, pods);
+		Step kubeImage = graph.add("kube image", sleep("kube image", 10, true), pods);
+		Step afterImage = graph.add("after image", sleep("after image", 10, true), image);
+
+		assertFalse(graph.run());
+
+		// The failed steps don't stop the one that doesn't depend on them
+		assertEquals(Status.failed, image.getStatus());
+		assertEquals(Status.failed, registryImage.getStatus());
+		assertEquals(Status.succeeded, kubeImage.getStatus());
+		assertEquals(Status.skipped, afterImage.getStatus());
+		assertFalse(order.contains("after image"));
+	}
+
+	@Test
+	public void testEmptyGraph() throws Exception {
+		assertTrue(new TaskGraph("test").run());
+	}
+
+	private IStep sleep(final String name, final long millis, final boolean result) {
+		return new IStep() {
+			@Override
+			public boolean run() throws Exception {
+				order.add(name);
+				Thread.sleep(millis);
+				return result;
+			}
+		};
+	}
+}
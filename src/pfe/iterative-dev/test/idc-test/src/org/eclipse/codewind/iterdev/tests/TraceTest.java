@@ -0,0 +1,110 @@
+package org.eclipse.codewind.iterdev.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.codewind.iterdev.JSONUtils;
+import org.eclipse.codewind.iterdev.Trace;
+
+/**
+ * Traces a command with spans on two threads into a temporary .idc directory, and reads the trace file back.
+ */
+public class TraceTest {
+
+	private File idcBase;
+
+	@Before
+	public void setUp() throws Exception {
+		idcBase = Files.createTempDirectory("idc-trace").toFile();
+		Trace.setEnabled(true);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Trace.setEnabled(false);
+		File[] files = new File(idcBase, "trace").listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		new File(idcBase, "trace").delete();
+		idcBase.delete();
+	}
+
+	@Test
+	public void testTraceFile() throws Exception {
+		Trace trace = Trace.begin("build");
+		Trace.setApplication(idcBase, "1234");
+		assertEquals("built", Trace.call("containerBuild", new Trace.ISpanTask<String, RuntimeException>() {
+			@Override
+			public String call() throws InterruptedException {
+				Thread.sleep(50);
+				return "built";
+			}
+		}));
+		Thread prefetch = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Trace.run("prefetch images", new Trace.ISpanRunnable<RuntimeException>() {
+						@Override
+						public void run() throws InterruptedException {
+							Thread.sleep(20);
+						}
+					});
+				} catch (InterruptedException e) {
+					// ignore
+				}
+			}
+		}, "IDC prefetch");
+		prefetch.start();
+		prefetch.join();
+		trace.end();
+
+		File[] files = new File(idcBase, "trace").listFiles();
+		assertEquals(1, files.length);
+		assertTrue(files[0].getName(), files[0].getName().startsWith("1234-build-"));
+
+		Map<String, Object> json = JSONUtils.parseObject(new String(Files.readAllBytes(files[0].toPath()), StandardCharsets.UTF_8));
+		@SuppressWarnings("unchecked")
+		List<Map<String, Object>> events = (List<Map<String, Object>>) json.get("traceEvents");
+		Map<String, Map<String, Object>> spans = new HashMap<String, Map<String, Object>>();
+		Map<String, String> threadNames = new HashMap<String, String>();
+		for (Map<String, Object> event : events) {
+			if ("X".equals(event.get("ph"))) {
+				spans.put((String) event.get("name"), event);
+			} else if ("thread_name".equals(event.get("name"))) {
+				threadNames.put(event.get("tid").toString(), JSONUtils.getString(event, "args", "name"));
+			}
+		}
+
+		assertEquals(3, spans.size());
+		assertTrue(((Number) spans.get("containerBuild").get("dur")).longValue() >= 50000);
+		assertTrue(((Number) spans.get("build").get("dur")).longValue() >= 70000);
+		assertEquals("IDC prefetch", threadNames.get(spans.get("prefetch images").get("tid").toString()));
+
+		// The command's trace has ended
+		assertSame(Trace.span("after"), Trace.span("after"));
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		Trace.setEnabled(false);
+		assertNull(Trace.begin("build"));
+		assertSame(Trace.span("containerBuild"), Trace.span("containerRun"));
+	}
+}
@@ -10,6 +10,7 @@ import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.file.Files;
 import java.util.ArrayList;
 
 import org.apache.commons.codec.digest.DigestUtils;
@@ -99,6 +100,17 @@ public class IDCTestUtil {
         }
     }
 	
+	/** Delete the given file or directory tree. Symbolic links are deleted, but not followed. */
+	public static void deleteTree(File file) {
+		File[] children = Files.isSymbolicLink(file.toPath()) ? null : file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteTree(child);
+			}
+		}
+		file.delete();
+	}
+	
 	public static String testAppEndPoints(String endPoint, String port) {
 		URL url;
 		